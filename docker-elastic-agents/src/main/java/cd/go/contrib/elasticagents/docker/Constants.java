@@ -38,5 +38,9 @@ public interface Constants {
     String JOB_IDENTIFIER_LABEL_KEY = "Elastic-Agent-Job-Identifier";
     String ENVIRONMENT_LABEL_KEY = "Elastic-Agent-Environment-Name";
     String CONFIGURATION_LABEL_KEY = "Elastic-Agent-Configuration";
+    String WARM_POOL_LABEL_KEY = "Elastic-Agent-Warm-Pool";
+
+    // warm containers source the auto-register settings of the job they are handed out to from this file
+    String WARM_CONTAINER_ENV_FILE = "/.gocd-elastic-agent/env";
 
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker;
+
+import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.messages.Event;
+
+import java.util.concurrent.TimeUnit;
+
+import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
+
+/**
+ * Keeps a {@link DockerContainers} inventory up to date by following the docker events stream for containers created
+ * by this plugin. Every time the stream is (re)opened the inventory is resynced with a full listing, so events missed
+ * while the stream was down are not lost.
+ */
+public class ContainerEventWatcher implements Runnable {
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final DockerContainers dockerContainers;
+    private final ClusterProfileProperties clusterProfile;
+    private volatile boolean inSync;
+    private volatile boolean stopped;
+    private volatile EventStream eventStream;
+
+    public ContainerEventWatcher(DockerContainers dockerContainers, ClusterProfileProperties clusterProfile) {
+        this.dockerContainers = dockerContainers;
+        this.clusterProfile = clusterProfile;
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "docker-container-events-" + clusterProfile.uuid());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        inSync = false;
+        EventStream stream = this.eventStream;
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * @return true when the inventory reflects the docker daemon, i.e. the events stream is connected and the
+     * inventory has been resynced since it was opened.
+     */
+    public boolean isInSync() {
+        return inSync;
+    }
+
+    @Override
+    public void run() {
+        long retryDelay = 1000;
+        while (!stopped) {
+            try {
+                // subscribe before resyncing so that nothing happening in between is missed
+                try (DefaultDockerClient docker = DockerClientFactory.streamingClient(clusterProfile);
+                     EventStream stream = docker.events(
+                        DockerClient.EventsParam.type(Event.Type.CONTAINER),
+                        DockerClient.EventsParam.label(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID))) {
+                    this.eventStream = stream;
+                    dockerContainers.resync(docker);
+                    inSync = true;
+                    retryDelay = 1000;
+                    LOG.debug("Listening to container events for cluster " + clusterProfile.uuid());
+
+                    while (!stopped && stream.hasNext()) {
+                        dockerContainers.apply(stream.next());
+                    }
+                }
+                if (!stopped) {
+                    LOG.warn("Container events stream for cluster " + clusterProfile.uuid() + " was closed by the docker daemon.");
+                }
+            } catch (Exception e) {
+                if (!stopped) {
+                    LOG.warn("Container events stream for cluster " + clusterProfile.uuid() + " failed, falling back to polling until it is reconnected.", e);
+                }
+            } finally {
+                inSync = false;
+                this.eventStream = null;
+            }
+
+            if (!stopped) {
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package cd.go.contrib.elasticagents.docker;
 
+import cd.go.contrib.elasticagents.common.Clock;
 import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerCertificates;
@@ -29,29 +30,77 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
+/**
+ * Keeps one docker client per cluster profile, keyed by {@link ClusterProfileProperties#uuid()}. Clients are health
+ * checked periodically and closed when they fail the check or have not been used for a while, so that clients for
+ * cluster profiles which no longer exist do not hold on to their connections. Creating and health checking a client
+ * only locks the entry of its own cluster profile, so a slow docker server does not hold up the other clusters.
+ */
 public class DockerClientFactory {
+    static final Duration IDLE_TIMEOUT = Duration.ofMinutes(30);
+    static final Duration HEALTH_CHECK_INTERVAL = Duration.ofMinutes(1);
+
+    private static final DockerClientFactory INSTANCE = new DockerClientFactory(DockerClientFactory::pooledClient, Clock.DEFAULT);
+
+    private final Map<String, PooledClient> clients = new ConcurrentHashMap<>();
+    private final ClientCreator clientCreator;
+    private final Clock clock;
+
+    DockerClientFactory(ClientCreator clientCreator, Clock clock) {
+        this.clientCreator = clientCreator;
+        this.clock = clock;
+    }
 
-    private static DefaultDockerClient client;
-    private static ClusterProfileProperties properties;
+    public static DockerClient docker(ClusterProfileProperties properties) throws Exception {
+        return INSTANCE.client(properties);
+    }
+
+    DockerClient client(ClusterProfileProperties properties) throws Exception {
+        evictIdleClients();
 
-    public static synchronized DockerClient docker(ClusterProfileProperties properties) throws Exception {
-        if (properties.equals(DockerClientFactory.properties) && DockerClientFactory.client != null) {
-            return DockerClientFactory.client;
+        while (true) {
+            PooledClient pooledClient = clients.computeIfAbsent(properties.uuid(), PooledClient::new);
+            DockerClient client = pooledClient.use(properties);
+            if (client != null) {
+                return client;
+            }
         }
+    }
+
+    /**
+     * Creates a client, outside of the pool, for long running streams such as docker events. The read timeout is
+     * disabled as a stream may legitimately stay quiet for a long time. The caller is responsible for closing it.
+     */
+    public static DefaultDockerClient streamingClient(ClusterProfileProperties properties) throws Exception {
+        return createClient(properties, DefaultDockerClient.builder()
+                .connectionPoolSize(1)
+                .readTimeoutMillis(0));
+    }
 
-        DockerClientFactory.properties = properties;
-        DockerClientFactory.client = createClient(properties);
-        return DockerClientFactory.client;
+    private void evictIdleClients() {
+        long now = clock.now().getMillis();
+        clients.forEach((clusterId, pooledClient) -> {
+            if (now - pooledClient.lastUsedAt > IDLE_TIMEOUT.toMillis() && clients.remove(clusterId, pooledClient)) {
+                pooledClient.evict("it has not been used for " + IDLE_TIMEOUT.toMinutes() + " minutes");
+            }
+        });
     }
 
-    private static DefaultDockerClient createClient(ClusterProfileProperties clusterProfile) throws Exception {
-        DefaultDockerClient.Builder builder = DefaultDockerClient.builder();
+    private static DefaultDockerClient pooledClient(ClusterProfileProperties properties) throws Exception {
+        return createClient(properties, DefaultDockerClient.builder()
+                .connectionPoolSize(properties.getDockerConnectionPoolSize()));
+    }
 
+    private static DefaultDockerClient createClient(ClusterProfileProperties clusterProfile,
+                                                    DefaultDockerClient.Builder builder) throws Exception {
         builder.uri(clusterProfile.getDockerURI());
         if (clusterProfile.getDockerURI().startsWith("https://")) {
             setupCerts(clusterProfile, builder);
@@ -72,8 +121,15 @@ public class DockerClientFactory {
         }
 
         DefaultDockerClient docker = builder.build();
-        String ping = docker.ping();
+        String ping;
+        try {
+            ping = docker.ping();
+        } catch (Exception e) {
+            docker.close();
+            throw e;
+        }
         if (!"OK".equals(ping)) {
+            docker.close();
             throw new RuntimeException("Could not ping the docker server, the server said '" + ping + "' instead of 'OK'.");
         }
         return docker;
@@ -98,4 +154,71 @@ public class DockerClientFactory {
             FileUtils.deleteDirectory(tempDirectory);
         }
     }
+
+    interface ClientCreator {
+        DefaultDockerClient create(ClusterProfileProperties properties) throws Exception;
+    }
+
+    private class PooledClient {
+        private final String clusterId;
+        private DefaultDockerClient client;
+        private boolean evicted;
+        private volatile long lastUsedAt;
+        private long lastCheckedAt;
+
+        PooledClient(String clusterId) {
+            this.clusterId = clusterId;
+            this.lastUsedAt = clock.now().getMillis();
+        }
+
+        /**
+         * Returns the client of this cluster, creating it if needed, or <code>null</code> if this entry was evicted
+         * in the meantime and the caller should look it up again.
+         */
+        synchronized DockerClient use(ClusterProfileProperties properties) throws Exception {
+            if (evicted) {
+                return null;
+            }
+
+            if (client != null && !isHealthy()) {
+                close("it failed the health check");
+            }
+
+            if (client == null) {
+                client = clientCreator.create(properties);
+                lastCheckedAt = clock.now().getMillis();
+            }
+
+            lastUsedAt = clock.now().getMillis();
+            return client;
+        }
+
+        synchronized void evict(String reason) {
+            evicted = true;
+            close(reason);
+        }
+
+        private void close(String reason) {
+            if (client != null) {
+                LOG.info(String.format("Closing docker client for cluster %s as %s.", clusterId, reason));
+                client.close();
+                client = null;
+            }
+        }
+
+        private boolean isHealthy() {
+            long now = clock.now().getMillis();
+            if (now - lastCheckedAt < HEALTH_CHECK_INTERVAL.toMillis()) {
+                return true;
+            }
+
+            lastCheckedAt = now;
+            try {
+                return "OK".equals(client.ping());
+            } catch (Exception e) {
+                LOG.warn("Docker client health check failed.", e);
+                return false;
+            }
+        }
+    }
 }
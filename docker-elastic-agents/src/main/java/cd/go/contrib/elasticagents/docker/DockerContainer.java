@@ -18,24 +18,33 @@ package cd.go.contrib.elasticagents.docker;
 
 import cd.go.contrib.elasticagents.common.ConsoleLogAppender;
 import cd.go.contrib.elasticagents.common.EnvironmentVariable;
+import cd.go.contrib.elasticagents.common.LogTail;
 import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 import cd.go.contrib.elasticagents.common.requests.AbstractCreateAgentRequest;
 import cd.go.contrib.elasticagents.docker.models.*;
 import cd.go.contrib.elasticagents.docker.utils.Util;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.ContainerNotFoundException;
 import com.spotify.docker.client.exceptions.DockerException;
-import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.Container;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
 import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.Event;
 import com.spotify.docker.client.messages.HostConfig;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static cd.go.contrib.elasticagents.docker.Constants.*;
 import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
@@ -45,12 +54,19 @@ import static cd.go.plugin.base.GsonTransformer.toJson;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
 public class DockerContainer {
+    private static final String JOB_NAME_SUFFIX = "-job-";
+    private static final Pattern HANDED_OUT_NAME = Pattern.compile(".+" + JOB_NAME_SUFFIX + "(\\d+)$");
+    // sources the job's auto-register settings written at hand-out, then runs the image's own entrypoint and command
+    private static final String SOURCE_JOB_ENVIRONMENT = "set -a; . " + WARM_CONTAINER_ENV_FILE + "; set +a; exec \"$@\"";
+
     private final DateTime createdAt;
     private final ElasticProfileConfiguration elasticProfileConfiguration;
     private final String environment;
     private final String id;
     private String name;
     private final JobIdentifier jobIdentifier;
+    private final String image;
+    private volatile String state;
 
     public DockerContainer(String id,
                            String name,
@@ -58,18 +74,47 @@ public class DockerContainer {
                            Date createdAt,
                            ElasticProfileConfiguration elasticProfileConfiguration,
                            String environment) {
+        this(id, name, jobIdentifier, createdAt, elasticProfileConfiguration, environment, null, null);
+    }
+
+    public DockerContainer(String id,
+                           String name,
+                           JobIdentifier jobIdentifier,
+                           Date createdAt,
+                           ElasticProfileConfiguration elasticProfileConfiguration,
+                           String environment,
+                           String image,
+                           String state) {
         this.id = id;
         this.name = name;
         this.jobIdentifier = jobIdentifier;
         this.createdAt = new DateTime(createdAt);
         this.elasticProfileConfiguration = elasticProfileConfiguration;
         this.environment = environment;
+        this.image = image;
+        this.state = state;
+    }
+
+    public String id() {
+        return id;
     }
 
     public String name() {
         return name;
     }
 
+    public String image() {
+        return image;
+    }
+
+    public String state() {
+        return state;
+    }
+
+    void setState(String state) {
+        this.state = state;
+    }
+
     public JobIdentifier getJobIdentifier() {
         return jobIdentifier;
     }
@@ -89,8 +134,10 @@ public class DockerContainer {
     public void terminate(DockerClient docker) throws DockerException, InterruptedException {
         try {
             LOG.debug("Terminating instance " + this.name());
-            docker.stopContainer(name, 2);
-            docker.removeContainer(name);
+            // by id when known, a warm container may have been renamed at hand-out
+            String container = id != null ? id : name;
+            docker.stopContainer(container, 2);
+            docker.removeContainer(container);
         } catch (ContainerNotFoundException ignore) {
             LOG.warn("Cannot terminate a container that does not exist " + name);
         }
@@ -99,13 +146,42 @@ public class DockerContainer {
     public static DockerContainer fromContainerInfo(ContainerInfo container) {
         Map<String, String> labels = container.config().labels();
         ElasticProfileConfiguration elasticProfileConfiguration = fromJson(labels.get(CONFIGURATION_LABEL_KEY), ElasticProfileConfiguration.class);
-        return new DockerContainer(container.id(), container.name().substring(1), jobIdentifier(container), container.created(), elasticProfileConfiguration, labels.get(Constants.ENVIRONMENT_LABEL_KEY));
+        return new DockerContainer(container.id(), container.name().substring(1), jobIdentifier(container), container.created(), elasticProfileConfiguration, labels.get(Constants.ENVIRONMENT_LABEL_KEY),
+                container.config().image(), container.state().status());
+    }
+
+    public static DockerContainer fromContainer(Container container) {
+        Map<String, String> labels = container.labels();
+        ElasticProfileConfiguration elasticProfileConfiguration = fromJson(labels.get(CONFIGURATION_LABEL_KEY), ElasticProfileConfiguration.class);
+        String name = container.names().get(0).substring(1);
+        return new DockerContainer(container.id(), name, jobIdentifier(name, labels), new Date(container.created() * 1000), elasticProfileConfiguration, labels.get(Constants.ENVIRONMENT_LABEL_KEY),
+                container.image(), container.state());
+    }
+
+    /**
+     * Builds a container from a docker <code>create</code> event. The event attributes carry the container labels along
+     * with its name and image, so the container does not need to be inspected.
+     */
+    public static DockerContainer fromEvent(Event event) {
+        Map<String, String> attributes = event.actor().attributes();
+        ElasticProfileConfiguration elasticProfileConfiguration = fromJson(attributes.get(CONFIGURATION_LABEL_KEY), ElasticProfileConfiguration.class);
+        Date createdAt = event.timeNano() != null ? new Date(event.timeNano() / 1_000_000) : event.time();
+        return new DockerContainer(event.actor().id(), attributes.get("name"), jobIdentifier(attributes.get("name"), attributes), createdAt, elasticProfileConfiguration, attributes.get(Constants.ENVIRONMENT_LABEL_KEY),
+                attributes.get("image"), "created");
     }
 
     public static DockerContainer create(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
                                          ClusterProfileProperties clusterProfile,
                                          DockerClient docker,
                                          ConsoleLogAppender consoleLogAppender) throws InterruptedException, DockerException {
+        return create(request, clusterProfile, docker, new ImageCache(), consoleLogAppender);
+    }
+
+    public static DockerContainer create(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
+                                         ClusterProfileProperties clusterProfile,
+                                         DockerClient docker,
+                                         ImageCache imageCache,
+                                         ConsoleLogAppender consoleLogAppender) throws InterruptedException, DockerException {
         String containerName = UUID.randomUUID().toString();
 
         HashMap<String, String> labels = labelsFrom(request);
@@ -113,19 +189,138 @@ public class DockerContainer {
         String imageName = image(elasticProfileConfiguration.getImage());
         List<String> env = environmentFrom(request, clusterProfile, containerName);
 
+        imageCache.ensure(imageName, clusterProfile, docker, consoleLogAppender);
+        ContainerConfig containerConfig = containerConfig(elasticProfileConfiguration, imageName, labels, env);
+
+        consoleLogAppender.accept(String.format("Creating container: %s", containerName));
+        ContainerCreation container = docker.createContainer(containerConfig, containerName);
+        String id = container.id();
+
+        ContainerInfo containerInfo = docker.inspectContainer(id);
+
+        LOG.debug("Created container " + containerName);
+        consoleLogAppender.accept(String.format("Starting container: %s", containerName));
+        docker.startContainer(containerName);
+        consoleLogAppender.accept(String.format("Started container: %s", containerName));
+        LOG.debug("container " + containerName + " started");
+        return new DockerContainer(id, containerName, request.getJobIdentifier(), containerInfo.created(), elasticProfileConfiguration, request.getEnvironment(),
+                imageName, "running");
+    }
+
+    /**
+     * Creates, but does not start, a container for the warm pool. The job specific auto-register settings are not
+     * known yet, so they are left out of the environment. Instead the container runs the image's entrypoint and
+     * command through <code>/bin/sh</code>, which first sources the settings {@link #handOut} writes for the job, so
+     * the image sees them as if they had been set at create. Images used with a warm pool must provide
+     * <code>/bin/sh</code>. The image is expected to be present, see {@link ImageCache#ensure}.
+     */
+    public static DockerContainer createWarm(ElasticProfileConfiguration elasticProfileConfiguration,
+                                             ClusterProfileProperties clusterProfile,
+                                             DockerClient docker,
+                                             String poolKey) throws InterruptedException, DockerException {
+        String containerName = UUID.randomUUID().toString();
+
+        HashMap<String, String> labels = new HashMap<>();
+        labels.put(CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
+        labels.put(CONFIGURATION_LABEL_KEY, toJson(elasticProfileConfiguration));
+        labels.put(WARM_POOL_LABEL_KEY, poolKey);
+
+        String imageName = image(elasticProfileConfiguration.getImage());
+        ContainerConfig containerConfig = containerConfig(elasticProfileConfiguration, imageName, labels,
+                new ArrayList<>(environmentFrom(elasticProfileConfiguration, clusterProfile)));
+        ContainerConfig imageConfig = docker.inspectImage(imageName).config();
+        List<String> command = new ArrayList<>();
+        if (imageConfig != null && imageConfig.entrypoint() != null) {
+            command.addAll(imageConfig.entrypoint());
+        }
+        if (containerConfig.cmd() != null && !containerConfig.cmd().isEmpty()) {
+            command.addAll(containerConfig.cmd());
+        } else if (imageConfig != null && imageConfig.cmd() != null) {
+            command.addAll(imageConfig.cmd());
+        }
+        containerConfig = containerConfig.toBuilder()
+                .entrypoint("/bin/sh", "-c", SOURCE_JOB_ENVIRONMENT, "gocd-elastic-agent")
+                .cmd(command)
+                .build();
+
+        ContainerCreation container = docker.createContainer(containerConfig, containerName);
+        ContainerInfo containerInfo = docker.inspectContainer(container.id());
+        LOG.debug("Created warm container " + containerName);
+        return new DockerContainer(container.id(), containerName, null, containerInfo.created(), elasticProfileConfiguration, null,
+                imageName, "created");
+    }
+
+    /**
+     * Hands a warm container out to a job: writes the auto-register settings for the job where the container's
+     * entrypoint sources them from, renames the container after the job so that the job can still be found once the
+     * inventory is rebuilt from docker (labels cannot be changed once a container is created), and starts it.
+     */
+    public DockerContainer handOut(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
+                                   DockerClient docker,
+                                   ConsoleLogAppender consoleLogAppender) throws InterruptedException, DockerException, IOException {
+        consoleLogAppender.accept(String.format("Using pre-created container: %s", name));
+        String agentId = handedOutName(name, request.getJobIdentifier());
+        Path directory = Files.createTempDirectory(UUID.randomUUID().toString());
         try {
-            docker.inspectImage(imageName);
-            if (clusterProfile.pullOnContainerCreate()) {
-                consoleLogAppender.accept("Pulling a fresh version of " + imageName + ".");
-                LOG.info("Pulling a fresh version of " + imageName + ".");
-                docker.pull(imageName);
-            }
-        } catch (ImageNotFoundException ex) {
-            consoleLogAppender.accept("Image " + imageName + " not found, attempting to download.");
-            LOG.info("Image " + imageName + " not found, attempting to download.");
-            docker.pull(imageName);
+            File environmentFile = new File(directory.toFile(), WARM_CONTAINER_ENV_FILE);
+            FileUtils.writeStringToFile(environmentFile, jobEnvironment(request, agentId), StandardCharsets.UTF_8);
+            docker.copyToContainer(directory, id, "/");
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+        if (!agentId.equals(name)) {
+            docker.renameContainer(id, agentId);
+        }
+
+        consoleLogAppender.accept(String.format("Starting container: %s", agentId));
+        docker.startContainer(id);
+        consoleLogAppender.accept(String.format("Started container: %s", agentId));
+        LOG.debug("warm container " + agentId + " started");
+        return new DockerContainer(id, agentId, request.getJobIdentifier(), new Date(), elasticProfileConfiguration, request.getEnvironment(),
+                image, "running");
+    }
+
+    static String handedOutName(String name, JobIdentifier jobIdentifier) {
+        if (jobIdentifier == null || jobIdentifier.getJobId() == null) {
+            return name;
+        }
+        return name + JOB_NAME_SUFFIX + jobIdentifier.getJobId();
+    }
+
+    /**
+     * The auto-register environment variables of the job, as a shell script exporting them.
+     */
+    static String jobEnvironment(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
+                                 String elasticAgentId) {
+        StringBuilder script = new StringBuilder();
+        for (String variable : request.autoregisterPropertiesAsEnvironmentVars(elasticAgentId, PLUGIN_ID)) {
+            int separator = variable.indexOf('=');
+            script.append(variable, 0, separator)
+                    .append("='")
+                    .append(variable.substring(separator + 1).replace("'", "'\\''"))
+                    .append("'\n");
+        }
+        return script.toString();
+    }
+
+    /**
+     * @return whether this container runs the job. A handed out warm container rebuilt from docker only knows the id
+     * of its job, taken from its name.
+     */
+    public boolean runs(JobIdentifier job) {
+        if (jobIdentifier == null || job == null) {
+            return false;
+        }
+        if (jobIdentifier.equals(job)) {
+            return true;
         }
+        return jobIdentifier.getPipelineName() == null && jobIdentifier.getJobId() != null && jobIdentifier.getJobId().equals(job.getJobId());
+    }
 
+    private static ContainerConfig containerConfig(ElasticProfileConfiguration elasticProfileConfiguration,
+                                                   String imageName,
+                                                   Map<String, String> labels,
+                                                   List<String> env) {
         ContainerConfig.Builder containerConfigBuilder = ContainerConfig.builder();
         if (StringUtils.isNotBlank(elasticProfileConfiguration.getCommand())) {
             containerConfigBuilder.cmd(splitIntoLinesAndTrimSpaces(elasticProfileConfiguration.getCommand()).toArray(new String[]{}));
@@ -153,34 +348,29 @@ public class DockerContainer {
             hostBuilder.appendBinds(Util.splitIntoLinesAndTrimSpaces(volumeMounts));
         }
 
-        ContainerConfig containerConfig = containerConfigBuilder
+        return containerConfigBuilder
                 .image(imageName)
                 .labels(labels)
                 .env(env)
                 .hostConfig(hostBuilder.build())
                 .build();
-
-        consoleLogAppender.accept(String.format("Creating container: %s", containerName));
-        ContainerCreation container = docker.createContainer(containerConfig, containerName);
-        String id = container.id();
-
-        ContainerInfo containerInfo = docker.inspectContainer(id);
-
-        LOG.debug("Created container " + containerName);
-        consoleLogAppender.accept(String.format("Starting container: %s", containerName));
-        docker.startContainer(containerName);
-        consoleLogAppender.accept(String.format("Started container: %s", containerName));
-        LOG.debug("container " + containerName + " started");
-        return new DockerContainer(id, containerName, request.getJobIdentifier(), containerInfo.created(), elasticProfileConfiguration, request.getEnvironment());
     }
 
     private static List<String> environmentFrom(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
                                                 ClusterProfileProperties clusterProfile,
                                                 String containerName) {
+        Set<String> env = environmentFrom(request.getElasticProfileConfiguration(), clusterProfile);
+        env.addAll(request.autoregisterPropertiesAsEnvironmentVars(containerName, PLUGIN_ID));
+
+        return new ArrayList<>(env);
+    }
+
+    private static Set<String> environmentFrom(ElasticProfileConfiguration elasticProfileConfiguration,
+                                               ClusterProfileProperties clusterProfile) {
         Set<String> env = new HashSet<>(clusterProfile.getEnvironmentVariables());
 
-        if (StringUtils.isNotBlank(request.getElasticProfileConfiguration().getEnvironmentVariables())) {
-            env.addAll(splitIntoLinesAndTrimSpaces(request.getElasticProfileConfiguration().getEnvironmentVariables()));
+        if (StringUtils.isNotBlank(elasticProfileConfiguration.getEnvironmentVariables())) {
+            env.addAll(splitIntoLinesAndTrimSpaces(elasticProfileConfiguration.getEnvironmentVariables()));
         }
 
         env.addAll(Arrays.asList(
@@ -188,9 +378,7 @@ public class DockerContainer {
                 "GO_EA_SERVER_URL=" + clusterProfile.getGoServerUrl()
         ));
 
-        env.addAll(request.autoregisterPropertiesAsEnvironmentVars(containerName, PLUGIN_ID));
-
-        return new ArrayList<>(env);
+        return env;
     }
 
     private static HashMap<String, String> labelsFrom(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request) {
@@ -232,7 +420,7 @@ public class DockerContainer {
         return "";
     }
 
-    private static String image(String image) {
+    static String image(String image) {
         if (isBlank(image)) {
             throw new IllegalArgumentException("Must provide `Image` attribute.");
         }
@@ -249,9 +437,13 @@ public class DockerContainer {
                 containerInfo.created().getTime(), jobIdentifier(containerInfo), name);
     }
 
+    public ContainerStatusReport getContainerStatusReport() {
+        return new ContainerStatusReport(id, image, state, createdAt.getMillis(), jobIdentifier, name);
+    }
+
     public AgentStatusReport getAgentStatusReport(DockerClient dockerClient) throws Exception {
         ContainerInfo containerInfo = dockerClient.inspectContainer(id);
-        String logs = readLogs(dockerClient);
+        LogTail logs = readLogs(dockerClient);
 
         return new AgentStatusReport(jobIdentifier(containerInfo), name, containerInfo.created().getTime(),
                 containerInfo.config().image(), containerInfo.path(), containerInfo.networkSettings().ipAddress(), logs,
@@ -271,19 +463,27 @@ public class DockerContainer {
     }
 
     private static JobIdentifier jobIdentifier(ContainerInfo containerInfo) {
-        ImmutableMap<String, String> labels = containerInfo.config().labels();
-        if (labels == null) {
-            return null;
+        return jobIdentifier(containerInfo.name() == null ? null : containerInfo.name().substring(1), containerInfo.config().labels());
+    }
+
+    private static JobIdentifier jobIdentifier(String name, Map<String, String> labels) {
+        if (labels != null && labels.get(JOB_IDENTIFIER_LABEL_KEY) != null) {
+            return fromJson(labels.get(JOB_IDENTIFIER_LABEL_KEY), JobIdentifier.class);
+        }
+
+        Matcher handedOut = name == null ? null : HANDED_OUT_NAME.matcher(name);
+        if (handedOut != null && handedOut.matches()) {
+            return new JobIdentifier(Long.parseLong(handedOut.group(1)));
         }
-        return fromJson(labels.get(JOB_IDENTIFIER_LABEL_KEY), JobIdentifier.class);
+        return null;
     }
 
-    private String readLogs(DockerClient dockerClient) {
+    private LogTail readLogs(DockerClient dockerClient) {
         try {
-            return dockerClient.logs(id, DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr()).readFully();
+            return LogTail.read(dockerClient.logs(id, LogTail.logsParams(LogTail.DEFAULT_LINES)), LogTail.DEFAULT_MAX_BYTES);
         } catch (Exception e) {
             LOG.debug("Could not fetch logs", e);
-            return "";
+            return LogTail.empty();
         }
     }
 }
@@ -16,10 +16,10 @@
 
 package cd.go.contrib.elasticagents.docker;
 
+import cd.go.contrib.elasticagents.common.AgentCapacity;
 import cd.go.contrib.elasticagents.common.Clock;
 import cd.go.contrib.elasticagents.common.ConsoleLogAppender;
 import cd.go.contrib.elasticagents.common.ElasticAgentRequestClient;
-import cd.go.contrib.elasticagents.common.SetupSemaphore;
 import cd.go.contrib.elasticagents.common.agent.Agent;
 import cd.go.contrib.elasticagents.common.agent.AgentInstances;
 import cd.go.contrib.elasticagents.common.agent.Agents;
@@ -30,13 +30,13 @@ import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.ContainerNotFoundException;
 import com.spotify.docker.client.messages.Container;
 import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.Event;
 import com.spotify.docker.client.messages.Info;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
@@ -44,54 +44,162 @@ import static cd.go.contrib.elasticagents.docker.utils.Util.readableSize;
 
 public class DockerContainers implements AgentInstances<DockerContainer, ElasticProfileConfiguration, ClusterProfileProperties> {
     private final Map<String, DockerContainer> instances = new ConcurrentHashMap<>();
-    private List<JobIdentifier> jobsWaitingForAgentCreation = new ArrayList<>();
+    private final AgentCapacity capacity = new AgentCapacity();
     private boolean refreshed;
+    private ContainerEventWatcher eventWatcher;
+    private ClusterProfileProperties watchedCluster;
+    final WarmPool warmPool = new WarmPool();
+    final ImageCache imageCache = new ImageCache();
     public Clock clock = Clock.DEFAULT;
 
-    final Semaphore semaphore = new Semaphore(0, true);
-
     @Override
     public DockerContainer create(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
                                   ElasticAgentRequestClient pluginRequest,
                                   ConsoleLogAppender consoleLogAppender) throws Exception {
         LOG.info(String.format("[Create Agent] Processing create agent request for %s", request.getJobIdentifier()));
         ClusterProfileProperties clusterProfile = request.getClusterProfileProperties();
-        final Integer maxAllowedContainers = clusterProfile.getMaxDockerContainers();
-        synchronized (instances) {
-            if (!jobsWaitingForAgentCreation.contains(request.getJobIdentifier())) {
-                jobsWaitingForAgentCreation.add(request.getJobIdentifier());
-            }
-            doWithLockOnSemaphore(new SetupSemaphore(maxAllowedContainers, instances, semaphore));
-            List<Map<String, String>> messages = new ArrayList<>();
-            if (semaphore.tryAcquire()) {
-                pluginRequest.addServerHealthMessage(messages);
-                DockerContainer container = DockerContainer.create(request, clusterProfile, docker(clusterProfile), consoleLogAppender);
-                register(container);
-                jobsWaitingForAgentCreation.remove(request.getJobIdentifier());
+        List<Map<String, String>> messages = new ArrayList<>();
+        capacity.waitFor(request.getJobIdentifier());
+
+        DockerContainer warmContainer = takeWarmContainer(request, clusterProfile);
+        if (warmContainer != null) {
+            pluginRequest.addServerHealthMessage(messages);
+            try {
+                DockerContainer container = warmContainer.handOut(request, docker(clusterProfile), consoleLogAppender);
+                registerCreatedContainer(request, container);
+                if (!container.name().equals(warmContainer.name())) {
+                    instances.remove(warmContainer.name(), warmContainer);
+                }
                 return container;
-            } else {
-                String maxLimitExceededMessage = String.format("The number of containers currently running is currently at the maximum permissible limit, \"%d\". Not creating more containers for jobs: %s.", instances.size(), jobsWaitingForAgentCreation.stream().map(JobIdentifier::getRepresentation)
-                        .collect(Collectors.joining(", ")));
-                Map<String, String> messageToBeAdded = new HashMap<>();
-                messageToBeAdded.put("type", "warning");
-                messageToBeAdded.put("message", maxLimitExceededMessage);
-                messages.add(messageToBeAdded);
-                pluginRequest.addServerHealthMessage(messages);
-                consoleLogAppender.accept(maxLimitExceededMessage);
-                LOG.info(maxLimitExceededMessage);
-                return null;
+            } catch (Exception e) {
+                LOG.warn("Could not hand out warm container " + warmContainer.name() + ", terminating it.", e);
+                terminate(warmContainer.name(), clusterProfile);
+                return create(request, pluginRequest, consoleLogAppender);
             }
         }
+
+        AgentCapacity.Reservation reservation = reserveCapacity(clusterProfile);
+        if (reservation == null) {
+            String maxLimitExceededMessage = String.format("The number of containers currently running is currently at the maximum permissible limit, \"%d\". Not creating more containers for jobs: %s.", instances.size(), capacity.waitingJobs().stream().map(JobIdentifier::getRepresentation)
+                    .collect(Collectors.joining(", ")));
+            Map<String, String> messageToBeAdded = new HashMap<>();
+            messageToBeAdded.put("type", "warning");
+            messageToBeAdded.put("message", maxLimitExceededMessage);
+            messages.add(messageToBeAdded);
+            pluginRequest.addServerHealthMessage(messages);
+            consoleLogAppender.accept(maxLimitExceededMessage);
+            LOG.info(maxLimitExceededMessage);
+            return null;
+        }
+
+        pluginRequest.addServerHealthMessage(messages);
+        try {
+            DockerContainer container = DockerContainer.create(request, clusterProfile, docker(clusterProfile), imageCache, consoleLogAppender);
+            registerCreatedContainer(request, container);
+            reservation.commit();
+            return container;
+        } finally {
+            reservation.rollback();
+        }
     }
 
-    private void doWithLockOnSemaphore(Runnable runnable) {
-        synchronized (semaphore) {
-            runnable.run();
+    public AgentCapacity.Utilisation getCapacityUtilisation(ClusterProfileProperties clusterProfile) {
+        return capacity.utilisation(clusterProfile.getMaxDockerContainers(), instances.size());
+    }
+
+    private void registerCreatedContainer(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
+                                          DockerContainer container) {
+        register(container);
+        capacity.stopWaitingFor(request.getJobIdentifier());
+        refillWarmPool(request.getElasticProfileConfiguration(), request.getClusterProfileProperties());
+    }
+
+    private DockerContainer takeWarmContainer(AbstractCreateAgentRequest<ElasticProfileConfiguration, ClusterProfileProperties> request,
+                                              ClusterProfileProperties clusterProfile) {
+        if (clusterProfile.getWarmPoolSize() <= 0) {
+            return null;
         }
+
+        DockerContainer warmContainer;
+        while ((warmContainer = warmPool.take(request.getElasticProfileConfiguration())) != null) {
+            if (instances.containsKey(warmContainer.name())) {
+                return warmContainer;
+            }
+        }
+
+        refillWarmPool(request.getElasticProfileConfiguration(), clusterProfile);
+        return null;
+    }
+
+    /**
+     * Reserves room for one container, making room by terminating an idle warm container if need be. Containers that
+     * are still being created are not part of the inventory yet, so they hold a reservation until they are.
+     */
+    private AgentCapacity.Reservation reserveCapacity(ClusterProfileProperties clusterProfile) throws Exception {
+        AgentCapacity.Reservation reservation = capacity.tryReserve(clusterProfile.getMaxDockerContainers(), instances::size);
+        if (reservation != null) {
+            return reservation;
+        }
+
+        DockerContainer warmContainer = warmPool.takeAny();
+        if (warmContainer == null) {
+            return null;
+        }
+
+        LOG.info("Terminating warm container " + warmContainer.name() + " to make room for a new container.");
+        terminate(warmContainer.name(), clusterProfile);
+        return capacity.tryReserve(clusterProfile.getMaxDockerContainers(), instances::size);
+    }
+
+    private void refillWarmPool(ElasticProfileConfiguration elasticProfileConfiguration, ClusterProfileProperties clusterProfile) {
+        if (clusterProfile.getWarmPoolSize() > 0) {
+            String poolKey = WarmPool.poolKey(elasticProfileConfiguration);
+            warmPool.refill(poolKey, () -> warmUp(poolKey, elasticProfileConfiguration, clusterProfile));
+        }
+    }
+
+    void warmUp(String poolKey, ElasticProfileConfiguration elasticProfileConfiguration, ClusterProfileProperties clusterProfile) {
+        try {
+            imageCache.ensure(DockerContainer.image(elasticProfileConfiguration.getImage()), clusterProfile, docker(clusterProfile), message -> {
+            });
+            while (warmPool.idleCount(poolKey) < clusterProfile.getWarmPoolSize()) {
+                AgentCapacity.Reservation reservation = capacity.tryReserve(clusterProfile.getMaxDockerContainers(), instances::size);
+                if (reservation == null) {
+                    return;
+                }
+
+                try {
+                    DockerContainer container = DockerContainer.createWarm(elasticProfileConfiguration, clusterProfile, docker(clusterProfile), poolKey);
+                    register(container);
+                    if (!warmPool.add(poolKey, container)) {
+                        terminate(container.name(), clusterProfile);
+                        return;
+                    }
+                    reservation.commit();
+                } finally {
+                    reservation.rollback();
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Could not create warm containers for pool " + poolKey, e);
+        }
+    }
+
+    /**
+     * Refreshes, in the background, the images used by this cluster's containers once they are no longer fresh. The
+     * images of existing containers count as recently used, so they keep being refreshed.
+     */
+    public void prePullImages(ClusterProfileProperties clusterProfile) {
+        instances.values().stream()
+                .map(DockerContainer::image)
+                .filter(Objects::nonNull)
+                .forEach(imageCache::remember);
+        imageCache.prePull(clusterProfile, () -> docker(clusterProfile));
     }
 
     @Override
     public void terminate(String agentId, ClusterProfileProperties clusterProfile) throws Exception {
+        warmPool.remove(agentId);
         DockerContainer instance = instances.get(agentId);
         if (instance != null) {
             instance.terminate(docker(clusterProfile));
@@ -99,16 +207,7 @@ public class DockerContainers implements AgentInstances<DockerContainer, Elastic
             LOG.warn("Requested to terminate an instance that does not exist " + agentId);
         }
 
-        doWithLockOnSemaphore(new Runnable() {
-            @Override
-            public void run() {
-                semaphore.release();
-            }
-        });
-
-        synchronized (instances) {
-            instances.remove(agentId);
-        }
+        instances.remove(agentId);
     }
 
     @Override
@@ -148,18 +247,104 @@ public class DockerContainers implements AgentInstances<DockerContainer, Elastic
             DockerClient docker = docker(clusterProfileProperties);
             List<Container> containers = docker.listContainers(DockerClient.ListContainersParam.withLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID));
             for (Container container : containers) {
-                register(DockerContainer.fromContainerInfo(docker.inspectContainer(container.id())));
+                merge(DockerContainer.fromContainer(container));
             }
             refreshed = true;
         }
     }
 
+    /**
+     * Starts following the docker events stream for this cluster, if not already doing so. While the stream is
+     * connected the inventory is kept up to date from the events and containers are no longer inspected one by one.
+     */
+    public synchronized void watch(ClusterProfileProperties clusterProfileProperties) {
+        watchedCluster = clusterProfileProperties;
+        if (eventWatcher == null) {
+            eventWatcher = new ContainerEventWatcher(this, clusterProfileProperties);
+            eventWatcher.start();
+        }
+    }
+
+    /**
+     * Stops following the cluster, once it no longer exists. The warm pool is shut down and its idle containers,
+     * which were never started, are removed.
+     */
+    public synchronized void stopWatching() {
+        if (eventWatcher != null) {
+            eventWatcher.stop();
+            eventWatcher = null;
+        }
+
+        for (DockerContainer container : warmPool.shutdown()) {
+            try {
+                if (watchedCluster != null) {
+                    terminate(container.name(), watchedCluster);
+                }
+            } catch (Exception e) {
+                LOG.warn("Could not remove idle warm container " + container.name(), e);
+            }
+        }
+    }
+
+    public boolean isInSync() {
+        ContainerEventWatcher watcher = this.eventWatcher;
+        return watcher != null && watcher.isInSync();
+    }
+
+    /**
+     * Reconciles the inventory with the containers labelled as created by this plugin. Containers registered while the
+     * listing is in progress are kept, they may simply not be part of it yet.
+     */
+    void resync(DockerClient docker) throws Exception {
+        Set<String> knownBeforeListing = new HashSet<>(instances.keySet());
+        List<Container> containers = docker.listContainers(DockerClient.ListContainersParam.allContainers(),
+                DockerClient.ListContainersParam.withLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID));
+        Set<String> listed = new HashSet<>();
+        for (Container container : containers) {
+            DockerContainer dockerContainer = DockerContainer.fromContainer(container);
+            listed.add(dockerContainer.name());
+            merge(dockerContainer);
+        }
+
+        knownBeforeListing.removeAll(listed);
+        instances.keySet().removeAll(knownBeforeListing);
+        refreshed = true;
+    }
+
+    void apply(Event event) {
+        String action = event.action();
+        if (event.actor() == null || action == null) {
+            return;
+        }
+
+        String name = event.actor().attributes().get("name");
+        switch (action) {
+            case "create":
+                instances.putIfAbsent(name, DockerContainer.fromEvent(event));
+                break;
+            case "start":
+                instances.computeIfAbsent(name, n -> DockerContainer.fromEvent(event)).setState("running");
+                break;
+            case "die":
+                DockerContainer container = instances.get(name);
+                if (container != null) {
+                    container.setState("exited");
+                }
+                break;
+            case "destroy":
+                instances.remove(name);
+                break;
+            default:
+                // other lifecycle events do not affect the inventory
+        }
+    }
+
     public StatusReport getStatusReport(ClusterProfileProperties clusterProfile) throws Exception {
         DockerClient dockerClient = DockerClientFactory.docker(clusterProfile);
 
         Info info = dockerClient.info();
         return new StatusReport(info.osType(), info.architecture(), info.serverVersion(),
-                info.cpus(), readableSize(info.memTotal()), getContainerStatus(dockerClient));
+                info.cpus(), readableSize(info.memTotal()), getContainerStatus(dockerClient), getCapacityUtilisation(clusterProfile));
     }
 
     public AgentStatusReport getAgentStatusReport(ClusterProfileProperties clusterProfile,
@@ -169,8 +354,13 @@ public class DockerContainers implements AgentInstances<DockerContainer, Elastic
 
     private List<ContainerStatusReport> getContainerStatus(DockerClient dockerClient) throws Exception {
         List<ContainerStatusReport> containerStatusReportList = new ArrayList<>();
+        boolean inSync = isInSync();
         for (DockerContainer dockerContainer : instances.values()) {
-            containerStatusReportList.add(dockerContainer.getContainerStatusReport(dockerClient));
+            if (inSync) {
+                containerStatusReportList.add(dockerContainer.getContainerStatusReport());
+            } else {
+                containerStatusReportList.add(dockerContainer.getContainerStatusReport(dockerClient));
+            }
         }
         return containerStatusReportList;
     }
@@ -179,6 +369,18 @@ public class DockerContainers implements AgentInstances<DockerContainer, Elastic
         instances.put(container.name(), container);
     }
 
+    /**
+     * Adds a listed container to the inventory, only updating the state of one that is already known. A warm container
+     * handed out to a job carries no job identifier label (labels cannot be changed once a container is created), so
+     * a listing only knows the id of its job, from its name, and must not replace the instance registered at hand-out.
+     */
+    private void merge(DockerContainer container) {
+        DockerContainer existing = instances.putIfAbsent(container.name(), container);
+        if (existing != null) {
+            existing.setState(container.state());
+        }
+    }
+
     private DockerClient docker(ClusterProfileProperties clusterProfile) throws Exception {
         return DockerClientFactory.docker(clusterProfile);
     }
@@ -187,9 +389,18 @@ public class DockerContainers implements AgentInstances<DockerContainer, Elastic
                                                       Agents knownAgents) throws Exception {
         Period period = clusterProfile.getAutoRegisterPeriod();
         DockerContainers unregisteredContainers = new DockerContainers();
+        boolean inSync = isInSync();
 
         for (String containerName : instances.keySet()) {
-            if (knownAgents.containsAgentWithId(containerName)) {
+            if (knownAgents.containsAgentWithId(containerName) || warmPool.isIdle(containerName)) {
+                continue;
+            }
+
+            if (inSync) {
+                DockerContainer container = instances.get(containerName);
+                if (container != null && clock.now().isAfter(container.createdAt().plus(period))) {
+                    unregisteredContainers.register(container);
+                }
                 continue;
             }
 
@@ -221,7 +432,7 @@ public class DockerContainers implements AgentInstances<DockerContainer, Elastic
     public Optional<DockerContainer> find(JobIdentifier jobIdentifier) {
         return instances.values()
                 .stream()
-                .filter(instance -> instance.getJobIdentifier().equals(jobIdentifier))
+                .filter(instance -> instance.runs(jobIdentifier))
                 .findFirst();
     }
 
@@ -24,7 +24,10 @@ import cd.go.contrib.elasticagents.docker.executors.*;
 import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
 import cd.go.contrib.elasticagents.docker.models.ElasticProfileConfiguration;
 import cd.go.contrib.elasticagents.docker.validator.CpusMetadataValidator;
+import cd.go.contrib.elasticagents.docker.validator.DockerConnectionPoolSizeValidator;
 import cd.go.contrib.elasticagents.docker.validator.HostsValidator;
+import cd.go.contrib.elasticagents.docker.validator.ImageFreshnessTtlValidator;
+import cd.go.contrib.elasticagents.docker.validator.WarmPoolSizeValidator;
 import cd.go.plugin.base.dispatcher.BaseBuilder;
 import cd.go.plugin.base.dispatcher.RequestDispatcher;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
@@ -35,8 +38,8 @@ import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static cd.go.contrib.elasticagents.docker.Constants.PLUGIN_IDENTIFIER;
 import static cd.go.contrib.elasticagents.docker.Constants.PROCESSOR_API_VERSION;
@@ -51,7 +54,7 @@ public class DockerPlugin implements GoPlugin {
     @Override
     public void initializeGoApplicationAccessor(GoApplicationAccessor accessor) {
         final ElasticAgentRequestClient pluginRequest = new ElasticAgentRequestClient(accessor, PROCESSOR_API_VERSION, PLUGIN_IDENTIFIER);
-        final Map<String, DockerContainers> clusterSpecificAgentInstances = new HashMap<>();
+        final Map<String, DockerContainers> clusterSpecificAgentInstances = new ConcurrentHashMap<>();
         requestDispatcher = BaseBuilder
                 .forElastic()
                 .v5()
@@ -66,7 +69,12 @@ public class DockerPlugin implements GoPlugin {
                         new CpusMetadataValidator(),
                         new HostsValidator()
                 )
-                .validateClusterProfile(new GoServerURLValidator())
+                .validateClusterProfile(
+                        new GoServerURLValidator(),
+                        new DockerConnectionPoolSizeValidator(),
+                        new WarmPoolSizeValidator(),
+                        new ImageFreshnessTtlValidator()
+                )
                 .pluginStatusReport(null)
                 .agentStatusReport(new AgentStatusReportExecutor(clusterSpecificAgentInstances, ViewBuilder.instance()))
                 .clusterStatusReport(new ClusterStatusReportExecutor(clusterSpecificAgentInstances, ViewBuilder.instance()))
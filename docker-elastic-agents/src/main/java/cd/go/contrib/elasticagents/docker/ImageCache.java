@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.common.ConsoleLogAppender;
+import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
+
+/**
+ * Keeps track of the images pulled on a cluster. When images are pulled on container create, an image pulled within
+ * the cluster's freshness TTL is not pulled again, and containers created at the same time for the same image wait
+ * on a single pull. Images no container has used for {@link #UNUSED_IMAGE_RETENTION} are no longer pre-pulled and
+ * are forgotten.
+ */
+public class ImageCache {
+    private final Map<String, PulledImage> pulledImages = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<PulledImage>> pullsInProgress = new ConcurrentHashMap<>();
+    static final Period UNUSED_IMAGE_RETENTION = Period.days(1);
+
+    private final Map<String, DateTime> lastUsedAt = new ConcurrentHashMap<>();
+    private final Executor prePullExecutor;
+    private final Clock clock;
+
+    public ImageCache() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "docker-image-pre-pull");
+            thread.setDaemon(true);
+            return thread;
+        }), Clock.DEFAULT);
+    }
+
+    ImageCache(Executor prePullExecutor, Clock clock) {
+        this.prePullExecutor = prePullExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Makes sure the image is present on the docker host, pulling it if it is missing or if the cluster pulls on
+     * container create and the last pull is older than the freshness TTL. A fresh image is still looked up on the
+     * host, as it may have been removed since it was pulled.
+     */
+    public void ensure(String imageName,
+                       ClusterProfileProperties clusterProfile,
+                       DockerClient docker,
+                       ConsoleLogAppender consoleLogAppender) throws DockerException, InterruptedException {
+        remember(imageName);
+        if (clusterProfile.pullOnContainerCreate()) {
+            if (!isFresh(imageName, clusterProfile)) {
+                consoleLogAppender.accept("Pulling a fresh version of " + imageName + ".");
+                LOG.info("Pulling a fresh version of " + imageName + ".");
+                pull(imageName, docker, consoleLogAppender);
+                return;
+            }
+            LOG.debug("Image " + imageName + " was pulled recently, not pulling it again unless it was removed from the host.");
+        }
+
+        try {
+            docker.inspectImage(imageName);
+        } catch (ImageNotFoundException ex) {
+            consoleLogAppender.accept("Image " + imageName + " not found, attempting to download.");
+            LOG.info("Image " + imageName + " not found, attempting to download.");
+            pull(imageName, docker, consoleLogAppender);
+        }
+    }
+
+    /**
+     * Pulls, in the background, the images this cluster recently used whose last pull is no longer fresh, so that the
+     * next container for them does not wait on the registry. Only applies when the cluster pulls on container create
+     * with a freshness TTL.
+     */
+    public void prePull(ClusterProfileProperties clusterProfile, Callable<DockerClient> docker) {
+        forgetUnusedImages();
+        if (!clusterProfile.pullOnContainerCreate() || clusterProfile.getImageFreshnessTtl().toStandardDuration().getMillis() <= 0) {
+            return;
+        }
+
+        for (String imageName : lastUsedAt.keySet()) {
+            if (isFresh(imageName, clusterProfile) || pullsInProgress.containsKey(imageName)) {
+                continue;
+            }
+
+            prePullExecutor.execute(() -> {
+                try {
+                    if (!isFresh(imageName, clusterProfile)) {
+                        LOG.info("Pre-pulling image " + imageName + ".");
+                        pull(imageName, docker.call(), message -> {
+                        });
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    LOG.warn("Could not pre-pull image " + imageName, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Records that a container of this cluster uses the image, which keeps it pre-pulled.
+     */
+    public void remember(String imageName) {
+        lastUsedAt.put(imageName, clock.now());
+    }
+
+    boolean isKnown(String imageName) {
+        return lastUsedAt.containsKey(imageName);
+    }
+
+    public PulledImage pulledImage(String imageName) {
+        return pulledImages.get(imageName);
+    }
+
+    private void forgetUnusedImages() {
+        DateTime unusedSince = clock.now().minus(UNUSED_IMAGE_RETENTION);
+        lastUsedAt.forEach((imageName, usedAt) -> {
+            if (usedAt.isBefore(unusedSince) && lastUsedAt.remove(imageName, usedAt)) {
+                LOG.debug("Forgetting image " + imageName + ", it was last used at " + usedAt + ".");
+                pulledImages.remove(imageName);
+            }
+        });
+    }
+
+    private boolean isFresh(String imageName, ClusterProfileProperties clusterProfile) {
+        PulledImage pulledImage = pulledImages.get(imageName);
+        return pulledImage != null && pulledImage.pulledAt.plus(clusterProfile.getImageFreshnessTtl()).isAfter(clock.now());
+    }
+
+    private void pull(String imageName, DockerClient docker, ConsoleLogAppender consoleLogAppender) throws DockerException, InterruptedException {
+        CompletableFuture<PulledImage> pull = new CompletableFuture<>();
+        CompletableFuture<PulledImage> pullInProgress = pullsInProgress.putIfAbsent(imageName, pull);
+        if (pullInProgress != null) {
+            consoleLogAppender.accept("Waiting for the pull of " + imageName + " already in progress.");
+            awaitPull(imageName, pullInProgress);
+            return;
+        }
+
+        try {
+            docker.pull(imageName);
+            PulledImage pulledImage = new PulledImage(docker.inspectImage(imageName).id(), clock.now());
+            PulledImage previous = pulledImages.put(imageName, pulledImage);
+            if (previous != null && !Objects.equals(previous.imageId, pulledImage.imageId)) {
+                LOG.info("Pulled a new version of " + imageName + ": " + pulledImage.imageId + ".");
+            }
+            pull.complete(pulledImage);
+        } catch (DockerException | InterruptedException | RuntimeException e) {
+            pull.completeExceptionally(e);
+            throw e;
+        } finally {
+            pullsInProgress.remove(imageName, pull);
+        }
+    }
+
+    private void awaitPull(String imageName, CompletableFuture<PulledImage> pull) throws DockerException, InterruptedException {
+        try {
+            pull.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DockerException) {
+                throw (DockerException) e.getCause();
+            }
+            if (e.getCause() instanceof InterruptedException) {
+                throw new DockerException("Pull of " + imageName + " was interrupted.", e.getCause());
+            }
+            throw new DockerException("Pull of " + imageName + " failed.", e.getCause());
+        }
+    }
+
+    public static class PulledImage {
+        private final String imageId;
+        private final DateTime pulledAt;
+
+        PulledImage(String imageId, DateTime pulledAt) {
+            this.imageId = imageId;
+            this.pulledAt = pulledAt;
+        }
+
+        public String imageId() {
+            return imageId;
+        }
+
+        public DateTime pulledAt() {
+            return pulledAt;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker;
+
+import cd.go.contrib.elasticagents.docker.models.ElasticProfileConfiguration;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
+
+/**
+ * Pre-created, not yet started, containers of a cluster grouped by the elastic profile they were created for. The
+ * containers are part of the cluster's inventory and count against its maximum number of containers while idle. The
+ * refill thread is only started once the pool is first refilled, and is stopped when the pool is shut down.
+ */
+public class WarmPool {
+    private final Map<String, Deque<DockerContainer>> idleContainers = new HashMap<>();
+    private final Set<String> pendingRefills = ConcurrentHashMap.newKeySet();
+    private ExecutorService executorService;
+    private boolean shutdown;
+
+    public static String poolKey(ElasticProfileConfiguration elasticProfileConfiguration) {
+        return Integer.toHexString(Objects.hashCode(elasticProfileConfiguration));
+    }
+
+    public synchronized DockerContainer take(ElasticProfileConfiguration elasticProfileConfiguration) {
+        Deque<DockerContainer> containers = idleContainers.get(poolKey(elasticProfileConfiguration));
+        return containers == null ? null : containers.pollFirst();
+    }
+
+    public synchronized DockerContainer takeAny() {
+        for (Deque<DockerContainer> containers : idleContainers.values()) {
+            if (!containers.isEmpty()) {
+                return containers.pollFirst();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return false if the pool was shut down, in which case the container was not added.
+     */
+    public synchronized boolean add(String poolKey, DockerContainer container) {
+        if (shutdown) {
+            return false;
+        }
+        idleContainers.computeIfAbsent(poolKey, key -> new ArrayDeque<>()).addLast(container);
+        return true;
+    }
+
+    public synchronized int idleCount(String poolKey) {
+        Deque<DockerContainer> containers = idleContainers.get(poolKey);
+        return containers == null ? 0 : containers.size();
+    }
+
+    public synchronized boolean isIdle(String containerName) {
+        return idleContainers.values().stream()
+                .flatMap(Collection::stream)
+                .anyMatch(container -> container.name().equals(containerName));
+    }
+
+    public synchronized boolean remove(String containerName) {
+        return idleContainers.values().stream()
+                .anyMatch(containers -> containers.removeIf(container -> container.name().equals(containerName)));
+    }
+
+    /**
+     * Schedules a refill of the pool for a profile on the background thread, unless one is already pending.
+     */
+    public synchronized void refill(String poolKey, Runnable refill) {
+        if (shutdown || !pendingRefills.add(poolKey)) {
+            return;
+        }
+
+        if (executorService == null) {
+            executorService = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "docker-warm-pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        executorService.submit(() -> {
+            try {
+                refill.run();
+            } catch (Exception e) {
+                LOG.warn("Could not refill the warm pool " + poolKey, e);
+            } finally {
+                pendingRefills.remove(poolKey);
+            }
+        });
+    }
+
+    /**
+     * Stops refilling the pool and empties it.
+     *
+     * @return the idle containers, which the caller is responsible for removing.
+     */
+    public synchronized List<DockerContainer> shutdown() {
+        shutdown = true;
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+
+        List<DockerContainer> containers = new ArrayList<>();
+        idleContainers.values().forEach(containers::addAll);
+        idleContainers.clear();
+        return containers;
+    }
+}
@@ -42,8 +42,8 @@ public abstract class BaseExecutor<T> extends AbstractExecutor<T> {
     }
 
     protected void refreshInstancesForCluster(ClusterProfileProperties clusterProfileProperties) throws Exception {
-        DockerContainers dockerContainers = clusterToContainersMap.getOrDefault(clusterProfileProperties.uuid(), new DockerContainers());
+        DockerContainers dockerContainers = clusterToContainersMap.computeIfAbsent(clusterProfileProperties.uuid(), clusterId -> new DockerContainers());
         dockerContainers.refreshAll(clusterProfileProperties);
-        clusterToContainersMap.put(clusterProfileProperties.uuid(), dockerContainers);
+        dockerContainers.watch(clusterProfileProperties);
     }
 }
@@ -18,6 +18,7 @@ package cd.go.contrib.elasticagents.docker.executors;
 
 import cd.go.contrib.elasticagents.common.ConsoleLogAppender;
 import cd.go.contrib.elasticagents.common.ElasticAgentRequestClient;
+import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 import cd.go.contrib.elasticagents.docker.DockerContainers;
 import cd.go.contrib.elasticagents.docker.requests.CreateAgentRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
@@ -28,17 +29,38 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
 import static cd.go.plugin.base.GsonTransformer.fromJson;
 
+/**
+ * Acknowledges create agent requests right away and creates the containers on a bounded pool of background threads,
+ * reporting progress to the job console. The request is only rejected, so that the server retries it later, when the
+ * queue of pending creations is full.
+ */
 public class CreateAgentRequestExecutor extends BaseExecutor<CreateAgentRequest> {
     private static final DateTimeFormatter MESSAGE_PREFIX_FORMATTER = DateTimeFormat.forPattern("'##|'HH:mm:ss.SSS '[go]'");
+    private static final int MAX_PARALLEL_CREATIONS = 10;
+    private static final int MAX_PENDING_CREATIONS = 200;
+
     private final ElasticAgentRequestClient pluginRequest;
+    private final Executor executor;
+    private final Set<JobIdentifier> jobsBeingProcessed = ConcurrentHashMap.newKeySet();
 
     public CreateAgentRequestExecutor(Map<String, DockerContainers> clusterToContainerMap,
                                       ElasticAgentRequestClient pluginRequest) {
+        this(clusterToContainerMap, pluginRequest, newCreationExecutor());
+    }
+
+    CreateAgentRequestExecutor(Map<String, DockerContainers> clusterToContainerMap,
+                               ElasticAgentRequestClient pluginRequest,
+                               Executor executor) {
         super(clusterToContainerMap);
         this.pluginRequest = pluginRequest;
+        this.executor = executor;
     }
 
     @Override
@@ -50,11 +72,17 @@ public class CreateAgentRequestExecutor extends BaseExecutor<CreateAgentRequest>
 
         consoleLogAppender.accept(String.format("Received request to create a container of %s at %s", request.getElasticProfileConfiguration().getImage(), new DateTime().toString("yyyy-MM-dd HH:mm:ss ZZ")));
 
+        if (!jobsBeingProcessed.add(request.getJobIdentifier())) {
+            LOG.info(String.format("[Create Agent] A container is already being created for %s, ignoring the request.", request.getJobIdentifier()));
+            return new DefaultGoPluginApiResponse(200);
+        }
+
         try {
             refreshInstancesForCluster(request.getClusterProfileProperties());
             DockerContainers dockerContainers = clusterToContainersMap.get(request.getClusterProfileProperties().uuid());
-            dockerContainers.create(request, pluginRequest, consoleLogAppender);
+            executor.execute(() -> create(dockerContainers, request, consoleLogAppender));
         } catch (Exception e) {
+            jobsBeingProcessed.remove(request.getJobIdentifier());
             consoleLogAppender.accept(String.format("Failed while creating container: %s", e.getMessage()));
             throw new RuntimeException(e);
         }
@@ -62,6 +90,27 @@ public class CreateAgentRequestExecutor extends BaseExecutor<CreateAgentRequest>
         return new DefaultGoPluginApiResponse(200);
     }
 
+    private void create(DockerContainers dockerContainers, CreateAgentRequest request, ConsoleLogAppender consoleLogAppender) {
+        try {
+            dockerContainers.create(request, pluginRequest, consoleLogAppender);
+        } catch (Exception e) {
+            LOG.error(String.format("[Create Agent] Failed while creating container for %s", request.getJobIdentifier()), e);
+            consoleLogAppender.accept(String.format("Failed while creating container: %s", e.getMessage()));
+        } finally {
+            jobsBeingProcessed.remove(request.getJobIdentifier());
+        }
+    }
+
+    private static Executor newCreationExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(MAX_PARALLEL_CREATIONS, MAX_PARALLEL_CREATIONS, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(MAX_PENDING_CREATIONS), runnable -> {
+            Thread thread = new Thread(runnable, "docker-create-agent-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     @Override
     protected CreateAgentRequest parseRequest(String requestBody) {
         return fromJson(requestBody, CreateAgentRequest.class);
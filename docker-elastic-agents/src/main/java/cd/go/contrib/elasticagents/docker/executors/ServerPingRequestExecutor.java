@@ -16,6 +16,7 @@
 
 package cd.go.contrib.elasticagents.docker.executors;
 
+import cd.go.contrib.elasticagents.common.AgentTerminator;
 import cd.go.contrib.elasticagents.common.ElasticAgentRequestClient;
 import cd.go.contrib.elasticagents.common.agent.Agent;
 import cd.go.contrib.elasticagents.common.agent.Agents;
@@ -26,39 +27,119 @@ import cd.go.contrib.elasticagents.docker.requests.ServerPingRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static cd.go.contrib.elasticagents.docker.DockerPlugin.LOG;
 import static cd.go.plugin.base.GsonTransformer.fromJson;
 
 public class ServerPingRequestExecutor extends BaseExecutor<ServerPingRequest> {
+    private static final int MAX_PARALLEL_CLUSTERS = 8;
+    private static final Duration CLUSTER_CLEANUP_TIMEOUT = Duration.ofMinutes(2);
+
     private final ElasticAgentRequestClient pluginRequest;
+    private final ExecutorService executorService;
+    private final Duration clusterCleanupTimeout;
+    private final AgentTerminator agentTerminator;
 
     public ServerPingRequestExecutor(Map<String, DockerContainers> clusterToContainersMap,
                                      ElasticAgentRequestClient pluginRequest) {
+        this(clusterToContainersMap, pluginRequest, newCleanupExecutor(MAX_PARALLEL_CLUSTERS), CLUSTER_CLEANUP_TIMEOUT);
+    }
+
+    ServerPingRequestExecutor(Map<String, DockerContainers> clusterToContainersMap,
+                              ElasticAgentRequestClient pluginRequest,
+                              ExecutorService executorService,
+                              Duration clusterCleanupTimeout) {
+        this(clusterToContainersMap, pluginRequest, executorService, clusterCleanupTimeout, new AgentTerminator("docker-terminate-agent"));
+    }
+
+    ServerPingRequestExecutor(Map<String, DockerContainers> clusterToContainersMap,
+                              ElasticAgentRequestClient pluginRequest,
+                              ExecutorService executorService,
+                              Duration clusterCleanupTimeout,
+                              AgentTerminator agentTerminator) {
         super(clusterToContainersMap);
         this.pluginRequest = pluginRequest;
+        this.executorService = executorService;
+        this.clusterCleanupTimeout = clusterCleanupTimeout;
+        this.agentTerminator = agentTerminator;
     }
 
     @Override
     protected GoPluginApiResponse execute(ServerPingRequest request) {
         //todo: remove possiblyMissingAgents, refer to ecs/kubernetes server ping implementation
+        pluginRequest.startAgentsSnapshot();
         try {
-            refreshInstancesForAllClusters(request.getAllClusterProfileConfigurations());
-            Set<Agent> possiblyMissingAgents = new HashSet<>();
             List<ClusterProfileProperties> allClusterProfileProperties = request.getAllClusterProfileConfigurations();
+            Set<Agent> possiblyMissingAgents = ConcurrentHashMap.newKeySet();
+            stopWatchingRemovedClusters(allClusterProfileProperties);
 
+            Map<ClusterProfileProperties, Future<?>> cleanups = new LinkedHashMap<>();
             for (ClusterProfileProperties clusterProfileProperties : allClusterProfileProperties) {
-                performCleanupForACluster(clusterProfileProperties, clusterToContainersMap.get(clusterProfileProperties.uuid()), possiblyMissingAgents);
+                cleanups.put(clusterProfileProperties, executorService.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    refreshInstancesForCluster(clusterProfileProperties);
+                    DockerContainers dockerContainers = clusterToContainersMap.get(clusterProfileProperties.uuid());
+                    performCleanupForACluster(clusterProfileProperties, dockerContainers, possiblyMissingAgents);
+                    dockerContainers.prePullImages(clusterProfileProperties);
+                    LOG.info(String.format("[Server Ping] Cleanup of cluster %s took %d ms.", clusterProfileProperties.uuid(), System.currentTimeMillis() - start));
+                    return null;
+                }));
             }
 
-            refreshInstancesAgainToCheckForPossiblyMissingAgents(allClusterProfileProperties, possiblyMissingAgents);
-            return DefaultGoPluginApiResponse.success("");
+            List<Exception> failures = awaitCleanups(cleanups);
+            if (failures.isEmpty()) {
+                refreshInstancesAgainToCheckForPossiblyMissingAgents(allClusterProfileProperties, possiblyMissingAgents);
+                return DefaultGoPluginApiResponse.success("");
+            }
+
+            LOG.warn("[Server Ping] Skipping the check for missing agents as the cleanup of some clusters did not complete.");
+            RuntimeException exception = new RuntimeException(String.format("Server ping failed for %d of %d cluster(s).", failures.size(), cleanups.size()));
+            failures.forEach(exception::addSuppressed);
+            throw exception;
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            pluginRequest.endAgentsSnapshot();
+        }
+    }
+
+    private void stopWatchingRemovedClusters(List<ClusterProfileProperties> allClusterProfileProperties) {
+        Set<String> clusterIds = allClusterProfileProperties.stream().map(ClusterProfileProperties::uuid).collect(Collectors.toSet());
+        for (String clusterId : new ArrayList<>(clusterToContainersMap.keySet())) {
+            if (!clusterIds.contains(clusterId)) {
+                LOG.info(String.format("[Server Ping] Cluster %s no longer exists, it will not be watched anymore.", clusterId));
+                clusterToContainersMap.remove(clusterId).stopWatching();
+            }
         }
     }
 
+    private List<Exception> awaitCleanups(Map<ClusterProfileProperties, Future<?>> cleanups) throws InterruptedException {
+        long deadline = System.nanoTime() + clusterCleanupTimeout.toNanos();
+        List<Exception> failures = new ArrayList<>();
+
+        for (Map.Entry<ClusterProfileProperties, Future<?>> entry : cleanups.entrySet()) {
+            String clusterId = entry.getKey().uuid();
+            try {
+                entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                LOG.error(String.format("[Server Ping] Cleanup of cluster %s did not finish within %d seconds.", clusterId, clusterCleanupTimeout.getSeconds()));
+                failures.add(new RuntimeException(String.format("Cleanup of cluster %s timed out.", clusterId), e));
+            } catch (ExecutionException e) {
+                LOG.error(String.format("[Server Ping] Cleanup of cluster %s failed.", clusterId), e.getCause());
+                failures.add(new RuntimeException(String.format("Cleanup of cluster %s failed.", clusterId), e.getCause()));
+            }
+        }
+        return failures;
+    }
+
     private void performCleanupForACluster(ClusterProfileProperties clusterProfileProperties,
                                            DockerContainers dockerContainers,
                                            Set<Agent> possiblyMissingAgents) throws Exception {
@@ -67,8 +148,6 @@ public class ServerPingRequestExecutor extends BaseExecutor<ServerPingRequest> {
         for (Agent agent : allAgents.agents()) {
             if (dockerContainers.find(agent.elasticAgentId()) == null) {
                 possiblyMissingAgents.add(agent);
-            } else {
-                possiblyMissingAgents.remove(agent);
             }
         }
 
@@ -83,14 +162,21 @@ public class ServerPingRequestExecutor extends BaseExecutor<ServerPingRequest> {
 
     private void refreshInstancesAgainToCheckForPossiblyMissingAgents(List<ClusterProfileProperties> allClusterProfileProperties,
                                                                       Set<Agent> possiblyMissingAgents) throws Exception {
+        List<DockerContainers> inventories = new ArrayList<>();
         DockerContainers dockerContainers = new DockerContainers();
         for (ClusterProfileProperties clusterProfileProperties : allClusterProfileProperties) {
-            dockerContainers.refreshAll(clusterProfileProperties);
+            DockerContainers watchedContainers = clusterToContainersMap.get(clusterProfileProperties.uuid());
+            if (watchedContainers != null && watchedContainers.isInSync()) {
+                inventories.add(watchedContainers);
+            } else {
+                dockerContainers.refreshAll(clusterProfileProperties);
+            }
         }
+        inventories.add(dockerContainers);
 
         Agents missingAgents = new Agents();
         for (Agent possiblyMissingAgent : possiblyMissingAgents) {
-            if (!dockerContainers.hasInstance(possiblyMissingAgent.elasticAgentId())) {
+            if (inventories.stream().noneMatch(containers -> containers.hasInstance(possiblyMissingAgent.elasticAgentId()))) {
                 LOG.warn("[Server Ping] Was expecting a container with name " + possiblyMissingAgent.elasticAgentId() + ", but it was missing!");
                 missingAgents.add(possiblyMissingAgent);
             }
@@ -107,13 +193,23 @@ public class ServerPingRequestExecutor extends BaseExecutor<ServerPingRequest> {
     private void terminateDisabledAgents(Agents agents,
                                          ClusterProfileProperties clusterProfileProperties,
                                          DockerContainers dockerContainers) throws Exception {
-        Collection<Agent> toBeDeleted = agents.findInstancesToTerminate();
+        Collection<Agent> toBeTerminated = agents.findInstancesToTerminate();
 
-        for (Agent agent : toBeDeleted) {
-            dockerContainers.terminate(agent.elasticAgentId(), clusterProfileProperties);
-        }
+        AgentTerminator.Result result = agentTerminator.terminate(toBeTerminated,
+                agent -> dockerContainers.terminate(agent.elasticAgentId(), clusterProfileProperties));
+        result.getFailures().forEach((agent, e) ->
+                LOG.error(String.format("[Server Ping] Could not terminate the container of agent %s, it will be retried on the next server ping.", agent.elasticAgentId()), e));
+
+        pluginRequest.deleteAgents(result.getTerminated());
+    }
 
-        pluginRequest.deleteAgents(toBeDeleted);
+    private static ExecutorService newCleanupExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "docker-server-ping-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
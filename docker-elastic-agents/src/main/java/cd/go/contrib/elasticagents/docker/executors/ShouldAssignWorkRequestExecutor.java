@@ -46,7 +46,7 @@ public class ShouldAssignWorkRequestExecutor extends BaseExecutor<ShouldAssignWo
                 return DefaultGoPluginApiResponse.success("false");
             }
 
-            if (instance.getJobIdentifier().equals(request.getJobIdentifier())) {
+            if (request.getJobIdentifier().equals(instance.getJobIdentifier())) {
                 return DefaultGoPluginApiResponse.success("true");
             }
 
@@ -17,6 +17,7 @@
 package cd.go.contrib.elasticagents.docker.models;
 
 import cd.go.contrib.elasticagents.common.EnvironmentVariable;
+import cd.go.contrib.elasticagents.common.LogTail;
 import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 
 import java.util.List;
@@ -28,7 +29,7 @@ public class AgentStatusReport {
     private final String image;
     private final String command;
     private final String ipAddress;
-    private final String logs;
+    private final LogTail logs;
     private final List<EnvironmentVariable> environmentVariables;
     private final List<String> hosts;
 
@@ -38,7 +39,7 @@ public class AgentStatusReport {
                              String image,
                              String command,
                              String ipAddress,
-                             String logs,
+                             LogTail logs,
                              List<EnvironmentVariable> environmentVariables,
                              List<String> hosts) {
         this.jobIdentifier = jobIdentifier;
@@ -77,7 +78,15 @@ public class AgentStatusReport {
     }
 
     public String getLogs() {
-        return logs;
+        return logs == null ? null : logs.getText();
+    }
+
+    public boolean isLogsTruncated() {
+        return logs != null && logs.isTruncated();
+    }
+
+    public int getLogLines() {
+        return logs == null ? 0 : logs.getLines();
     }
 
     public List<EnvironmentVariable> getEnvironmentVariables() {
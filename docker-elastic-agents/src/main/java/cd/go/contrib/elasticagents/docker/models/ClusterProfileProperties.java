@@ -31,6 +31,7 @@ import java.util.Collection;
 import java.util.Objects;
 
 import static cd.go.plugin.base.GsonTransformer.fromJson;
+import static org.apache.commons.lang.StringUtils.isBlank;
 
 @Setter
 @ToString(doNotUseGetters = true)
@@ -38,6 +39,10 @@ import static cd.go.plugin.base.GsonTransformer.fromJson;
 @Accessors(chain = true)
 public class ClusterProfileProperties implements ClusterProfileConfiguration {
     public static final String GO_SERVER_URL = "go_server_url";
+    public static final String DOCKER_CONNECTION_POOL_SIZE = "docker_connection_pool_size";
+    public static final int DEFAULT_DOCKER_CONNECTION_POOL_SIZE = 100;
+    public static final String WARM_POOL_SIZE = "warm_pool_size";
+    public static final String IMAGE_FRESHNESS_TTL = "image_freshness_ttl";
     @Expose
     @SerializedName(GO_SERVER_URL)
     @Property(name = GO_SERVER_URL, required = true)
@@ -108,6 +113,21 @@ public class ClusterProfileProperties implements ClusterProfileConfiguration {
     @Property(name = "pull_on_container_create")
     private boolean pullOnContainerCreate;
 
+    @Expose
+    @SerializedName(IMAGE_FRESHNESS_TTL)
+    @Property(name = IMAGE_FRESHNESS_TTL)
+    private String imageFreshnessTtl;
+
+    @Expose
+    @SerializedName(DOCKER_CONNECTION_POOL_SIZE)
+    @Property(name = DOCKER_CONNECTION_POOL_SIZE)
+    private String dockerConnectionPoolSize;
+
+    @Expose
+    @SerializedName(WARM_POOL_SIZE)
+    @Property(name = WARM_POOL_SIZE)
+    private String warmPoolSize;
+
     private Period autoRegisterPeriod;
 
     public Period getAutoRegisterPeriod() {
@@ -176,6 +196,31 @@ public class ClusterProfileProperties implements ClusterProfileConfiguration {
         return pullOnContainerCreate;
     }
 
+    /**
+     * How long a pulled image is considered fresh when images are pulled on container create. Blank, the default,
+     * pulls the image for every container.
+     */
+    public Period getImageFreshnessTtl() {
+        if (isBlank(imageFreshnessTtl)) {
+            return Period.ZERO;
+        }
+        return new Period().withMinutes(Integer.parseInt(imageFreshnessTtl.trim()));
+    }
+
+    public int getDockerConnectionPoolSize() {
+        if (isBlank(dockerConnectionPoolSize)) {
+            return DEFAULT_DOCKER_CONNECTION_POOL_SIZE;
+        }
+        return Integer.parseInt(dockerConnectionPoolSize.trim());
+    }
+
+    public int getWarmPoolSize() {
+        if (isBlank(warmPoolSize)) {
+            return 0;
+        }
+        return Integer.parseInt(warmPoolSize.trim());
+    }
+
     public static ClusterProfileProperties fromJSON(String json) {
         return fromJson(json, ClusterProfileProperties.class);
     }
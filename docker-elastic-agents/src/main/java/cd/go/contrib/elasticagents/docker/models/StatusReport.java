@@ -16,6 +16,7 @@
 
 package cd.go.contrib.elasticagents.docker.models;
 
+import cd.go.contrib.elasticagents.common.AgentCapacity;
 import com.google.gson.annotations.Expose;
 
 import java.util.List;
@@ -33,15 +34,18 @@ public class StatusReport {
     private final String dockerVersion;
     @Expose
     private final List<ContainerStatusReport> containerStatusReports;
+    @Expose
+    private final AgentCapacity.Utilisation capacity;
 
     public StatusReport(String os, String architecture, String dockerVersion, Integer cpus, String memory,
-                        List<ContainerStatusReport> containerStatusReports) {
+                        List<ContainerStatusReport> containerStatusReports, AgentCapacity.Utilisation capacity) {
         this.os = os;
         this.architecture = architecture;
         this.dockerVersion = dockerVersion;
         this.cpus = cpus;
         this.memory = memory;
         this.containerStatusReports = containerStatusReports;
+        this.capacity = capacity;
     }
 
     public Integer getCpus() {
@@ -67,4 +71,8 @@ public class StatusReport {
     public List<ContainerStatusReport> getContainerStatusReports() {
         return containerStatusReports;
     }
+
+    public AgentCapacity.Utilisation getCapacity() {
+        return capacity;
+    }
 }
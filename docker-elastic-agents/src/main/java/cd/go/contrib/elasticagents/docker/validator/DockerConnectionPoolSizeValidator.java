@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker.validator;
+
+import cd.go.plugin.base.validation.ValidationResult;
+import cd.go.plugin.base.validation.Validator;
+
+import java.util.Map;
+
+import static cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties.DOCKER_CONNECTION_POOL_SIZE;
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+public class DockerConnectionPoolSizeValidator implements Validator {
+    @Override
+    public ValidationResult validate(Map<String, String> requestBody) {
+        ValidationResult result = new ValidationResult();
+        String poolSize = requestBody.get(DOCKER_CONNECTION_POOL_SIZE);
+        if (isBlank(poolSize)) {
+            return result;
+        }
+
+        try {
+            if (Integer.parseInt(poolSize.trim()) > 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        result.add(DOCKER_CONNECTION_POOL_SIZE, "Docker connection pool size must be a positive integer.");
+        return result;
+    }
+}
@@ -74,4 +74,11 @@ class ClusterProfilePropertiesTest {
         assertThat(jobCompletionRequest.getClusterProfileConfiguration().uuid()).isEqualTo(createAgentRequest.getClusterProfileProperties().uuid());
 
     }
+
+    @Test
+    void shouldDefaultDockerConnectionPoolSizeWhenNotSpecified() {
+        assertThat(new ClusterProfileProperties().getDockerConnectionPoolSize()).isEqualTo(100);
+        assertThat(new ClusterProfileProperties().setDockerConnectionPoolSize("").getDockerConnectionPoolSize()).isEqualTo(100);
+        assertThat(new ClusterProfileProperties().setDockerConnectionPoolSize("20").getDockerConnectionPoolSize()).isEqualTo(20);
+    }
 }
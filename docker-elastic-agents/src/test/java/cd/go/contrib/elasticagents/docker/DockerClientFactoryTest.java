@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
+import com.spotify.docker.client.DefaultDockerClient;
+import org.joda.time.Period;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class DockerClientFactoryTest {
+    private Clock.TestClock clock;
+    private List<DefaultDockerClient> created;
+    private DockerClientFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        clock = new Clock.TestClock();
+        created = new ArrayList<>();
+        factory = new DockerClientFactory(properties -> {
+            DefaultDockerClient client = mock(DefaultDockerClient.class);
+            when(client.ping()).thenReturn("OK");
+            created.add(client);
+            return client;
+        }, clock);
+    }
+
+    @Test
+    void shouldKeepOneClientPerClusterProfile() throws Exception {
+        ClusterProfileProperties cluster = cluster("http://docker-1:2375");
+        ClusterProfileProperties otherCluster = cluster("http://docker-2:2375");
+
+        assertThat(factory.client(cluster)).isSameAs(factory.client(cluster));
+        assertThat(factory.client(otherCluster)).isNotSameAs(factory.client(cluster));
+        assertThat(created).hasSize(2);
+    }
+
+    @Test
+    void shouldCloseAndReplaceClientsThatWereNotUsedForTheIdleTimeout() throws Exception {
+        ClusterProfileProperties cluster = cluster("http://docker-1:2375");
+        DefaultDockerClient idleClient = (DefaultDockerClient) factory.client(cluster);
+
+        clock.forward(Period.minutes((int) DockerClientFactory.IDLE_TIMEOUT.toMinutes() + 1));
+
+        assertThat(factory.client(cluster)).isNotSameAs(idleClient);
+        verify(idleClient).close();
+    }
+
+    @Test
+    void shouldOnlyHealthCheckAClientOncePerInterval() throws Exception {
+        ClusterProfileProperties cluster = cluster("http://docker-1:2375");
+        DefaultDockerClient client = (DefaultDockerClient) factory.client(cluster);
+
+        factory.client(cluster);
+        verify(client, never()).ping();
+
+        clock.forward(Period.minutes((int) DockerClientFactory.HEALTH_CHECK_INTERVAL.toMinutes() + 1));
+        assertThat(factory.client(cluster)).isSameAs(client);
+        verify(client).ping();
+    }
+
+    @Test
+    void shouldReplaceAClientThatFailsTheHealthCheck() throws Exception {
+        ClusterProfileProperties cluster = cluster("http://docker-1:2375");
+        DefaultDockerClient unhealthyClient = (DefaultDockerClient) factory.client(cluster);
+        when(unhealthyClient.ping()).thenThrow(new RuntimeException("connection refused"));
+
+        clock.forward(Period.minutes((int) DockerClientFactory.HEALTH_CHECK_INTERVAL.toMinutes() + 1));
+
+        assertThat(factory.client(cluster)).isNotSameAs(unhealthyClient);
+        verify(unhealthyClient).close();
+        assertThat(created).hasSize(2);
+    }
+
+    private ClusterProfileProperties cluster(String dockerUri) {
+        return new ClusterProfileProperties()
+                .setGoServerUrl("https://gocd.example.com/go")
+                .setDockerURI(dockerUri)
+                .setMaxDockerContainers("1")
+                .setAutoRegisterTimeout("1");
+    }
+}
@@ -300,4 +300,54 @@ class DockerContainerTest extends BaseTest {
 
         assertThat(containerInfo.hostConfig().binds()).contains("/:/A", "/:/B:ro");
     }
+
+    @Test
+    void shouldWriteTheAutoRegisterEnvironmentOfAJobAsAShellScript() {
+        request.setEnvironment("it's production");
+
+        assertThat(DockerContainer.jobEnvironment(request, "agent-id").split("\n")).containsExactlyInAnyOrder(
+                "GO_EA_AUTO_REGISTER_ELASTIC_AGENT_ID='agent-id'",
+                "GO_EA_AUTO_REGISTER_ELASTIC_PLUGIN_ID='" + Constants.PLUGIN_ID + "'",
+                "GO_EA_AUTO_REGISTER_KEY='key'",
+                "GO_EA_AUTO_REGISTER_ENVIRONMENT='it'\\''s production'");
+    }
+
+    @Test
+    void shouldNameAHandedOutContainerAfterItsJob() {
+        assertThat(DockerContainer.handedOutName("warm", jobIdentifier)).isEqualTo("warm-job-1");
+        assertThat(DockerContainer.handedOutName("warm", new JobIdentifier())).isEqualTo("warm");
+    }
+
+    @Test
+    void shouldCreateAWarmContainerWithoutStartingIt() throws Exception {
+        ClusterProfileProperties clusterProfile = createClusterProfiles();
+        new ImageCache().ensure(DockerContainer.image(request.getElasticProfileConfiguration().getImage()), clusterProfile, docker, consoleLogAppender);
+
+        DockerContainer container = DockerContainer.createWarm(request.getElasticProfileConfiguration(), clusterProfile, docker, "pool");
+        containers.add(container.name());
+
+        ContainerInfo containerInfo = docker.inspectContainer(container.id());
+        assertThat(containerInfo.state().running()).isFalse();
+        assertThat(containerInfo.config().labels()).containsEntry(Constants.WARM_POOL_LABEL_KEY, "pool");
+        assertThat(containerInfo.config().env()).noneMatch(env -> env.startsWith("GO_EA_AUTO_REGISTER"));
+        assertThat(containerInfo.config().entrypoint()).startsWith("/bin/sh", "-c");
+    }
+
+    @Test
+    void shouldHandOutAWarmContainerToAJob() throws Exception {
+        ClusterProfileProperties clusterProfile = createClusterProfiles();
+        new ImageCache().ensure(DockerContainer.image(request.getElasticProfileConfiguration().getImage()), clusterProfile, docker, consoleLogAppender);
+        DockerContainer warmContainer = DockerContainer.createWarm(request.getElasticProfileConfiguration(), clusterProfile, docker, "pool");
+        containers.add(warmContainer.name());
+
+        DockerContainer container = warmContainer.handOut(request, docker, consoleLogAppender);
+
+        containers.add(container.name());
+
+        assertThat(container.name()).isEqualTo(warmContainer.name() + "-job-1");
+        assertThat(container.getJobIdentifier()).isEqualTo(jobIdentifier);
+        ContainerInfo containerInfo = docker.inspectContainer(container.id());
+        assertThat(containerInfo.state().running()).isTrue();
+        assertThat(DockerContainer.fromContainerInfo(containerInfo).runs(jobIdentifier)).isTrue();
+    }
 }
@@ -28,18 +28,27 @@ import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
 import cd.go.contrib.elasticagents.docker.models.ElasticProfileConfiguration;
 import cd.go.contrib.elasticagents.docker.models.StatusReport;
 import cd.go.contrib.elasticagents.docker.requests.CreateAgentRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.Event;
 import org.joda.time.Period;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static cd.go.plugin.base.GsonTransformer.toJson;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class DockerContainersTest extends BaseTest {
     private AbstractCreateAgentRequest request;
@@ -246,4 +255,160 @@ class DockerContainersTest extends BaseTest {
         assertThat(agentStatusReport.getElasticAgentId()).isEqualTo(container.name());
         assertThat(agentStatusReport.getJobIdentifier()).isEqualTo(request.getJobIdentifier());
     }
+
+    @Test
+    void shouldApplyContainerLifecycleEventsToTheInventory() {
+        dockerContainers.apply(containerEvent("create", "agent-1"));
+
+        DockerContainer container = dockerContainers.find("agent-1");
+        assertThat(container).isNotNull();
+        assertThat(container.id()).isEqualTo("id-agent-1");
+        assertThat(container.image()).isEqualTo("alpine:latest");
+        assertThat(container.state()).isEqualTo("created");
+        assertThat(container.getJobIdentifier()).isEqualTo(jobIdentifier);
+        assertThat(container.getEnvironment()).isEqualTo("production");
+
+        dockerContainers.apply(containerEvent("start", "agent-1"));
+        assertThat(dockerContainers.find("agent-1").state()).isEqualTo("running");
+
+        dockerContainers.apply(containerEvent("die", "agent-1"));
+        assertThat(dockerContainers.find("agent-1").state()).isEqualTo("exited");
+
+        dockerContainers.apply(containerEvent("destroy", "agent-1"));
+        assertThat(dockerContainers.hasInstance("agent-1")).isFalse();
+    }
+
+    @Test
+    void shouldRegisterAContainerOnStartEventEvenIfItsCreateEventWasMissed() {
+        dockerContainers.apply(containerEvent("start", "agent-1"));
+
+        assertThat(dockerContainers.find("agent-1").state()).isEqualTo("running");
+    }
+
+    @Test
+    void shouldIgnoreEventsThatDoNotAffectTheInventory() {
+        dockerContainers.apply(containerEvent("exec_start", "agent-1"));
+        dockerContainers.apply(containerEvent("destroy", "unknown"));
+
+        assertThat(dockerContainers.isEmpty()).isTrue();
+    }
+
+    @Test
+    void shouldFindAContainerByJobWhenTheInventoryHoldsWarmContainers() throws Exception {
+        dockerContainers.apply(containerEvent("create", "warm-1", null));
+        dockerContainers.apply(containerEvent("create", "warm-2", jobIdentifier));
+
+        assertThat(dockerContainers.find(jobIdentifier)).map(DockerContainer::name).contains("warm-2");
+        assertThat(dockerContainers.find(new JobIdentifier("up42", 3L, "foo", "stage", "1", "job", 2L))).isEmpty();
+
+        Container warm1 = listedContainer("warm-1");
+        Container warm2 = listedContainer("warm-2");
+        DockerClient docker = mock(DockerClient.class);
+        when(docker.listContainers(any(), any())).thenReturn(Arrays.asList(warm1, warm2));
+        dockerContainers.resync(docker);
+
+        assertThat(dockerContainers.find(jobIdentifier)).map(DockerContainer::name).contains("warm-2");
+        assertThat(dockerContainers.find("warm-2").state()).isEqualTo("running");
+    }
+
+    @Test
+    void shouldKeepContainersRegisteredWhileTheResyncListingIsInFlight() throws Exception {
+        dockerContainers.apply(containerEvent("create", "gone"));
+        Container listed = listedContainer("listed");
+        Event createdMeanwhile = containerEvent("create", "created-meanwhile");
+        DockerClient docker = mock(DockerClient.class);
+        when(docker.listContainers(any(), any())).thenAnswer(invocation -> {
+            dockerContainers.apply(createdMeanwhile);
+            return Collections.singletonList(listed);
+        });
+
+        dockerContainers.resync(docker);
+
+        assertThat(dockerContainers.hasInstance("created-meanwhile")).isTrue();
+        assertThat(dockerContainers.hasInstance("listed")).isTrue();
+        assertThat(dockerContainers.hasInstance("gone")).isFalse();
+    }
+
+    @Test
+    void shouldFindAHandedOutWarmContainerByJobAfterARestart() throws Exception {
+        Container warm = listedContainer("warm-1-job-1");
+        Container idle = listedContainer("warm-2");
+        DockerClient docker = mock(DockerClient.class);
+        when(docker.listContainers(any(), any())).thenReturn(Arrays.asList(warm, idle));
+
+        dockerContainers.resync(docker);
+
+        assertThat(dockerContainers.find(jobIdentifier)).map(DockerContainer::name).contains("warm-1-job-1");
+        assertThat(dockerContainers.find(new JobIdentifier("up42", 3L, "foo", "stage", "1", "job", 2L))).isEmpty();
+    }
+
+    private Container listedContainer(String name) {
+        Container container = mock(Container.class);
+        when(container.id()).thenReturn("id-" + name);
+        when(container.names()).thenReturn(ImmutableList.of("/" + name));
+        when(container.labels()).thenReturn(ImmutableMap.of(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID));
+        when(container.created()).thenReturn(System.currentTimeMillis() / 1000);
+        when(container.image()).thenReturn("alpine:latest");
+        when(container.state()).thenReturn("running");
+        return container;
+    }
+
+    private Event containerEvent(String action, String name) {
+        return containerEvent(action, name, jobIdentifier);
+    }
+
+    private Event containerEvent(String action, String name, JobIdentifier jobIdentifier) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("name", name);
+        attributes.put("image", "alpine:latest");
+        attributes.put(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
+        attributes.put(Constants.ENVIRONMENT_LABEL_KEY, "production");
+        if (jobIdentifier != null) {
+            attributes.put(Constants.JOB_IDENTIFIER_LABEL_KEY, toJson(jobIdentifier));
+        }
+
+        Event.Actor actor = mock(Event.Actor.class);
+        when(actor.id()).thenReturn("id-" + name);
+        when(actor.attributes()).thenReturn(ImmutableMap.copyOf(attributes));
+
+        Event event = mock(Event.class);
+        when(event.type()).thenReturn(Event.Type.CONTAINER);
+        when(event.action()).thenReturn(action);
+        when(event.actor()).thenReturn(actor);
+        when(event.timeNano()).thenReturn(System.currentTimeMillis() * 1_000_000);
+        return event;
+    }
+
+    @Test
+    void shouldHandOutAWarmContainerWhenTheWarmPoolIsEnabled() throws Exception {
+        clusterProfile.setMaxDockerContainers("2").setWarmPoolSize("1");
+        ElasticProfileConfiguration elasticProfileConfiguration = (ElasticProfileConfiguration) request.getElasticProfileConfiguration();
+        dockerContainers.warmUp(WarmPool.poolKey(elasticProfileConfiguration), elasticProfileConfiguration, clusterProfile);
+        DockerContainer warmContainer = dockerContainers.warmPool.take(elasticProfileConfiguration);
+        containers.add(warmContainer.name());
+        dockerContainers.warmPool.add(WarmPool.poolKey(elasticProfileConfiguration), warmContainer);
+
+        DockerContainer container = dockerContainers.create(request, mock(ElasticAgentRequestClient.class), consoleLogAppender);
+        containers.add(container.name());
+
+        assertThat(container.name()).isEqualTo(warmContainer.name() + "-job-1");
+        assertThat(container.getJobIdentifier()).isEqualTo(jobIdentifier);
+        assertThat(dockerContainers.hasInstance(warmContainer.name())).isFalse();
+    }
+
+    @Test
+    void shouldEvictAWarmContainerOfAnotherProfileWhenAtCapacity() throws Exception {
+        clusterProfile.setMaxDockerContainers("1").setWarmPoolSize("1");
+        ElasticProfileConfiguration otherProfile = new ElasticProfileConfiguration().setImage("alpine").setCommand("/bin/sleep\n10");
+        dockerContainers.warmUp(WarmPool.poolKey(otherProfile), otherProfile, clusterProfile);
+        DockerContainer warmContainer = dockerContainers.warmPool.take(otherProfile);
+        containers.add(warmContainer.name());
+        dockerContainers.warmPool.add(WarmPool.poolKey(otherProfile), warmContainer);
+
+        DockerContainer container = dockerContainers.create(request, mock(ElasticAgentRequestClient.class), consoleLogAppender);
+        containers.add(container.name());
+
+        assertThat(container.name()).isNotEqualTo(warmContainer.name());
+        assertThat(dockerContainers.hasInstance(warmContainer.name())).isFalse();
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.ImageInfo;
+import org.joda.time.Period;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class ImageCacheTest {
+    private final Clock.TestClock clock = new Clock.TestClock();
+    private DockerClient docker;
+    private ImageInfo imageInfo;
+    private ImageCache imageCache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        docker = mock(DockerClient.class);
+        imageInfo = mock(ImageInfo.class);
+        when(imageInfo.id()).thenReturn("sha256:abc");
+        when(docker.inspectImage("alpine:latest")).thenReturn(imageInfo);
+        imageCache = new ImageCache(Runnable::run, clock);
+    }
+
+    @Test
+    void shouldNotPullAnImagePulledWithinTheFreshnessTtl() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true).setImageFreshnessTtl("5");
+
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+
+        verify(docker, times(1)).pull("alpine:latest");
+        assertThat(imageCache.pulledImage("alpine:latest").imageId()).isEqualTo("sha256:abc");
+    }
+
+    @Test
+    void shouldPullAgainOnceTheFreshnessTtlExpires() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true).setImageFreshnessTtl("5");
+
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+        clock.forward(Period.minutes(6));
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+
+        verify(docker, times(2)).pull("alpine:latest");
+    }
+
+    @Test
+    void shouldPullAFreshImageAgainWhenItWasRemovedFromTheHost() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true).setImageFreshnessTtl("5");
+        when(docker.inspectImage("alpine:latest")).thenReturn(imageInfo).thenThrow(new ImageNotFoundException("alpine:latest")).thenReturn(imageInfo);
+
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+
+        verify(docker, times(2)).pull("alpine:latest");
+    }
+
+    @Test
+    void shouldPullForEveryContainerWhenNoFreshnessTtlIsConfigured() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true);
+
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+
+        verify(docker, times(2)).pull("alpine:latest");
+    }
+
+    @Test
+    void shouldOnlyPullMissingImagesWhenNotPullingOnContainerCreate() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties();
+        when(docker.inspectImage("busybox:latest")).thenThrow(new ImageNotFoundException("busybox:latest")).thenReturn(imageInfo);
+
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+        imageCache.ensure("busybox:latest", clusterProfile, docker, message -> {
+        });
+
+        verify(docker, never()).pull("alpine:latest");
+        verify(docker).pull("busybox:latest");
+    }
+
+    @Test
+    void shouldCollapseConcurrentPullsOfTheSameImage() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true);
+        CountDownLatch pullStarted = new CountDownLatch(1);
+        CountDownLatch finishPull = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            pullStarted.countDown();
+            finishPull.await();
+            return null;
+        }).when(docker).pull("alpine:latest");
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Future<?> first = executorService.submit(() -> {
+            imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+            });
+            return null;
+        });
+        pullStarted.await();
+        CountDownLatch waiting = new CountDownLatch(1);
+        Future<?> second = executorService.submit(() -> {
+            imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+                if (message.startsWith("Waiting")) {
+                    waiting.countDown();
+                }
+            });
+            return null;
+        });
+        assertThat(waiting.await(5, TimeUnit.SECONDS)).isTrue();
+        finishPull.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        executorService.shutdown();
+        verify(docker, times(1)).pull("alpine:latest");
+    }
+
+    @Test
+    void shouldPrePullKnownImagesThatAreNoLongerFresh() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true).setImageFreshnessTtl("5");
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+
+        imageCache.prePull(clusterProfile, () -> docker);
+        verify(docker, times(1)).pull("alpine:latest");
+
+        clock.forward(Period.minutes(6));
+        imageCache.prePull(clusterProfile, () -> docker);
+        verify(docker, times(2)).pull("alpine:latest");
+    }
+
+    @Test
+    void shouldStopPrePullingAndForgetImagesThatWereNotUsedRecently() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true).setImageFreshnessTtl("5");
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+
+        clock.forward(ImageCache.UNUSED_IMAGE_RETENTION.plusMinutes(1));
+        imageCache.prePull(clusterProfile, () -> docker);
+
+        verify(docker, times(1)).pull("alpine:latest");
+        assertThat(imageCache.isKnown("alpine:latest")).isFalse();
+        assertThat(imageCache.pulledImage("alpine:latest")).isNull();
+    }
+
+    @Test
+    void shouldKeepPrePullingImagesThatAreStillInUse() throws Exception {
+        ClusterProfileProperties clusterProfile = new ClusterProfileProperties().setPullOnContainerCreate(true).setImageFreshnessTtl("5");
+        imageCache.ensure("alpine:latest", clusterProfile, docker, message -> {
+        });
+
+        clock.forward(ImageCache.UNUSED_IMAGE_RETENTION.plusMinutes(1));
+        imageCache.remember("alpine:latest");
+        imageCache.prePull(clusterProfile, () -> docker);
+
+        verify(docker, times(2)).pull("alpine:latest");
+        assertThat(imageCache.isKnown("alpine:latest")).isTrue();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WarmPoolTest {
+    private final WarmPool warmPool = new WarmPool();
+
+    @Test
+    void shouldHandBackTheIdleContainersWhenShutDown() {
+        DockerContainer first = container("warm-1");
+        DockerContainer second = container("warm-2");
+        warmPool.add("pool-1", first);
+        warmPool.add("pool-2", second);
+
+        assertThat(warmPool.shutdown()).containsExactlyInAnyOrder(first, second);
+        assertThat(warmPool.isIdle("warm-1")).isFalse();
+        assertThat(warmPool.idleCount("pool-1")).isZero();
+    }
+
+    @Test
+    void shouldNotAcceptOrRefillContainersOnceShutDown() throws Exception {
+        warmPool.shutdown();
+
+        CountDownLatch refilled = new CountDownLatch(1);
+        warmPool.refill("pool-1", refilled::countDown);
+
+        assertThat(warmPool.add("pool-1", container("warm-1"))).isFalse();
+        assertThat(refilled.await(200, TimeUnit.MILLISECONDS)).isFalse();
+    }
+
+    @Test
+    void shouldRefillInTheBackground() throws Exception {
+        CountDownLatch refilled = new CountDownLatch(1);
+
+        warmPool.refill("pool-1", refilled::countDown);
+
+        assertThat(refilled.await(5, TimeUnit.SECONDS)).isTrue();
+        warmPool.shutdown();
+    }
+
+    private static DockerContainer container(String name) {
+        return new DockerContainer("id-" + name, name, null, new Date(), null, null);
+    }
+}
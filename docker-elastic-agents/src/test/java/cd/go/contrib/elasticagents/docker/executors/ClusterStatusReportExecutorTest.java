@@ -16,6 +16,7 @@
 
 package cd.go.contrib.elasticagents.docker.executors;
 
+import cd.go.contrib.elasticagents.common.AgentCapacity;
 import cd.go.contrib.elasticagents.common.ViewBuilder;
 import cd.go.contrib.elasticagents.docker.DockerContainers;
 import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
@@ -77,7 +78,7 @@ class ClusterStatusReportExecutorTest {
     }
 
     private StatusReport aStatusReport() {
-        return new StatusReport("os", "x86_64", "0.1.2", 2, "100M", new ArrayList<>());
+        return new StatusReport("os", "x86_64", "0.1.2", 2, "100M", new ArrayList<>(), new AgentCapacity.Utilisation(10, 2, 1, 0));
     }
 
 }
@@ -23,20 +23,26 @@ import cd.go.contrib.elasticagents.docker.DockerContainers;
 import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
 import cd.go.contrib.elasticagents.docker.models.ElasticProfileConfiguration;
 import cd.go.contrib.elasticagents.docker.requests.CreateAgentRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
-import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 class CreateAgentRequestExecutorTest {
     private ClusterProfileProperties clusterProfileProperties;
     private CreateAgentRequestExecutor executor;
+    private Map<String, DockerContainers> clusterToContainersMap;
     private ElasticProfileConfiguration elasticProfileConfiguration;
 
     @Mock
@@ -49,9 +55,9 @@ class CreateAgentRequestExecutorTest {
         initMocks(this);
         elasticProfileConfiguration = new ElasticProfileConfiguration().setImage("image1");
         clusterProfileProperties = new ClusterProfileProperties();
-        Map<String, DockerContainers> clusterToContainersMap = new HashMap<>();
+        clusterToContainersMap = new HashMap<>();
         clusterToContainersMap.put(clusterProfileProperties.uuid(), dockerContainers);
-        executor = new CreateAgentRequestExecutor(clusterToContainersMap, pluginRequest);
+        executor = new CreateAgentRequestExecutor(clusterToContainersMap, pluginRequest, Runnable::run);
     }
 
     @Test
@@ -82,14 +88,63 @@ class CreateAgentRequestExecutorTest {
 
         when(dockerContainers.create(eq(request), eq(pluginRequest), any(ConsoleLogAppender.class))).thenThrow(new RuntimeException("Ouch!"));
 
-        try {
-            executor.execute(request);
-            fail("Should have thrown an exception");
-        } catch (RuntimeException e) {
-            // expected
-        }
+        GoPluginApiResponse response = executor.execute(request);
 
+        assertThat(response.responseCode()).isEqualTo(200);
         verify(pluginRequest).appendToConsoleLog(eq(jobIdentifier), contains("Received request to create a container of image1 at "));
         verify(pluginRequest).appendToConsoleLog(eq(jobIdentifier), contains("Failed while creating container: Ouch"));
     }
+
+    @Test
+    void shouldAcknowledgeTheRequestBeforeTheContainerIsCreated() throws Exception {
+        final JobIdentifier jobIdentifier = new JobIdentifier("p1", 1L, "l1", "s1", "1", "j1", 1L);
+        CreateAgentRequest request = new CreateAgentRequest();
+        request.setElasticProfileConfiguration(elasticProfileConfiguration)
+                .setJobIdentifier(jobIdentifier)
+                .setClusterProfileProperties(clusterProfileProperties);
+        List<Runnable> pendingCreations = new ArrayList<>();
+        executor = new CreateAgentRequestExecutor(clusterToContainersMap, pluginRequest, pendingCreations::add);
+
+        GoPluginApiResponse response = executor.execute(request);
+
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(dockerContainers, never()).create(any(), any(), any());
+
+        pendingCreations.get(0).run();
+        verify(dockerContainers).create(eq(request), eq(pluginRequest), any(ConsoleLogAppender.class));
+    }
+
+    @Test
+    void shouldIgnoreRequestsForAJobWhoseContainerIsStillBeingCreated() {
+        final JobIdentifier jobIdentifier = new JobIdentifier("p1", 1L, "l1", "s1", "1", "j1", 1L);
+        CreateAgentRequest request = new CreateAgentRequest();
+        request.setElasticProfileConfiguration(elasticProfileConfiguration)
+                .setJobIdentifier(jobIdentifier)
+                .setClusterProfileProperties(clusterProfileProperties);
+        List<Runnable> pendingCreations = new ArrayList<>();
+        executor = new CreateAgentRequestExecutor(clusterToContainersMap, pluginRequest, pendingCreations::add);
+
+        executor.execute(request);
+        executor.execute(request);
+        assertThat(pendingCreations).hasSize(1);
+
+        pendingCreations.get(0).run();
+        executor.execute(request);
+        assertThat(pendingCreations).hasSize(2);
+    }
+
+    @Test
+    void shouldFailTheRequestWhenTooManyCreationsArePending() {
+        final JobIdentifier jobIdentifier = new JobIdentifier("p1", 1L, "l1", "s1", "1", "j1", 1L);
+        CreateAgentRequest request = new CreateAgentRequest();
+        request.setElasticProfileConfiguration(elasticProfileConfiguration)
+                .setJobIdentifier(jobIdentifier)
+                .setClusterProfileProperties(clusterProfileProperties);
+        executor = new CreateAgentRequestExecutor(clusterToContainersMap, pluginRequest, runnable -> {
+            throw new RejectedExecutionException("queue is full");
+        });
+
+        assertThatThrownBy(() -> executor.execute(request)).isInstanceOf(RuntimeException.class);
+        verify(pluginRequest).appendToConsoleLog(eq(jobIdentifier), contains("Failed while creating container: queue is full"));
+    }
 }
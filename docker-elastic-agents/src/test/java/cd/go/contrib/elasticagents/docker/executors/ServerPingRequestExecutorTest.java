@@ -24,21 +24,31 @@ import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 import cd.go.contrib.elasticagents.docker.BaseTest;
 import cd.go.contrib.elasticagents.docker.DockerContainer;
 import cd.go.contrib.elasticagents.docker.DockerContainers;
+import cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties;
 import cd.go.contrib.elasticagents.docker.models.ElasticProfileConfiguration;
 import cd.go.contrib.elasticagents.docker.requests.CreateAgentRequest;
 import cd.go.contrib.elasticagents.docker.requests.ServerPingRequest;
+import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
+import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
+import com.thoughtworks.go.plugin.api.request.GoApiRequest;
+import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
 import org.joda.time.Period;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatcher;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 
 import static cd.go.contrib.elasticagents.common.agent.AgentConfigState.Disabled;
 import static java.util.List.of;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 class ServerPingRequestExecutorTest extends BaseTest {
@@ -133,4 +143,113 @@ class ServerPingRequestExecutorTest extends BaseTest {
         ServerPingRequestExecutor serverPingRequestExecutor = new ServerPingRequestExecutor(dockerContainers, pluginRequest);
         serverPingRequestExecutor.execute(serverPingRequest);
     }
+
+    @Test
+    void shouldContinueCleaningUpOtherClustersWhenOneOfThemFails() throws Exception {
+        ClusterProfileProperties brokenCluster = createClusterProfiles().setMaxDockerContainers("2");
+        ClusterProfileProperties healthyCluster = createClusterProfiles().setMaxDockerContainers("3");
+        Agents agentsToDisable = new Agents(of(new Agent("agent-1", AgentState.Idle, AgentBuildState.Idle, AgentConfigState.Enabled)));
+
+        DockerContainers brokenContainers = mock(DockerContainers.class);
+        doThrow(new RuntimeException("docker host is unreachable")).when(brokenContainers).refreshAll(brokenCluster);
+        DockerContainers healthyContainers = mock(DockerContainers.class);
+        when(healthyContainers.instancesCreatedAfterTimeout(eq(healthyCluster), any())).thenReturn(agentsToDisable);
+
+        ElasticAgentRequestClient pluginRequest = mock(ElasticAgentRequestClient.class);
+        when(pluginRequest.listAgents()).thenReturn(new Agents());
+        ServerPingRequest serverPingRequest = mock(ServerPingRequest.class);
+        when(serverPingRequest.getAllClusterProfileConfigurations()).thenReturn(of(brokenCluster, healthyCluster));
+
+        HashMap<String, DockerContainers> dockerContainers = new HashMap<>();
+        dockerContainers.put(brokenCluster.uuid(), brokenContainers);
+        dockerContainers.put(healthyCluster.uuid(), healthyContainers);
+
+        ServerPingRequestExecutor executor = new ServerPingRequestExecutor(dockerContainers, pluginRequest, Executors.newFixedThreadPool(2), Duration.ofSeconds(30));
+
+        assertThatThrownBy(() -> executor.execute(serverPingRequest))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Server ping failed for 1 of 2 cluster(s).");
+        verify(pluginRequest).disableAgents(argThat(collectionMatches(agentsToDisable.agents())));
+        verify(healthyContainers).terminateUnregisteredInstances(eq(healthyCluster), any());
+    }
+
+    @Test
+    void shouldNotWaitForAClusterBeyondTheCleanupTimeout() throws Exception {
+        ClusterProfileProperties slowCluster = createClusterProfiles().setMaxDockerContainers("2");
+        ClusterProfileProperties healthyCluster = createClusterProfiles().setMaxDockerContainers("3");
+
+        DockerContainers slowContainers = mock(DockerContainers.class);
+        doAnswer(invocation -> {
+            Thread.sleep(10_000);
+            return null;
+        }).when(slowContainers).refreshAll(slowCluster);
+        DockerContainers healthyContainers = mock(DockerContainers.class);
+        when(healthyContainers.instancesCreatedAfterTimeout(eq(healthyCluster), any())).thenReturn(new Agents());
+
+        ElasticAgentRequestClient pluginRequest = mock(ElasticAgentRequestClient.class);
+        when(pluginRequest.listAgents()).thenReturn(new Agents());
+        ServerPingRequest serverPingRequest = mock(ServerPingRequest.class);
+        when(serverPingRequest.getAllClusterProfileConfigurations()).thenReturn(of(slowCluster, healthyCluster));
+
+        HashMap<String, DockerContainers> dockerContainers = new HashMap<>();
+        dockerContainers.put(slowCluster.uuid(), slowContainers);
+        dockerContainers.put(healthyCluster.uuid(), healthyContainers);
+
+        ServerPingRequestExecutor executor = new ServerPingRequestExecutor(dockerContainers, pluginRequest, Executors.newFixedThreadPool(2), Duration.ofMillis(500));
+
+        long start = System.currentTimeMillis();
+        assertThatThrownBy(() -> executor.execute(serverPingRequest))
+                .hasMessage("Server ping failed for 1 of 2 cluster(s).");
+        assertThat(System.currentTimeMillis() - start).isLessThan(5_000);
+        verify(healthyContainers).terminateUnregisteredInstances(eq(healthyCluster), any());
+    }
+
+    @Test
+    void shouldDisableTerminateAndDeleteAnIdleAgentWithinOnePing() throws Exception {
+        ClusterProfileProperties clusterProfileProperties = createClusterProfiles();
+        Map<String, Agent> serverAgents = new ConcurrentHashMap<>();
+        serverAgents.put("agent-1", new Agent("agent-1", AgentState.Idle, AgentBuildState.Idle, AgentConfigState.Enabled));
+        serverAgents.put("agent-2", new Agent("agent-2", AgentState.Idle, AgentBuildState.Idle, AgentConfigState.Enabled));
+
+        GoApplicationAccessor accessor = mock(GoApplicationAccessor.class);
+        when(accessor.submit(any())).thenAnswer(invocation -> {
+            GoApiRequest request = invocation.getArgument(0);
+            switch (request.api()) {
+                case "go.processor.elastic-agents.list-agents":
+                    return DefaultGoApiResponse.success(Agent.toJSONArray(serverAgents.values()));
+                case "go.processor.elastic-agents.disable-agents":
+                    // agent-2 was assigned a job after the agents were listed, it is disabled but keeps building
+                    Agent.fromJSONArray(request.requestBody()).forEach(agent -> serverAgents.computeIfPresent(agent.elasticAgentId(), (id, current) -> id.equals("agent-2")
+                            ? new Agent(id, AgentState.Building, AgentBuildState.Building, AgentConfigState.Disabled)
+                            : new Agent(id, current.agentState(), current.buildState(), AgentConfigState.Disabled)));
+                    return DefaultGoApiResponse.success("");
+                case "go.processor.elastic-agents.delete-agents":
+                    Agent.fromJSONArray(request.requestBody()).forEach(agent -> serverAgents.remove(agent.elasticAgentId()));
+                    return DefaultGoApiResponse.success("");
+                default:
+                    return DefaultGoApiResponse.success("");
+            }
+        });
+        ElasticAgentRequestClient pluginRequest = new ElasticAgentRequestClient(accessor, "1.0", mock(GoPluginIdentifier.class));
+
+        DockerContainers agentInstances = mock(DockerContainers.class);
+        when(agentInstances.find(anyString())).thenReturn(mock(DockerContainer.class));
+        when(agentInstances.hasInstance(anyString())).thenReturn(true);
+        when(agentInstances.isInSync()).thenReturn(true);
+        when(agentInstances.instancesCreatedAfterTimeout(eq(clusterProfileProperties), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        ServerPingRequest serverPingRequest = mock(ServerPingRequest.class);
+        when(serverPingRequest.getAllClusterProfileConfigurations()).thenReturn(of(clusterProfileProperties));
+
+        HashMap<String, DockerContainers> dockerContainers = new HashMap<>();
+        dockerContainers.put(clusterProfileProperties.uuid(), agentInstances);
+
+        new ServerPingRequestExecutor(dockerContainers, pluginRequest).execute(serverPingRequest);
+
+        verify(agentInstances).terminate("agent-1", clusterProfileProperties);
+        verify(agentInstances, never()).terminate(eq("agent-2"), any());
+        verify(agentInstances).terminateUnregisteredInstances(eq(clusterProfileProperties),
+                argThat(agents -> agents.containsAgentWithId("agent-1") && agents.containsAgentWithId("agent-2")));
+        assertThat(serverAgents).containsOnlyKeys("agent-2");
+        assertThat(serverAgents.get("agent-2").configState()).isEqualTo(Disabled);
+    }
 }
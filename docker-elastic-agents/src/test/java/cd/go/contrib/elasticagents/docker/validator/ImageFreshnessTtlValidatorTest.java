@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker.validator;
+
+import cd.go.plugin.base.validation.ValidationResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties.IMAGE_FRESHNESS_TTL;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageFreshnessTtlValidatorTest {
+    private final ImageFreshnessTtlValidator validator = new ImageFreshnessTtlValidator();
+
+    @Test
+    void shouldAllowTheFreshnessTtlToBeDisabled() {
+        assertThat(validator.validate(singletonMap(IMAGE_FRESHNESS_TTL, null))).hasSize(0);
+        assertThat(validator.validate(Map.of(IMAGE_FRESHNESS_TTL, ""))).hasSize(0);
+        assertThat(validator.validate(Map.of(IMAGE_FRESHNESS_TTL, "0"))).hasSize(0);
+    }
+
+    @Test
+    void shouldAllowAPositiveNumberOfMinutes() {
+        assertThat(validator.validate(Map.of(IMAGE_FRESHNESS_TTL, " 2 "))).hasSize(0);
+    }
+
+    @Test
+    void shouldRejectAFreshnessTtlThatIsNotAnInteger() {
+        for (String imageFreshnessTtl : new String[]{"two", "1.5", "-1"}) {
+            ValidationResult result = validator.validate(Map.of(IMAGE_FRESHNESS_TTL, imageFreshnessTtl));
+
+            assertThat(result).hasSize(1);
+            assertThat(result.get(0).getMessage()).isEqualTo("Image freshness TTL must be zero or a positive number of minutes.");
+        }
+    }
+}
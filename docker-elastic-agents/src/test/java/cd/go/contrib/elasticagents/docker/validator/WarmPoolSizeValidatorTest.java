@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.docker.validator;
+
+import cd.go.plugin.base.validation.ValidationResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static cd.go.contrib.elasticagents.docker.models.ClusterProfileProperties.WARM_POOL_SIZE;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WarmPoolSizeValidatorTest {
+    private final WarmPoolSizeValidator validator = new WarmPoolSizeValidator();
+
+    @Test
+    void shouldAllowTheWarmPoolToBeDisabled() {
+        assertThat(validator.validate(singletonMap(WARM_POOL_SIZE, null))).hasSize(0);
+        assertThat(validator.validate(Map.of(WARM_POOL_SIZE, ""))).hasSize(0);
+        assertThat(validator.validate(Map.of(WARM_POOL_SIZE, "0"))).hasSize(0);
+    }
+
+    @Test
+    void shouldAllowAPositiveInteger() {
+        assertThat(validator.validate(Map.of(WARM_POOL_SIZE, " 2 "))).hasSize(0);
+    }
+
+    @Test
+    void shouldRejectAWarmPoolSizeThatIsNotAnInteger() {
+        for (String warmPoolSize : new String[]{"two", "1.5", "-1"}) {
+            ValidationResult result = validator.validate(Map.of(WARM_POOL_SIZE, warmPoolSize));
+
+            assertThat(result).hasSize(1);
+            assertThat(result.get(0).getMessage()).isEqualTo("Warm pool size must be zero or a positive integer.");
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.amazonaws.client.builder.AwsSyncClientBuilder;
 import com.amazonaws.services.ecr.AmazonECR;
 import com.amazonaws.services.ecr.AmazonECRClient;
 import com.amazonaws.services.ecr.AmazonECRClientBuilder;
+import com.amazonaws.services.ecr.model.AuthorizationData;
 import com.amazonaws.services.ecr.model.GetAuthorizationTokenRequest;
 import com.amazonaws.services.ecr.model.GetAuthorizationTokenResult;
 import com.thoughtworks.go.plugin.api.logging.Logger;
@@ -49,11 +50,18 @@ class AWSTokenRequestGenerator {
     }
 
     String[] getUsernameAndPasswordFromECRToken(ArtifactStoreConfig artifactStoreConfig) {
+        return usernameAndPassword(getAuthorizationData(artifactStoreConfig));
+    }
+
+    synchronized AuthorizationData getAuthorizationData(ArtifactStoreConfig artifactStoreConfig) {
         builder.setRegion(artifactStoreConfig.getAwsRegion());
         setCredentialsProvider(artifactStoreConfig);
         GetAuthorizationTokenResult authorizationTokenResult = builder.build().getAuthorizationToken(new GetAuthorizationTokenRequest().withRegistryIds(artifactStoreConfig.getRegistryId()));
-        String authorizationToken = authorizationTokenResult.getAuthorizationData().get(0).getAuthorizationToken();
-        return new String(Base64.getDecoder().decode(authorizationToken)).split(":");
+        return authorizationTokenResult.getAuthorizationData().get(0);
+    }
+
+    static String[] usernameAndPassword(AuthorizationData authorizationData) {
+        return new String(Base64.getDecoder().decode(authorizationData.getAuthorizationToken())).split(":");
     }
 
     void setCredentialsProvider(ArtifactStoreConfig artifactStoreConfig) {
@@ -23,6 +23,7 @@ import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoApiResponse;
 
 public class ConsoleLogger {
+    private static final Gson GSON = new Gson();
     private static ConsoleLogger consoleLogger;
     private final GoApplicationAccessor accessor;
 
@@ -70,7 +71,7 @@ public class ConsoleLogger {
         }
 
         public String toJSON() {
-            return new Gson().toJson(this);
+            return GSON.toJson(this);
         }
 
         enum LogLevel {
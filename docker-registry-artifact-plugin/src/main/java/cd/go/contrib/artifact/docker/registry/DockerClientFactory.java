@@ -21,30 +21,215 @@ import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.RegistryAuth;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
 
 import static java.text.MessageFormat.format;
 
+/**
+ * Keeps one docker client per artifact store configuration, so that publish and fetch requests reuse the client, its
+ * connection pool and its registry credentials. A changed artifact store configuration gets a client of its own; the
+ * old one is evicted once it has not been used for a while or when it fails a health check. Callers hand the client
+ * back with {@link #release(DockerClient)} when they are done with it: a client in use is never evicted for being idle,
+ * and an evicted client is only closed once its last user released it. Registry credentials are dropped on the same
+ * idle timeout, whether or not a client was created for them.
+ */
 public class DockerClientFactory {
+    static final Duration IDLE_TIMEOUT = Duration.ofMinutes(30);
+    static final Duration HEALTH_CHECK_INTERVAL = Duration.ofMinutes(1);
     private static final DockerClientFactory DOCKER_CLIENT_FACTORY = new DockerClientFactory();
 
-    public DockerClient docker(ArtifactStoreConfig artifactStoreConfig) throws InterruptedException, DockerException, DockerCertificateException {
-        return createClient(artifactStoreConfig);
+    private final Map<ArtifactStoreConfig, PooledClient> clients = new HashMap<>();
+    private final Map<DockerClient, PooledClient> openClients = new IdentityHashMap<>();
+    private final Map<ArtifactStoreConfig, PooledAuthSupplier> registryAuthSuppliers = new HashMap<>();
+    private final ClientCreator clientCreator;
+    private final LongSupplier currentTimeMillis;
+
+    public DockerClientFactory() {
+        this(DockerClientFactory::createClient, System::currentTimeMillis);
+    }
+
+    DockerClientFactory(ClientCreator clientCreator, LongSupplier currentTimeMillis) {
+        this.clientCreator = clientCreator;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * The docker client for the artifact store. It must be handed back with {@link #release(DockerClient)} once the
+     * caller is done with it.
+     */
+    public synchronized DockerClient docker(ArtifactStoreConfig artifactStoreConfig) throws InterruptedException, DockerException, DockerCertificateException {
+        evictIdleClients();
+
+        final RegistryAuthSupplierChain registryAuthSupplier = registryAuthSupplier(artifactStoreConfig);
+        PooledClient pooledClient = clients.get(artifactStoreConfig);
+        if (pooledClient != null && !pooledClient.isHealthy()) {
+            evict(artifactStoreConfig, "it failed the health check");
+            pooledClient = null;
+        }
+
+        if (pooledClient == null) {
+            pooledClient = new PooledClient(clientCreator.create(artifactStoreConfig, registryAuthSupplier));
+            clients.put(artifactStoreConfig, pooledClient);
+            openClients.put(pooledClient.client, pooledClient);
+        }
+
+        return pooledClient.use();
+    }
+
+    /**
+     * Hands back a client obtained from {@link #docker(ArtifactStoreConfig)}, closing it if it was evicted while in use.
+     */
+    public synchronized void release(DockerClient docker) {
+        final PooledClient pooledClient = openClients.get(docker);
+        if (pooledClient == null) {
+            return;
+        }
+
+        pooledClient.release();
+        if (pooledClient.evicted && pooledClient.users == 0) {
+            close(pooledClient);
+        }
+    }
+
+    /**
+     * The credentials the docker client of the artifact store uses for the image, for talking to the registry
+     * directly without fetching another token. Does not need a docker server.
+     */
+    public synchronized RegistryAuth registryAuth(ArtifactStoreConfig artifactStoreConfig, String image) {
+        evictIdleClients();
+        return registryAuthSupplier(artifactStoreConfig).authFor(image);
+    }
+
+    private RegistryAuthSupplierChain registryAuthSupplier(ArtifactStoreConfig artifactStoreConfig) {
+        return registryAuthSuppliers.computeIfAbsent(artifactStoreConfig, config -> new PooledAuthSupplier(new RegistryAuthSupplierChain(config, new AWSTokenRequestGenerator()))).use();
+    }
+
+    // used by test
+    synchronized boolean isOpen(DockerClient docker) {
+        return openClients.containsKey(docker);
+    }
+
+    // used by test
+    synchronized boolean hasRegistryAuthSupplier(ArtifactStoreConfig artifactStoreConfig) {
+        return registryAuthSuppliers.containsKey(artifactStoreConfig);
     }
 
     public static DockerClientFactory instance() {
         return DOCKER_CLIENT_FACTORY;
     }
 
-    private static DefaultDockerClient createClient(ArtifactStoreConfig artifactStoreConfig) throws DockerCertificateException, DockerException, InterruptedException {
-        final RegistryAuthSupplierChain registryAuthSupplier = new RegistryAuthSupplierChain(artifactStoreConfig, new AWSTokenRequestGenerator());
+    private void evictIdleClients() {
+        final long now = currentTimeMillis.getAsLong();
+        clients.entrySet().stream()
+                .filter(entry -> entry.getValue().users == 0 && now - entry.getValue().lastUsedAt > IDLE_TIMEOUT.toMillis())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList())
+                .forEach(artifactStoreConfig -> evict(artifactStoreConfig, "it has not been used for " + IDLE_TIMEOUT.toMinutes() + " minutes"));
+        registryAuthSuppliers.values().removeIf(supplier -> now - supplier.lastUsedAt > IDLE_TIMEOUT.toMillis());
+    }
+
+    private void evict(ArtifactStoreConfig artifactStoreConfig, String reason) {
+        final PooledClient pooledClient = clients.remove(artifactStoreConfig);
+        registryAuthSuppliers.remove(artifactStoreConfig);
+        if (pooledClient == null) {
+            return;
+        }
+
+        pooledClient.evicted = true;
+        if (pooledClient.users == 0) {
+            DockerRegistryArtifactPlugin.LOG.info(format("Closing docker client for registry `{0}` as {1}.", artifactStoreConfig.getRegistryUrl(), reason));
+            close(pooledClient);
+        } else {
+            DockerRegistryArtifactPlugin.LOG.info(format("Closing docker client for registry `{0}` once it is no longer in use, as {1}.", artifactStoreConfig.getRegistryUrl(), reason));
+        }
+    }
+
+    private void close(PooledClient pooledClient) {
+        openClients.remove(pooledClient.client);
+        pooledClient.client.close();
+    }
+
+    private static DefaultDockerClient createClient(ArtifactStoreConfig artifactStoreConfig, RegistryAuthSupplierChain registryAuthSupplier) throws DockerCertificateException, DockerException, InterruptedException {
         DefaultDockerClient docker = DefaultDockerClient.fromEnv().registryAuthSupplier(registryAuthSupplier).build();
 
         DockerRegistryArtifactPlugin.LOG.info(format("Using docker registry server `{0}`.", artifactStoreConfig.getRegistryUrl()));
 
-        final String result = docker.ping();
+        final String result;
+        try {
+            result = docker.ping();
+        } catch (DockerException | InterruptedException | RuntimeException e) {
+            docker.close();
+            throw e;
+        }
         if (!result.equalsIgnoreCase("OK")) {
+            docker.close();
             throw new RuntimeException("Could not ping the docker server.");
         }
         return docker;
     }
+
+    interface ClientCreator {
+        DefaultDockerClient create(ArtifactStoreConfig artifactStoreConfig, RegistryAuthSupplierChain registryAuthSupplier) throws DockerCertificateException, DockerException, InterruptedException;
+    }
+
+    private class PooledClient {
+        private final DefaultDockerClient client;
+        private long lastUsedAt;
+        private long lastCheckedAt;
+        private int users;
+        private boolean evicted;
+
+        PooledClient(DefaultDockerClient client) {
+            this.client = client;
+            this.lastUsedAt = currentTimeMillis.getAsLong();
+            this.lastCheckedAt = lastUsedAt;
+        }
+
+        DockerClient use() {
+            users++;
+            lastUsedAt = currentTimeMillis.getAsLong();
+            return client;
+        }
+
+        void release() {
+            users--;
+            lastUsedAt = currentTimeMillis.getAsLong();
+        }
+
+        boolean isHealthy() {
+            final long now = currentTimeMillis.getAsLong();
+            if (now - lastCheckedAt < HEALTH_CHECK_INTERVAL.toMillis()) {
+                return true;
+            }
+
+            lastCheckedAt = now;
+            try {
+                return "OK".equalsIgnoreCase(client.ping());
+            } catch (Exception e) {
+                DockerRegistryArtifactPlugin.LOG.warn("Docker client health check failed.", e);
+                return false;
+            }
+        }
+    }
+
+    private class PooledAuthSupplier {
+        private final RegistryAuthSupplierChain supplier;
+        private long lastUsedAt;
+
+        PooledAuthSupplier(RegistryAuthSupplierChain supplier) {
+            this.supplier = supplier;
+        }
+
+        RegistryAuthSupplierChain use() {
+            lastUsedAt = currentTimeMillis.getAsLong();
+            return supplier;
+        }
+    }
 }
@@ -20,34 +20,124 @@ import com.spotify.docker.client.ProgressHandler;
 import com.spotify.docker.client.messages.ProgressMessage;
 import org.apache.commons.lang.StringUtils;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
 import static java.lang.String.format;
 
+/**
+ * Renders docker push and pull progress on the console. A push or pull reports progress many times a second for every
+ * layer, so the progress of a layer is written when its status changes and otherwise at most once every
+ * {@link #LAYER_PROGRESS_INTERVAL}. Lines are buffered and sent to the server together; call {@link #flush()} once the
+ * push or pull is done to write out what is left.
+ */
 public class DockerProgressHandler implements ProgressHandler {
+    static final Duration LAYER_PROGRESS_INTERVAL = Duration.ofSeconds(10);
+    static final Duration FLUSH_INTERVAL = Duration.ofSeconds(2);
+    static final int MAX_BUFFERED_LINES = 100;
+
     private final ConsoleLogger consoleLogger;
+    private final String prefix;
+    private final LongSupplier clock;
+    private final Map<String, LayerProgress> layers = new HashMap<>();
+    private final List<String> buffer = new ArrayList<>();
+    private long flushedAt;
     private String digest;
 
     public DockerProgressHandler(ConsoleLogger consoleLogger) {
+        this(consoleLogger, null);
+    }
+
+    /**
+     * @param image prefixed to every console line, so that the progress of images pushed at the same time can be told
+     *              apart
+     */
+    public DockerProgressHandler(ConsoleLogger consoleLogger, String image) {
+        this(consoleLogger, image, System::currentTimeMillis);
+    }
+
+    DockerProgressHandler(ConsoleLogger consoleLogger, String image, LongSupplier clock) {
         this.consoleLogger = consoleLogger;
+        this.prefix = StringUtils.isBlank(image) ? "" : format("[%s] ", image);
+        this.clock = clock;
+        this.flushedAt = clock.getAsLong();
     }
 
     @Override
-    public void progress(ProgressMessage message) {
+    public synchronized void progress(ProgressMessage message) {
         if (StringUtils.isNotBlank(message.error())) {
-            consoleLogger.error(message.error());
-            DockerRegistryArtifactPlugin.LOG.error(format("Failure: %s", message.error()));
+            flush();
+            consoleLogger.error(prefix + message.error());
+            DockerRegistryArtifactPlugin.LOG.error(format("Failure: %s%s", prefix, message.error()));
             throw new RuntimeException(message.error());
         }
 
-        if (StringUtils.isNotBlank(message.progress())) {
-            consoleLogger.info(message.progress());
+        final long now = clock.getAsLong();
+        if (StringUtils.isNotBlank(message.id())) {
+            final LayerProgress layer = layers.computeIfAbsent(message.id(), id -> new LayerProgress());
+            final String line = layer.update(message, now);
+            if (line != null) {
+                buffer.add(prefix + message.id() + ": " + line);
+            }
+        } else if (StringUtils.isNotBlank(message.progress())) {
+            buffer.add(prefix + message.progress());
+        } else if (StringUtils.isNotBlank(message.status())) {
+            buffer.add(prefix + message.status());
         }
 
         if (StringUtils.isNotBlank(message.digest())) {
             digest = message.digest();
         }
+
+        if (buffer.size() >= MAX_BUFFERED_LINES || (!buffer.isEmpty() && now - flushedAt >= FLUSH_INTERVAL.toMillis())) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the buffered lines to the console as a single message.
+     */
+    public synchronized void flush() {
+        flushedAt = clock.getAsLong();
+        if (buffer.isEmpty()) {
+            return;
+        }
+        final String lines = String.join("\n", buffer);
+        buffer.clear();
+        consoleLogger.info(lines);
     }
 
     public String getDigest() {
         return digest;
     }
+
+    private static class LayerProgress {
+        private String status;
+        private long writtenAt;
+
+        /**
+         * @return the line to write for the layer, or null when the message only ticks the progress of the current status
+         */
+        String update(ProgressMessage message, long now) {
+            final String line = StringUtils.isBlank(message.progress())
+                    ? message.status()
+                    : StringUtils.defaultString(message.status()) + " " + message.progress();
+            if (StringUtils.isBlank(line)) {
+                return null;
+            }
+
+            final boolean statusChanged = !StringUtils.equals(status, message.status());
+            if (!statusChanged && now - writtenAt < LAYER_PROGRESS_INTERVAL.toMillis()) {
+                return null;
+            }
+
+            status = message.status();
+            writtenAt = now;
+            return line.trim();
+        }
+    }
 }
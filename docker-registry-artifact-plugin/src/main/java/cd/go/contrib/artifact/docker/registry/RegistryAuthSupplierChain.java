@@ -17,26 +17,96 @@
 package cd.go.contrib.artifact.docker.registry;
 
 import cd.go.contrib.artifact.docker.registry.model.ArtifactStoreConfig;
+import com.amazonaws.services.ecr.model.AuthorizationData;
 import com.spotify.docker.client.auth.RegistryAuthSupplier;
 import com.spotify.docker.client.messages.RegistryAuth;
 import com.spotify.docker.client.messages.RegistryConfigs;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static cd.go.contrib.artifact.docker.registry.DockerRegistryArtifactPlugin.LOG;
+import static java.lang.String.format;
+
+/**
+ * Supplies the credentials of an artifact store. ECR tokens are fetched once and reused until shortly before they
+ * expire; a token that is about to expire is refreshed in the background while the current one is still handed out.
+ */
 public class RegistryAuthSupplierChain implements RegistryAuthSupplier {
-    private final RegistryAuth registryAuth;
+    static final Duration ECR_TOKEN_VALIDITY = Duration.ofHours(12);
+    static final Duration REFRESH_BEFORE_EXPIRY = Duration.ofHours(1);
+    static final Duration MINIMUM_VALIDITY = Duration.ofMinutes(5);
+    private static final Executor REFRESHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "docker-registry-ecr-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ArtifactStoreConfig artifactStoreConfig;
+    private final AWSTokenRequestGenerator tokenRequestGenerator;
+    private final Executor refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile RegistryAuth registryAuth;
+    private volatile long expiresAt = Long.MAX_VALUE;
 
     RegistryAuthSupplierChain(ArtifactStoreConfig artifactStoreConfig, AWSTokenRequestGenerator tokenRequestGenerator) {
-        String username, password;
+        this(artifactStoreConfig, tokenRequestGenerator, REFRESHER);
+    }
+
+    RegistryAuthSupplierChain(ArtifactStoreConfig artifactStoreConfig, AWSTokenRequestGenerator tokenRequestGenerator, Executor refresher) {
+        this.artifactStoreConfig = artifactStoreConfig;
+        this.tokenRequestGenerator = tokenRequestGenerator;
+        this.refresher = refresher;
         if (artifactStoreConfig.isRegistryTypeEcr()) {
-            String[] usernameAndPassword = tokenRequestGenerator.getUsernameAndPasswordFromECRToken(artifactStoreConfig);
-            username = usernameAndPassword[0];
-            password = usernameAndPassword[1];
+            refreshEcrToken();
         } else {
-            username = artifactStoreConfig.getUsername();
-            password = artifactStoreConfig.getPassword();
+            registryAuth = registryAuth(artifactStoreConfig.getUsername(), artifactStoreConfig.getPassword());
         }
-        registryAuth = RegistryAuth.builder()
+    }
+
+    private RegistryAuth registryAuth() {
+        if (!artifactStoreConfig.isRegistryTypeEcr()) {
+            return registryAuth;
+        }
+
+        final long now = System.currentTimeMillis();
+        if (now >= expiresAt - MINIMUM_VALIDITY.toMillis()) {
+            synchronized (this) {
+                if (System.currentTimeMillis() >= expiresAt - MINIMUM_VALIDITY.toMillis()) {
+                    refreshEcrToken();
+                }
+            }
+        } else if (now >= expiresAt - REFRESH_BEFORE_EXPIRY.toMillis() && refreshing.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                try {
+                    synchronized (this) {
+                        refreshEcrToken();
+                    }
+                } catch (Exception e) {
+                    LOG.warn(format("Could not refresh the ECR token of registry `%s`, the current token is used until it expires.", artifactStoreConfig.getRegistryUrl()), e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return registryAuth;
+    }
+
+    private void refreshEcrToken() {
+        final long requestedAt = System.currentTimeMillis();
+        final AuthorizationData authorizationData = tokenRequestGenerator.getAuthorizationData(artifactStoreConfig);
+        final String[] usernameAndPassword = AWSTokenRequestGenerator.usernameAndPassword(authorizationData);
+        registryAuth = registryAuth(usernameAndPassword[0], usernameAndPassword[1]);
+        expiresAt = authorizationData.getExpiresAt() != null
+                ? authorizationData.getExpiresAt().getTime()
+                : requestedAt + ECR_TOKEN_VALIDITY.toMillis();
+    }
+
+    private RegistryAuth registryAuth(String username, String password) {
+        return RegistryAuth.builder()
                 .username(username)
                 .serverAddress(artifactStoreConfig.getRegistryUrl())
                 .password(password).build();
@@ -44,16 +114,17 @@ public class RegistryAuthSupplierChain implements RegistryAuthSupplier {
 
     @Override
     public RegistryAuth authFor(String imageName) {
-        return registryAuth;
+        return registryAuth();
     }
 
     @Override
     public RegistryAuth authForSwarm() {
-        return registryAuth;
+        return registryAuth();
     }
 
     @Override
     public RegistryConfigs authForBuild() {
+        final RegistryAuth registryAuth = registryAuth();
         return RegistryConfigs.create(Collections.singletonMap(registryAuth.serverAddress(), registryAuth));
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.artifact.docker.registry;
+
+import cd.go.contrib.artifact.docker.registry.model.DockerImage;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.spotify.docker.client.messages.RegistryAuth;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static cd.go.contrib.artifact.docker.registry.DockerRegistryArtifactPlugin.LOG;
+import static java.lang.String.format;
+
+/**
+ * Asks a docker registry, through the registry v2 API, for the digest of the manifest a tag points to, without
+ * downloading the manifest. Registries which answer with a basic or a bearer token challenge are supported; anything
+ * else the probe does not understand is reported as an unknown digest, so that callers fall back to a regular push.
+ */
+public class RegistryManifestProbe {
+    static final String DOCKER_HUB_REGISTRY = "registry-1.docker.io";
+    static final int TIMEOUT_MILLIS = 10_000;
+    private static final String MANIFEST_TYPES = String.join(",",
+            "application/vnd.docker.distribution.manifest.v2+json",
+            "application/vnd.docker.distribution.manifest.list.v2+json",
+            "application/vnd.oci.image.manifest.v1+json",
+            "application/vnd.oci.image.index.v1+json");
+    private static final Pattern CHALLENGE_PARAMETER = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+    private final HttpConnector connector;
+
+    /**
+     * Opens the connections the probe talks to the registry over, so that tests and proxies can take its place.
+     */
+    public interface HttpConnector {
+        HttpURLConnection open(URL url) throws IOException;
+    }
+
+    public RegistryManifestProbe() {
+        this(url -> (HttpURLConnection) url.openConnection());
+    }
+
+    public RegistryManifestProbe(HttpConnector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * @return the digest of the manifest the registry has for the tag of the image, or empty when the registry does
+     * not have the tag or could not be asked
+     */
+    public Optional<String> remoteDigest(DockerImage image, RegistryAuth registryAuth) {
+        try {
+            final URL manifestUrl = manifestUrl(image);
+            HttpURLConnection connection = head(manifestUrl, null);
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                final String authorization = authorization(connection.getHeaderField("WWW-Authenticate"), registryAuth);
+                if (authorization == null) {
+                    return Optional.empty();
+                }
+                connection = head(manifestUrl, authorization);
+            }
+
+            final int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                return Optional.ofNullable(StringUtils.trimToNull(connection.getHeaderField("Docker-Content-Digest")));
+            }
+            if (responseCode != HttpURLConnection.HTTP_NOT_FOUND) {
+                LOG.warn(format("Registry answered %d to the manifest probe of image `%s`.", responseCode, image));
+            }
+        } catch (Exception e) {
+            LOG.warn(format("Could not probe the registry for image `%s`: %s", image, e.getMessage()));
+        }
+        return Optional.empty();
+    }
+
+    static URL manifestUrl(DockerImage image) throws IOException {
+        String registry = DOCKER_HUB_REGISTRY;
+        String repository = image.getImage();
+
+        final int slash = repository.indexOf('/');
+        if (slash > 0) {
+            final String host = repository.substring(0, slash);
+            if (host.contains(".") || host.contains(":") || host.equals("localhost")) {
+                repository = repository.substring(slash + 1);
+                registry = host.equals("docker.io") || host.equals("index.docker.io") ? DOCKER_HUB_REGISTRY : host;
+            }
+        }
+        if (registry.equals(DOCKER_HUB_REGISTRY) && !repository.contains("/")) {
+            repository = "library/" + repository;
+        }
+
+        final String hostname = registry.replaceFirst(":\\d+$", "");
+        final String scheme = hostname.equals("localhost") || hostname.startsWith("127.") ? "http" : "https";
+        return new URL(format("%s://%s/v2/%s/manifests/%s", scheme, registry, repository, image.getTag()));
+    }
+
+    private HttpURLConnection head(URL url, String authorization) throws IOException {
+        final HttpURLConnection connection = connector.open(url);
+        connection.setRequestMethod("HEAD");
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept", MANIFEST_TYPES);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    private String authorization(String challenge, RegistryAuth registryAuth) throws IOException {
+        if (StringUtils.startsWithIgnoreCase(challenge, "Basic")) {
+            return basic(registryAuth);
+        }
+        if (!StringUtils.startsWithIgnoreCase(challenge, "Bearer")) {
+            return null;
+        }
+
+        final Map<String, String> parameters = new HashMap<>();
+        final Matcher matcher = CHALLENGE_PARAMETER.matcher(challenge);
+        while (matcher.find()) {
+            parameters.put(matcher.group(1), matcher.group(2));
+        }
+        if (!parameters.containsKey("realm")) {
+            return null;
+        }
+
+        final StringBuilder tokenUrl = new StringBuilder(parameters.get("realm"));
+        String separator = tokenUrl.indexOf("?") < 0 ? "?" : "&";
+        for (String parameter : new String[]{"service", "scope"}) {
+            if (parameters.containsKey(parameter)) {
+                tokenUrl.append(separator).append(parameter).append('=').append(URLEncoder.encode(parameters.get(parameter), StandardCharsets.UTF_8.name()));
+                separator = "&";
+            }
+        }
+
+        final HttpURLConnection connection = connector.open(new URL(tokenUrl.toString()));
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        final String basic = basic(registryAuth);
+        if (basic != null) {
+            connection.setRequestProperty("Authorization", basic);
+        }
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            LOG.warn(format("Registry token service answered %d to the manifest probe.", connection.getResponseCode()));
+            return null;
+        }
+
+        try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+            final JsonObject response = JsonParser.parseReader(reader).getAsJsonObject();
+            final String token = response.has("token") ? response.get("token").getAsString() : response.has("access_token") ? response.get("access_token").getAsString() : null;
+            return token == null ? null : "Bearer " + token;
+        }
+    }
+
+    private static String basic(RegistryAuth registryAuth) {
+        if (registryAuth == null || StringUtils.isBlank(registryAuth.username())) {
+            return null;
+        }
+        final String credentials = registryAuth.username() + ":" + StringUtils.defaultString(registryAuth.password());
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -19,7 +19,9 @@ package cd.go.contrib.artifact.docker.registry.executors;
 import cd.go.contrib.artifact.docker.registry.ConsoleLogger;
 import cd.go.contrib.artifact.docker.registry.DockerClientFactory;
 import cd.go.contrib.artifact.docker.registry.DockerProgressHandler;
+import cd.go.contrib.artifact.docker.registry.RegistryManifestProbe;
 import cd.go.contrib.artifact.docker.registry.model.ArtifactStoreConfig;
+import cd.go.contrib.artifact.docker.registry.model.DockerImage;
 import cd.go.contrib.artifact.docker.registry.model.FetchArtifactConfig;
 import cd.go.contrib.artifact.docker.registry.utils.Util;
 import com.google.gson.JsonArray;
@@ -42,6 +44,7 @@ public class FetchArtifactExecutor implements RequestExecutor {
     private final ConsoleLogger consoleLogger;
     private DockerClientFactory clientFactory;
     private final DockerProgressHandler dockerProgressHandler;
+    private final RegistryManifestProbe manifestProbe;
 
     public FetchArtifactExecutor(GoPluginApiRequest request, ConsoleLogger consoleLogger) {
         this(request, consoleLogger, new DockerProgressHandler(consoleLogger), DockerClientFactory.instance());
@@ -51,10 +54,19 @@ public class FetchArtifactExecutor implements RequestExecutor {
                           ConsoleLogger consoleLogger,
                           DockerProgressHandler dockerProgressHandler,
                           DockerClientFactory clientFactory) {
+        this(request, consoleLogger, dockerProgressHandler, clientFactory, new RegistryManifestProbe());
+    }
+
+    FetchArtifactExecutor(GoPluginApiRequest request,
+                          ConsoleLogger consoleLogger,
+                          DockerProgressHandler dockerProgressHandler,
+                          DockerClientFactory clientFactory,
+                          RegistryManifestProbe manifestProbe) {
         this.fetchArtifactRequest = FetchArtifactRequest.fromJSON(request.requestBody());
         this.consoleLogger = consoleLogger;
         this.clientFactory = clientFactory;
         this.dockerProgressHandler = dockerProgressHandler;
+        this.manifestProbe = manifestProbe;
     }
 
     @Override
@@ -67,17 +79,24 @@ public class FetchArtifactExecutor implements RequestExecutor {
             final String artifactPrefix = fetchArtifactConfig.getEnvironmentVariablePrefix();
             final boolean skipImagePulling = fetchArtifactConfig.getSkipImagePulling();
             final String imageToPull = artifactMap.get("image");
+            String artifactImage = imageToPull;
 
             if (skipImagePulling) {
                 consoleLogger.info(String.format("Not pulling docker image `%s` due to `Skip Image Pulling` configuration being set.", imageToPull));
                 LOG.info(String.format("Not pulling docker image `%s` due to `Skip Image Pulling` configuration being set.", imageToPull));
+            } else if (fetchArtifactConfig.getVerifyDigestOnly()) {
+                artifactImage = verifyDigest(DockerImage.parse(imageToPull), artifactMap.get("digest"));
             } else {
                 consoleLogger.info(String.format("Pulling docker image `%s` from docker registry `%s`.", imageToPull, fetchArtifactRequest.getArtifactStoreConfig().getRegistryUrl()));
                 LOG.info(String.format("Pulling docker image `%s` from docker registry `%s`.", imageToPull, fetchArtifactRequest.getArtifactStoreConfig().getRegistryUrl()));
 
                 DockerClient docker = clientFactory.docker(fetchArtifactRequest.getArtifactStoreConfig());
-                docker.pull(imageToPull, dockerProgressHandler);
-                docker.close();
+                try {
+                    docker.pull(imageToPull, dockerProgressHandler);
+                } finally {
+                    dockerProgressHandler.flush();
+                    clientFactory.release(docker);
+                }
 
                 consoleLogger.info(String.format("Image `%s` successfully pulled from docker registry `%s`.", imageToPull, fetchArtifactRequest.getArtifactStoreConfig().getRegistryUrl()));
 
@@ -88,7 +107,7 @@ public class FetchArtifactExecutor implements RequestExecutor {
 
             JsonObject jsonObject = new JsonObject();
             jsonObject.addProperty("name", StringUtils.isEmpty(artifactPrefix) ? "ARTIFACT_IMAGE" : String.format("%s_ARTIFACT_IMAGE", artifactPrefix));
-            jsonObject.addProperty("value", imageToPull);
+            jsonObject.addProperty("value", artifactImage);
 
             JsonArray jsonElements = new JsonArray();
             jsonElements.add(jsonObject);
@@ -102,6 +121,26 @@ public class FetchArtifactExecutor implements RequestExecutor {
         }
     }
 
+    /**
+     * Asks the registry for the digest the tag points to instead of pulling the image.
+     *
+     * @return the image pinned to its digest
+     */
+    private String verifyDigest(DockerImage image, String expectedDigest) {
+        final ArtifactStoreConfig artifactStoreConfig = fetchArtifactRequest.getArtifactStoreConfig();
+        consoleLogger.info(String.format("Verifying the digest of docker image `%s` in docker registry `%s` without pulling it.", image, artifactStoreConfig.getRegistryUrl()));
+        LOG.info(String.format("Verifying the digest of docker image `%s` in docker registry `%s` without pulling it.", image, artifactStoreConfig.getRegistryUrl()));
+
+        final String digest = manifestProbe.remoteDigest(image, clientFactory.registryAuth(artifactStoreConfig, image.toString()))
+                .orElseThrow(() -> new RuntimeException(format("Could not resolve the digest of image [%s] in docker registry [%s].", image, artifactStoreConfig.getRegistryUrl())));
+        if (!digest.equals(expectedDigest)) {
+            throw new RuntimeException(format("Expecting image digest to be [%s] but it is [%s].", expectedDigest, digest));
+        }
+
+        consoleLogger.info(String.format("Image `%s` has the expected digest `%s`.", image, digest));
+        return image.getImage() + "@" + digest;
+    }
+
     public void validateMetadata(Map<String, String> artifactMap) {
         if (artifactMap == null) {
             throw new RuntimeException(format("Cannot fetch the docker image from registry: Invalid metadata received from the GoCD server. The artifact metadata is null."));
@@ -19,24 +19,41 @@ package cd.go.contrib.artifact.docker.registry.executors;
 import cd.go.contrib.artifact.docker.registry.ConsoleLogger;
 import cd.go.contrib.artifact.docker.registry.DockerClientFactory;
 import cd.go.contrib.artifact.docker.registry.DockerProgressHandler;
+import cd.go.contrib.artifact.docker.registry.RegistryManifestProbe;
 import cd.go.contrib.artifact.docker.registry.model.*;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.Image;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static cd.go.contrib.artifact.docker.registry.DockerRegistryArtifactPlugin.LOG;
 import static java.lang.String.format;
 
 public class PublishArtifactExecutor implements RequestExecutor {
+    static final int MAX_CONCURRENT_PUSHES = 4;
+
     private final PublishArtifactRequest publishArtifactRequest;
     private final PublishArtifactResponse publishArtifactResponse;
     private final ConsoleLogger consoleLogger;
     private final DockerProgressHandler progressHandler;
+    private final Function<DockerImage, DockerProgressHandler> progressHandlers;
     private final DockerClientFactory clientFactory;
+    private final RegistryManifestProbe manifestProbe;
 
     public PublishArtifactExecutor(GoPluginApiRequest request, ConsoleLogger consoleLogger) {
         this(request, consoleLogger, new DockerProgressHandler(consoleLogger), DockerClientFactory.instance());
@@ -46,10 +63,29 @@ public class PublishArtifactExecutor implements RequestExecutor {
                             ConsoleLogger consoleLogger,
                             DockerProgressHandler progressHandler,
                             DockerClientFactory clientFactory) {
+        this(request, consoleLogger, progressHandler, image -> new DockerProgressHandler(consoleLogger, image.toString()), clientFactory);
+    }
+
+    PublishArtifactExecutor(GoPluginApiRequest request,
+                            ConsoleLogger consoleLogger,
+                            DockerProgressHandler progressHandler,
+                            Function<DockerImage, DockerProgressHandler> progressHandlers,
+                            DockerClientFactory clientFactory) {
+        this(request, consoleLogger, progressHandler, progressHandlers, clientFactory, new RegistryManifestProbe());
+    }
+
+    PublishArtifactExecutor(GoPluginApiRequest request,
+                            ConsoleLogger consoleLogger,
+                            DockerProgressHandler progressHandler,
+                            Function<DockerImage, DockerProgressHandler> progressHandlers,
+                            DockerClientFactory clientFactory,
+                            RegistryManifestProbe manifestProbe) {
         this.publishArtifactRequest = PublishArtifactRequest.fromJSON(request.requestBody());
         this.consoleLogger = consoleLogger;
         this.progressHandler = progressHandler;
+        this.progressHandlers = progressHandlers;
         this.clientFactory = clientFactory;
+        this.manifestProbe = manifestProbe;
         publishArtifactResponse = new PublishArtifactResponse();
     }
 
@@ -59,19 +95,30 @@ public class PublishArtifactExecutor implements RequestExecutor {
         final ArtifactStoreConfig artifactStoreConfig = publishArtifactRequest.getArtifactStore().getArtifactStoreConfig();
         try {
             final DockerClient docker = clientFactory.docker(artifactStoreConfig);
-            Map<String, String> environmentVariables = publishArtifactRequest.getEnvironmentVariables() == null ? new HashMap<>() : publishArtifactRequest.getEnvironmentVariables();
-            environmentVariables.putAll(System.getenv());
-            final DockerImage image = artifactPlan.getArtifactPlanConfig().imageToPush(publishArtifactRequest.getAgentWorkingDir(), environmentVariables);
+            try {
+                Map<String, String> environmentVariables = publishArtifactRequest.getEnvironmentVariables() == null ? new HashMap<>() : publishArtifactRequest.getEnvironmentVariables();
+                environmentVariables.putAll(System.getenv());
+                final List<DockerImage> images = artifactPlan.getArtifactPlanConfig().imagesToPush(publishArtifactRequest.getAgentWorkingDir(), environmentVariables);
 
-            LOG.info(format("Pushing docker image `%s` to docker registry `%s`.", image, artifactStoreConfig.getRegistryUrl()));
-            consoleLogger.info(format("Pushing docker image `%s` to docker registry `%s`.", image, artifactStoreConfig.getRegistryUrl()));
+                if (images.size() == 1) {
+                    final DockerImage image = images.get(0);
+                    final String digest = push(docker, image, progressHandler, artifactStoreConfig);
 
-            docker.push(image.toString(), progressHandler);
-            docker.close();
+                    publishArtifactResponse.addMetadata("image", image.toString());
+                    publishArtifactResponse.addMetadata("digest", digest);
+                } else {
+                    final Map<String, String> digests = pushAll(docker, images, artifactStoreConfig);
+                    final Map.Entry<String, String> first = digests.entrySet().iterator().next();
 
-            publishArtifactResponse.addMetadata("image", image.toString());
-            publishArtifactResponse.addMetadata("digest", progressHandler.getDigest());
-            consoleLogger.info(format("Image `%s` successfully pushed to docker registry `%s`.", image, artifactStoreConfig.getRegistryUrl()));
+                    publishArtifactResponse.addMetadata("image", first.getKey());
+                    publishArtifactResponse.addMetadata("digest", first.getValue());
+                    publishArtifactResponse.addMetadata("images", digests.entrySet().stream()
+                            .map(entry -> entry.getKey() + "@" + entry.getValue())
+                            .collect(Collectors.joining(",")));
+                }
+            } finally {
+                clientFactory.release(docker);
+            }
             return DefaultGoPluginApiResponse.success(publishArtifactResponse.toJSON());
         } catch (Exception e) {
             consoleLogger.error(String.format("Failed to publish %s: %s", artifactPlan, e));
@@ -79,4 +126,99 @@ public class PublishArtifactExecutor implements RequestExecutor {
             return DefaultGoPluginApiResponse.error(String.format("Failed to publish %s: %s", artifactPlan, e.getMessage()));
         }
     }
+
+    /**
+     * Pushes the images with at most {@link #MAX_CONCURRENT_PUSHES} pushes running at a time. Tags of the same
+     * repository are pushed one after another on the same worker, so that the layers they share are uploaded by the
+     * first push and found in the registry by the following ones instead of being uploaded concurrently.
+     *
+     * @return the digest of every image, in the order the images were listed
+     */
+    private Map<String, String> pushAll(DockerClient docker, List<DockerImage> images, ArtifactStoreConfig artifactStoreConfig) throws Exception {
+        final Map<String, List<DockerImage>> imagesByRepository = new LinkedHashMap<>();
+        final LinkedHashSet<String> seen = new LinkedHashSet<>();
+        for (DockerImage image : images) {
+            if (seen.add(image.toString())) {
+                imagesByRepository.computeIfAbsent(image.getImage(), repository -> new ArrayList<>()).add(image);
+            }
+        }
+
+        final Map<String, String> digests = Collections.synchronizedMap(new HashMap<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_CONCURRENT_PUSHES, imagesByRepository.size()));
+        try {
+            final List<Future<?>> pushes = new ArrayList<>();
+            for (List<DockerImage> repositoryImages : imagesByRepository.values()) {
+                pushes.add(executor.submit(() -> {
+                    for (DockerImage image : repositoryImages) {
+                        digests.put(image.toString(), push(docker, image, progressHandlers.apply(image), artifactStoreConfig));
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> push : pushes) {
+                try {
+                    push.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Map<String, String> orderedDigests = new LinkedHashMap<>();
+        seen.forEach(image -> orderedDigests.put(image, digests.get(image)));
+        return orderedDigests;
+    }
+
+    /**
+     * @return the digest of the image in the registry
+     */
+    private String push(DockerClient docker, DockerImage image, DockerProgressHandler handler, ArtifactStoreConfig artifactStoreConfig) throws Exception {
+        final Optional<String> digestInRegistry = digestInRegistry(docker, image, artifactStoreConfig);
+        if (digestInRegistry.isPresent()) {
+            LOG.info(format("Docker registry `%s` already has image `%s` with digest `%s`, not pushing it again.", artifactStoreConfig.getRegistryUrl(), image, digestInRegistry.get()));
+            consoleLogger.info(format("Docker registry `%s` already has image `%s` with digest `%s`, not pushing it again.", artifactStoreConfig.getRegistryUrl(), image, digestInRegistry.get()));
+            return digestInRegistry.get();
+        }
+
+        LOG.info(format("Pushing docker image `%s` to docker registry `%s`.", image, artifactStoreConfig.getRegistryUrl()));
+        consoleLogger.info(format("Pushing docker image `%s` to docker registry `%s`.", image, artifactStoreConfig.getRegistryUrl()));
+
+        try {
+            docker.push(image.toString(), handler);
+        } finally {
+            handler.flush();
+        }
+
+        consoleLogger.info(format("Image `%s` successfully pushed to docker registry `%s`.", image, artifactStoreConfig.getRegistryUrl()));
+        return handler.getDigest();
+    }
+
+    /**
+     * Looks up the digests the local image is known by in its repository, which it only has once it was pushed or
+     * pulled, and asks the registry whether the tag still points at one of them.
+     */
+    private Optional<String> digestInRegistry(DockerClient docker, DockerImage image, ArtifactStoreConfig artifactStoreConfig) {
+        try {
+            final String repository = image.getImage() + "@";
+            final Set<String> localDigests = docker.listImages(DockerClient.ListImagesParam.filter("reference", image.toString())).stream()
+                    .map(Image::repoDigests)
+                    .filter(Objects::nonNull)
+                    .flatMap(List::stream)
+                    .filter(repoDigest -> repoDigest.startsWith(repository))
+                    .map(repoDigest -> repoDigest.substring(repository.length()))
+                    .collect(Collectors.toSet());
+            if (localDigests.isEmpty()) {
+                return Optional.empty();
+            }
+
+            return manifestProbe.remoteDigest(image, clientFactory.registryAuth(artifactStoreConfig, image.toString()))
+                    .filter(localDigests::contains);
+        } catch (Exception e) {
+            LOG.warn(format("Could not tell whether docker registry `%s` already has image `%s`: %s", artifactStoreConfig.getRegistryUrl(), image, e.getMessage()));
+            return Optional.empty();
+        }
+    }
 }
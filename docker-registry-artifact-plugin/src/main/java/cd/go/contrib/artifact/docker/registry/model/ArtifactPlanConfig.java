@@ -19,6 +19,8 @@ package cd.go.contrib.artifact.docker.registry.model;
 import cd.go.contrib.artifact.docker.registry.annotation.Validatable;
 import cd.go.contrib.artifact.docker.registry.utils.Util;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public abstract class ArtifactPlanConfig implements Validatable {
@@ -26,6 +28,11 @@ public abstract class ArtifactPlanConfig implements Validatable {
     abstract public DockerImage imageToPush(String agentWorkingDirectory,
                                             Map<String, String> environmentVariables) throws UnresolvedPropertyException;
 
+    public List<DockerImage> imagesToPush(String agentWorkingDirectory,
+                                          Map<String, String> environmentVariables) throws UnresolvedPropertyException {
+        return Collections.singletonList(imageToPush(agentWorkingDirectory, environmentVariables));
+    }
+
     @Override
     public String toString() {
         return toJSON();
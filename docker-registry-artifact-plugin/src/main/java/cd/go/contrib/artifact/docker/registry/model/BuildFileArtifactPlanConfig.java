@@ -23,6 +23,7 @@ import com.google.gson.annotations.SerializedName;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -52,6 +53,17 @@ public class BuildFileArtifactPlanConfig extends ArtifactPlanConfig {
         }
     }
 
+    @Override
+    public List<DockerImage> imagesToPush(String agentWorkingDirectory, Map<String, String> environmentVariables) {
+        try {
+            return DockerImage.listFromFile(new File(agentWorkingDirectory, getBuildFile()));
+        } catch (JsonSyntaxException e) {
+            throw new RuntimeException(String.format("File[%s] content is not a valid json. It must contain json data `{'image':'DOCKER-IMAGE-NAME', 'tag':'TAG'}` or `[{'image':'DOCKER-IMAGE-NAME', 'tag':'TAG'}, ...]` format.", buildFile));
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
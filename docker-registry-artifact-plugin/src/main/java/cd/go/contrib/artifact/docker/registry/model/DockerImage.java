@@ -17,12 +17,19 @@
 package cd.go.contrib.artifact.docker.registry.model;
 
 import cd.go.contrib.artifact.docker.registry.utils.Util;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class DockerImage {
     @Expose
@@ -54,7 +61,43 @@ public class DockerImage {
         return String.format("%s:%s", image, tag);
     }
 
+    /**
+     * Splits a `repository:tag` reference as recorded in the artifact metadata; a reference without a tag is `latest`.
+     */
+    public static DockerImage parse(String reference) {
+        final int colon = reference.lastIndexOf(':');
+        if (colon <= reference.lastIndexOf('/')) {
+            return new DockerImage(reference, "latest");
+        }
+        return new DockerImage(reference.substring(0, colon), reference.substring(colon + 1));
+    }
+
     public static DockerImage fromFile(File file) throws FileNotFoundException {
         return Util.GSON.fromJson(new FileReader(file), DockerImage.class);
     }
+
+    /**
+     * Reads either a single `{"image": ..., "tag": ...}` object or an array of them, for build files that list
+     * several images to publish.
+     */
+    public static List<DockerImage> listFromFile(File file) throws IOException {
+        final JsonElement json;
+        try (Reader reader = new FileReader(file)) {
+            json = Util.GSON.fromJson(reader, JsonElement.class);
+        }
+
+        if (json != null && json.isJsonArray()) {
+            final DockerImage[] images = Util.GSON.fromJson(json, DockerImage[].class);
+            if (images.length == 0) {
+                throw new JsonSyntaxException("Expected at least one image but the array is empty");
+            }
+            return Arrays.asList(images);
+        }
+
+        if (json != null && json.isJsonObject()) {
+            return Collections.singletonList(Util.GSON.fromJson(json, DockerImage.class));
+        }
+
+        throw new JsonSyntaxException("Expected BEGIN_OBJECT or BEGIN_ARRAY but was " + (json == null ? "an empty file" : json));
+    }
 }
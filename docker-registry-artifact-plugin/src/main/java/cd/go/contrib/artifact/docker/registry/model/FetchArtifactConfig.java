@@ -35,12 +35,22 @@ public class FetchArtifactConfig implements Validatable {
     @FieldMetadata(key = "SkipImagePulling")
     private boolean skipImagePulling;
 
+    @Expose
+    @SerializedName("VerifyDigestOnly")
+    @FieldMetadata(key = "VerifyDigestOnly")
+    private boolean verifyDigestOnly;
+
     public FetchArtifactConfig() {
     }
 
     public FetchArtifactConfig(String environmentVariablePrefix, String skipImagePulling) {
+        this(environmentVariablePrefix, skipImagePulling, null);
+    }
+
+    public FetchArtifactConfig(String environmentVariablePrefix, String skipImagePulling, String verifyDigestOnly) {
         this.environmentVariablePrefix = environmentVariablePrefix;
         this.skipImagePulling = Boolean.parseBoolean(skipImagePulling);
+        this.verifyDigestOnly = Boolean.parseBoolean(verifyDigestOnly);
     }
 
     public static FetchArtifactConfig fromJSON(String json) {
@@ -55,6 +65,10 @@ public class FetchArtifactConfig implements Validatable {
         return skipImagePulling;
     }
 
+    public boolean getVerifyDigestOnly() {
+        return verifyDigestOnly;
+    }
+
     @Override
     public ValidationResult validate() {
         ValidationResult validationResult = new ValidationResult();
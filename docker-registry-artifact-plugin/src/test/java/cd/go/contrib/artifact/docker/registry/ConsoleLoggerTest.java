@@ -75,4 +75,16 @@ class ConsoleLoggerTest {
 
         JSONAssert.assertEquals(expectedJSON, request.requestBody(), true);
     }
+
+    @Test
+    void shouldSendBatchedLinesAsASingleMessage() throws JSONException {
+        consoleLogger.info("first line\nsecond line");
+
+        final String expectedJSON = "{\n" +
+                "  \"logLevel\": \"INFO\",\n" +
+                "  \"message\": \"first line\\nsecond line\"\n" +
+                "}";
+
+        JSONAssert.assertEquals(expectedJSON, argumentCaptor.getValue().requestBody(), true);
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.artifact.docker.registry;
+
+import cd.go.contrib.artifact.docker.registry.model.ArtifactStoreConfig;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class DockerClientFactoryTest {
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final ArtifactStoreConfig artifactStoreConfig = new ArtifactStoreConfig("registry-url", "other", "username", "password");
+    private DefaultDockerClient client;
+    private DockerClientFactory factory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        client = mock(DefaultDockerClient.class);
+        when(client.ping()).thenReturn("OK");
+        factory = new DockerClientFactory((config, registryAuthSupplier) -> client, now::get);
+    }
+
+    @Test
+    void shouldDropRegistryCredentialsThatHaveNotBeenUsedForTheIdleTimeout() {
+        final ArtifactStoreConfig idle = new ArtifactStoreConfig("idle-registry-url", "other", "username", "password");
+        final ArtifactStoreConfig active = new ArtifactStoreConfig("active-registry-url", "other", "username", "password");
+        factory.registryAuth(idle, "alpine");
+        factory.registryAuth(active, "alpine");
+
+        now.addAndGet(DockerClientFactory.IDLE_TIMEOUT.toMillis());
+        factory.registryAuth(active, "alpine");
+        now.addAndGet(1);
+        factory.registryAuth(active, "alpine");
+
+        assertThat(factory.hasRegistryAuthSupplier(idle)).isFalse();
+        assertThat(factory.hasRegistryAuthSupplier(active)).isTrue();
+    }
+
+    @Test
+    void shouldNotCloseAClientThatIsInUseForLongerThanTheIdleTimeout() throws Exception {
+        final DockerClient docker = factory.docker(artifactStoreConfig);
+
+        now.addAndGet(DockerClientFactory.IDLE_TIMEOUT.toMillis() + 1);
+        factory.registryAuth(new ArtifactStoreConfig("other-registry-url", "other", "username", "password"), "alpine");
+
+        assertThat(factory.isOpen(docker)).isTrue();
+        verify(client, never()).close();
+    }
+
+    @Test
+    void shouldCloseAClientThatFailedTheHealthCheckOnceItsLastUserReleasedIt() throws Exception {
+        final DefaultDockerClient unhealthy = client;
+        final DockerClient inUse = factory.docker(artifactStoreConfig);
+        when(unhealthy.ping()).thenThrow(new DockerException("connection refused"));
+        final DefaultDockerClient healthy = mock(DefaultDockerClient.class);
+        when(healthy.ping()).thenReturn("OK");
+        client = healthy;
+
+        now.addAndGet(DockerClientFactory.HEALTH_CHECK_INTERVAL.toMillis());
+        final DockerClient replacement = factory.docker(artifactStoreConfig);
+
+        assertThat(replacement).isSameAs(healthy);
+        verify(unhealthy, never()).close();
+
+        factory.release(inUse);
+        verify(unhealthy).close();
+        assertThat(factory.isOpen(inUse)).isFalse();
+        assertThat(factory.isOpen(replacement)).isTrue();
+    }
+
+    @Test
+    void shouldCloseAClientOnceItWasReleasedAndUnusedForTheIdleTimeout() throws Exception {
+        final DockerClient docker = factory.docker(artifactStoreConfig);
+        factory.release(docker);
+
+        now.addAndGet(DockerClientFactory.IDLE_TIMEOUT.toMillis() + 1);
+        factory.registryAuth(artifactStoreConfig, "alpine");
+
+        assertThat(factory.isOpen(docker)).isFalse();
+        verify(client).close();
+    }
+}
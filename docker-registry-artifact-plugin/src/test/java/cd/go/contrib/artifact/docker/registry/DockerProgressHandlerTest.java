@@ -19,19 +19,25 @@ package cd.go.contrib.artifact.docker.registry;
 import com.spotify.docker.client.messages.ProgressMessage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class DockerProgressHandlerTest {
     private ConsoleLogger consoleLogger;
     private DockerProgressHandler progressHandler;
+    private AtomicLong clock;
 
     @BeforeEach
     void setUp() {
         consoleLogger = mock(ConsoleLogger.class);
-        progressHandler = new DockerProgressHandler(consoleLogger);
+        clock = new AtomicLong();
+        progressHandler = new DockerProgressHandler(consoleLogger, null, clock::get);
     }
 
     @Test
@@ -48,7 +54,83 @@ class DockerProgressHandlerTest {
     @Test
     void shouldLogProgressToConsoleLogger() {
         progressHandler.progress(ProgressMessage.builder().progress("docker-push-pull-progress").build());
+        progressHandler.flush();
 
         verify(consoleLogger, times(1)).info("docker-push-pull-progress");
     }
+
+    @Test
+    void shouldWriteTheProgressOfALayerOnlyWhenItsStatusChangesOrTheIntervalPasses() {
+        progressHandler.progress(layer("abc", "Preparing", null));
+        progressHandler.progress(layer("abc", "Pushing", "[=>     ] 1MB/10MB"));
+        progressHandler.progress(layer("abc", "Pushing", "[==>    ] 2MB/10MB"));
+        progressHandler.progress(layer("abc", "Pushing", "[===>   ] 3MB/10MB"));
+        clock.addAndGet(DockerProgressHandler.LAYER_PROGRESS_INTERVAL.toMillis());
+        progressHandler.progress(layer("abc", "Pushing", "[====>  ] 4MB/10MB"));
+        progressHandler.progress(layer("abc", "Pushed", null));
+        progressHandler.flush();
+
+        verify(consoleLogger).info("abc: Preparing\n" +
+                "abc: Pushing [=>     ] 1MB/10MB\n" +
+                "abc: Pushing [====>  ] 4MB/10MB");
+        verify(consoleLogger).info("abc: Pushed");
+        verifyNoMoreInteractions(consoleLogger);
+    }
+
+    @Test
+    void shouldSendBufferedLinesOnceTheFlushIntervalPasses() {
+        progressHandler.progress(layer("abc", "Preparing", null));
+        progressHandler.progress(layer("def", "Preparing", null));
+
+        verifyNoInteractions(consoleLogger);
+
+        clock.addAndGet(DockerProgressHandler.FLUSH_INTERVAL.toMillis());
+        progressHandler.progress(layer("abc", "Layer already exists", null));
+
+        verify(consoleLogger).info("abc: Preparing\ndef: Preparing\nabc: Layer already exists");
+    }
+
+    @Test
+    void shouldSendBufferedLinesOnceTheBufferIsFull() {
+        for (int i = 0; i < DockerProgressHandler.MAX_BUFFERED_LINES; i++) {
+            progressHandler.progress(layer("layer-" + i, "Preparing", null));
+        }
+
+        verify(consoleLogger, times(1)).info(anyString());
+    }
+
+    @Test
+    void shouldWriteBufferedLinesBeforeTheError() {
+        progressHandler.progress(layer("abc", "Pushing", "[=>     ] 1MB/10MB"));
+
+        try {
+            progressHandler.progress(ProgressMessage.builder().error("some-error").build());
+            fail("Should throw runtime exception with error message");
+        } catch (RuntimeException e) {
+            final InOrder inOrder = inOrder(consoleLogger);
+            inOrder.verify(consoleLogger).info("abc: Pushing [=>     ] 1MB/10MB");
+            inOrder.verify(consoleLogger).error("some-error");
+        }
+    }
+
+    @Test
+    void shouldPrefixLinesWithTheImage() {
+        progressHandler = new DockerProgressHandler(consoleLogger, "alpine:3.6", clock::get);
+
+        progressHandler.progress(layer("abc", "Pushed", null));
+        progressHandler.flush();
+
+        verify(consoleLogger).info("[alpine:3.6] abc: Pushed");
+    }
+
+    @Test
+    void shouldRememberTheDigestOfThePushedImage() {
+        progressHandler.progress(ProgressMessage.builder().status("3.6: digest: sha256:0123456789abcdef size: 528").build());
+
+        assertThat(progressHandler.getDigest()).isEqualTo("sha256:0123456789abcdef");
+    }
+
+    private static ProgressMessage layer(String id, String status, String progress) {
+        return ProgressMessage.builder().id(id).status(status).progress(progress).build();
+    }
 }
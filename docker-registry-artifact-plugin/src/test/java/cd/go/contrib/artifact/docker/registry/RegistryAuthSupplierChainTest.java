@@ -29,13 +29,20 @@ import com.amazonaws.services.ecr.model.GetAuthorizationTokenResult;
 import com.spotify.docker.client.messages.RegistryAuth;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class RegistryAuthSupplierChainTest {
@@ -74,6 +81,62 @@ class RegistryAuthSupplierChainTest {
         assertThat(registryAuth.password()).isEqualTo("secretAuthorizationToken");
     }
 
+    @Test
+    void shouldReuseTheEcrTokenUntilItIsAboutToExpire() {
+        final ArtifactStoreConfig artifactStoreConfig = new ArtifactStoreConfig("https://12345.dkr.ecr.region.amazonaws.com", "ecr", "awsAccessKeyId", "awsSecretAccessKey", "awsRegion");
+        stubEcrToken("AWS:firstToken", new Date(System.currentTimeMillis() + Duration.ofHours(12).toMillis()));
+
+        final RegistryAuthSupplierChain registryAuthSupplierChain = new RegistryAuthSupplierChain(artifactStoreConfig, new AWSTokenRequestGenerator(new MockAwsECRClientBuilder(new ClientConfigurationFactory())), Runnable::run);
+        registryAuthSupplierChain.authFor("foo");
+        registryAuthSupplierChain.authForSwarm();
+        final RegistryAuth registryAuth = registryAuthSupplierChain.authFor("bar");
+
+        assertThat(registryAuth.password()).isEqualTo("firstToken");
+        verify(mockAmazonEcrClient, times(1)).getAuthorizationToken(any(GetAuthorizationTokenRequest.class));
+    }
+
+    @Test
+    void shouldRefreshTheEcrTokenBeforeHandingOutATokenWhichIsAboutToExpire() {
+        final ArtifactStoreConfig artifactStoreConfig = new ArtifactStoreConfig("https://12345.dkr.ecr.region.amazonaws.com", "ecr", "awsAccessKeyId", "awsSecretAccessKey", "awsRegion");
+        stubEcrToken("AWS:expiringToken", new Date(System.currentTimeMillis() + Duration.ofMinutes(1).toMillis()));
+        final Executor refresher = mock(Executor.class);
+
+        final RegistryAuthSupplierChain registryAuthSupplierChain = new RegistryAuthSupplierChain(artifactStoreConfig, new AWSTokenRequestGenerator(new MockAwsECRClientBuilder(new ClientConfigurationFactory())), refresher);
+        stubEcrToken("AWS:freshToken", new Date(System.currentTimeMillis() + Duration.ofHours(12).toMillis()));
+        final RegistryAuth registryAuth = registryAuthSupplierChain.authFor("foo");
+
+        assertThat(registryAuth.password()).isEqualTo("freshToken");
+        verifyNoInteractions(refresher);
+    }
+
+    @Test
+    void shouldRefreshTheEcrTokenInTheBackgroundWhenItExpiresWithinAnHour() {
+        final ArtifactStoreConfig artifactStoreConfig = new ArtifactStoreConfig("https://12345.dkr.ecr.region.amazonaws.com", "ecr", "awsAccessKeyId", "awsSecretAccessKey", "awsRegion");
+        stubEcrToken("AWS:agingToken", new Date(System.currentTimeMillis() + Duration.ofMinutes(30).toMillis()));
+        final List<Runnable> refreshes = new ArrayList<>();
+
+        final RegistryAuthSupplierChain registryAuthSupplierChain = new RegistryAuthSupplierChain(artifactStoreConfig, new AWSTokenRequestGenerator(new MockAwsECRClientBuilder(new ClientConfigurationFactory())), refreshes::add);
+        stubEcrToken("AWS:freshToken", new Date(System.currentTimeMillis() + Duration.ofHours(12).toMillis()));
+
+        assertThat(registryAuthSupplierChain.authFor("foo").password()).isEqualTo("agingToken");
+        assertThat(registryAuthSupplierChain.authFor("foo").password()).isEqualTo("agingToken");
+        assertThat(refreshes).hasSize(1);
+
+        refreshes.get(0).run();
+
+        assertThat(registryAuthSupplierChain.authFor("foo").password()).isEqualTo("freshToken");
+        assertThat(refreshes).hasSize(1);
+    }
+
+    private void stubEcrToken(String usernameAndPassword, Date expiresAt) {
+        GetAuthorizationTokenResult mockAuthorizationTokenResult = mock(GetAuthorizationTokenResult.class);
+        AuthorizationData mockAuthorization = mock(AuthorizationData.class);
+        when(mockAmazonEcrClient.getAuthorizationToken(any(GetAuthorizationTokenRequest.class))).thenReturn(mockAuthorizationTokenResult);
+        when(mockAuthorizationTokenResult.getAuthorizationData()).thenReturn(Collections.singletonList(mockAuthorization));
+        when(mockAuthorization.getAuthorizationToken()).thenReturn(Base64.getEncoder().encodeToString(usernameAndPassword.getBytes()));
+        when(mockAuthorization.getExpiresAt()).thenReturn(expiresAt);
+    }
+
     class MockAwsECRClientBuilder extends AwsSyncClientBuilder<AmazonECRClientBuilder, AmazonECR> {
 
         MockAwsECRClientBuilder(ClientConfigurationFactory clientConfigFactory) {
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.artifact.docker.registry;
+
+import cd.go.contrib.artifact.docker.registry.model.DockerImage;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistryManifestProbeTest {
+    private static final String DIGEST = "sha256:2a6f8e6e7a8b5c4d3e2f1a0b9c8d7e6f5a4b3c2d1e0f9a8b7c6d5e4f3a2b1c0d";
+
+    private HttpServer registry;
+    private String registryHost;
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final RegistryAuth registryAuth = RegistryAuth.builder().username("admin").password("admin123").build();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        registry = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        registry.start();
+        registryHost = "localhost:" + registry.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.stop(0);
+    }
+
+    @Test
+    void shouldReturnTheDigestOfTheTagFromTheRegistry() {
+        registry.createContext("/v2/alpine/manifests/3.6", exchange -> respond(exchange, 200, DIGEST));
+
+        assertThat(new RegistryManifestProbe().remoteDigest(new DockerImage(registryHost + "/alpine", "3.6"), registryAuth))
+                .contains(DIGEST);
+    }
+
+    @Test
+    void shouldReturnNothingWhenTheRegistryDoesNotHaveTheTag() {
+        registry.createContext("/v2/alpine/manifests/", exchange -> respond(exchange, 404, null));
+
+        assertThat(new RegistryManifestProbe().remoteDigest(new DockerImage(registryHost + "/alpine", "3.7"), registryAuth))
+                .isEmpty();
+    }
+
+    @Test
+    void shouldAnswerABasicChallengeWithTheCredentialsOfTheArtifactStore() {
+        registry.createContext("/v2/alpine/manifests/3.6", exchange -> {
+            final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null) {
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Basic realm=\"registry\"");
+                respond(exchange, 401, null);
+            } else {
+                authorizations.add(authorization);
+                respond(exchange, 200, DIGEST);
+            }
+        });
+
+        assertThat(new RegistryManifestProbe().remoteDigest(new DockerImage(registryHost + "/alpine", "3.6"), registryAuth))
+                .contains(DIGEST);
+        assertThat(authorizations).containsExactly(basic("admin:admin123"));
+    }
+
+    @Test
+    void shouldFetchABearerTokenWhenTheRegistryAsksForOne() {
+        registry.createContext("/token", exchange -> {
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            authorizations.add(exchange.getRequestURI().getQuery());
+            final byte[] body = "{\"token\":\"registry-token\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        registry.createContext("/v2/team/alpine/manifests/3.6", exchange -> {
+            if (!"Bearer registry-token".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Bearer realm=\"http://" + registryHost + "/token\",service=\"registry\",scope=\"repository:team/alpine:pull\"");
+                respond(exchange, 401, null);
+            } else {
+                respond(exchange, 200, DIGEST);
+            }
+        });
+
+        assertThat(new RegistryManifestProbe().remoteDigest(new DockerImage(registryHost + "/team/alpine", "3.6"), registryAuth))
+                .contains(DIGEST);
+        assertThat(authorizations).containsExactly(basic("admin:admin123"), "service=registry&scope=repository:team/alpine:pull");
+    }
+
+    @Test
+    void shouldReturnNothingWhenTheRegistryCannotBeReached() {
+        registry.stop(0);
+
+        assertThat(new RegistryManifestProbe().remoteDigest(new DockerImage(registryHost + "/alpine", "3.6"), registryAuth))
+                .isEmpty();
+    }
+
+    @Test
+    void shouldBuildTheManifestUrlOfTheImage() throws IOException {
+        assertThat(RegistryManifestProbe.manifestUrl(new DockerImage("alpine", "3.6")))
+                .hasToString("https://registry-1.docker.io/v2/library/alpine/manifests/3.6");
+        assertThat(RegistryManifestProbe.manifestUrl(new DockerImage("gocd/gocd-agent", "v19.9.0")))
+                .hasToString("https://registry-1.docker.io/v2/gocd/gocd-agent/manifests/v19.9.0");
+        assertThat(RegistryManifestProbe.manifestUrl(new DockerImage("12345.dkr.ecr.us-east-1.amazonaws.com/team/app", "1")))
+                .hasToString("https://12345.dkr.ecr.us-east-1.amazonaws.com/v2/team/app/manifests/1");
+        assertThat(RegistryManifestProbe.manifestUrl(new DockerImage("localhost:5000/alpine", "3.6")))
+                .hasToString("http://localhost:5000/v2/alpine/manifests/3.6");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String digest) throws IOException {
+        if (digest != null) {
+            exchange.getResponseHeaders().add("Docker-Content-Digest", digest);
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private static String basic(String credentials) {
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+}
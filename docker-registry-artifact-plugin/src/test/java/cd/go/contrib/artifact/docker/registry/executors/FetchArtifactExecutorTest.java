@@ -19,7 +19,9 @@ package cd.go.contrib.artifact.docker.registry.executors;
 import cd.go.contrib.artifact.docker.registry.ConsoleLogger;
 import cd.go.contrib.artifact.docker.registry.DockerClientFactory;
 import cd.go.contrib.artifact.docker.registry.DockerProgressHandler;
+import cd.go.contrib.artifact.docker.registry.RegistryManifestProbe;
 import cd.go.contrib.artifact.docker.registry.model.ArtifactStoreConfig;
+import cd.go.contrib.artifact.docker.registry.model.DockerImage;
 import cd.go.contrib.artifact.docker.registry.model.FetchArtifactConfig;
 import com.google.gson.Gson;
 import com.spotify.docker.client.DefaultDockerClient;
@@ -32,6 +34,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 
 import java.util.HashMap;
+import java.util.Optional;
 
 import static cd.go.contrib.artifact.docker.registry.executors.FetchArtifactExecutor.FetchArtifactRequest;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -50,6 +53,8 @@ class FetchArtifactExecutorTest {
     private DockerProgressHandler dockerProgressHandler;
     @Mock
     private ConsoleLogger consoleLogger;
+    @Mock
+    private RegistryManifestProbe manifestProbe;
 
     @BeforeEach
     void setUp() throws InterruptedException, DockerException, DockerCertificateException {
@@ -152,6 +157,59 @@ class FetchArtifactExecutorTest {
         final GoPluginApiResponse response = new FetchArtifactExecutor(request, consoleLogger, dockerProgressHandler, dockerClientFactory).execute();
 
         assertThat(response.responseCode()).isEqualTo(500);
+        verify(dockerClientFactory).release(dockerClient);
         assertThat(response.responseBody()).isEqualTo("Failed pull docker image: java.lang.RuntimeException: Some error");
     }
+
+    @Test
+    void shouldVerifyTheDigestWithoutPullingWhenVerifyDigestOnlyIsToggled() throws DockerException, InterruptedException {
+        final ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("localhost:5000", "other", "admin", "admin123");
+        final HashMap<String, String> artifactMetadata = new HashMap<>();
+        artifactMetadata.put("image", "localhost:5000/alpine:v1");
+        artifactMetadata.put("digest", "sha256:foo");
+        final FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, artifactMetadata, new FetchArtifactConfig("", "false", "true"));
+
+        when(request.requestBody()).thenReturn(new Gson().toJson(fetchArtifactRequest));
+        when(manifestProbe.remoteDigest(any(DockerImage.class), any())).thenReturn(Optional.of("sha256:foo"));
+
+        final GoPluginApiResponse response = new FetchArtifactExecutor(request, consoleLogger, dockerProgressHandler, dockerClientFactory, manifestProbe).execute();
+
+        verify(dockerClient, never()).pull(any(), any(DockerProgressHandler.class));
+        assertThat(response.responseCode()).isEqualTo(200);
+        assertThat(response.responseBody()).isEqualTo("[{\"name\":\"ARTIFACT_IMAGE\",\"value\":\"localhost:5000/alpine@sha256:foo\"}]");
+    }
+
+    @Test
+    void shouldErrorOutWhenTheRegistryHasADifferentDigestWhenVerifyDigestOnlyIsToggled() {
+        final ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("localhost:5000", "other", "admin", "admin123");
+        final HashMap<String, String> artifactMetadata = new HashMap<>();
+        artifactMetadata.put("image", "localhost:5000/alpine:v1");
+        artifactMetadata.put("digest", "sha256:foo");
+        final FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, artifactMetadata, new FetchArtifactConfig("", "false", "true"));
+
+        when(request.requestBody()).thenReturn(new Gson().toJson(fetchArtifactRequest));
+        when(manifestProbe.remoteDigest(any(DockerImage.class), any())).thenReturn(Optional.of("sha256:bar"));
+
+        final GoPluginApiResponse response = new FetchArtifactExecutor(request, consoleLogger, dockerProgressHandler, dockerClientFactory, manifestProbe).execute();
+
+        assertThat(response.responseCode()).isEqualTo(500);
+        assertThat(response.responseBody()).isEqualTo("Failed pull docker image: java.lang.RuntimeException: Expecting image digest to be [sha256:foo] but it is [sha256:bar].");
+    }
+
+    @Test
+    void shouldErrorOutWhenTheDigestCannotBeResolvedWhenVerifyDigestOnlyIsToggled() {
+        final ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("localhost:5000", "other", "admin", "admin123");
+        final HashMap<String, String> artifactMetadata = new HashMap<>();
+        artifactMetadata.put("image", "localhost:5000/alpine:v1");
+        artifactMetadata.put("digest", "sha256:foo");
+        final FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, artifactMetadata, new FetchArtifactConfig("", "false", "true"));
+
+        when(request.requestBody()).thenReturn(new Gson().toJson(fetchArtifactRequest));
+        when(manifestProbe.remoteDigest(any(DockerImage.class), any())).thenReturn(Optional.empty());
+
+        final GoPluginApiResponse response = new FetchArtifactExecutor(request, consoleLogger, dockerProgressHandler, dockerClientFactory, manifestProbe).execute();
+
+        assertThat(response.responseCode()).isEqualTo(500);
+        assertThat(response.responseBody()).isEqualTo("Failed pull docker image: java.lang.RuntimeException: Could not resolve the digest of image [localhost:5000/alpine:v1] in docker registry [localhost:5000].");
+    }
 }
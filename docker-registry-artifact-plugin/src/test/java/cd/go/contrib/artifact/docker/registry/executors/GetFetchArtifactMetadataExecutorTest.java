@@ -27,7 +27,7 @@ class GetFetchArtifactMetadataExecutorTest {
     @Test
     void shouldReturnFetchArtifactMetadata() throws JSONException {
         final GoPluginApiResponse response = new GetFetchArtifactMetadataExecutor().execute();
-        final String expectedJSON = "[{\"key\":\"EnvironmentVariablePrefix\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"SkipImagePulling\",\"metadata\":{\"required\":false,\"secure\":false}}]";
+        final String expectedJSON = "[{\"key\":\"EnvironmentVariablePrefix\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"SkipImagePulling\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"VerifyDigestOnly\",\"metadata\":{\"required\":false,\"secure\":false}}]";
 
         assertThat(response.responseCode()).isEqualTo(200);
         JSONAssert.assertEquals(expectedJSON, response.responseBody(), true);
@@ -19,15 +19,20 @@ package cd.go.contrib.artifact.docker.registry.executors;
 import cd.go.contrib.artifact.docker.registry.ConsoleLogger;
 import cd.go.contrib.artifact.docker.registry.DockerClientFactory;
 import cd.go.contrib.artifact.docker.registry.DockerProgressHandler;
+import cd.go.contrib.artifact.docker.registry.RegistryManifestProbe;
 import cd.go.contrib.artifact.docker.registry.model.ArtifactPlan;
 import cd.go.contrib.artifact.docker.registry.model.ArtifactStore;
 import cd.go.contrib.artifact.docker.registry.model.ArtifactStoreConfig;
+import cd.go.contrib.artifact.docker.registry.model.DockerImage;
 import cd.go.contrib.artifact.docker.registry.model.PublishArtifactRequest;
 import cd.go.plugin.base.test_helper.system_extensions.annotations.EnvironmentVariable;
+import com.google.common.collect.ImmutableList;
 import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.ProgressHandler;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Image;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.junit.jupiter.api.BeforeEach;
@@ -42,7 +47,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -105,6 +113,7 @@ class PublishArtifactExecutorTest {
         final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, dockerProgressHandler, dockerClientFactory).execute();
 
         verify(dockerClient).push(eq("alpine:3.6"), any(ProgressHandler.class));
+        verify(dockerClientFactory).release(dockerClient);
         assertThat(response.responseCode()).isEqualTo(200);
         assertThat(response.responseBody()).isEqualTo("{\"metadata\":{\"image\":\"alpine:3.6\",\"digest\":\"foo\"}}");
     }
@@ -163,4 +172,105 @@ class PublishArtifactExecutorTest {
         assertThat(response.responseCode()).isEqualTo(200);
         assertThat(response.responseBody()).isEqualTo("{\"metadata\":{\"image\":\"alpine:3.6\",\"digest\":\"foo\"}}");
     }
+
+    @Test
+    void shouldPublishEveryImageListedInTheBuildFile() throws IOException, DockerException, InterruptedException {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "build.json");
+        final ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("localhost:5000", "other", "admin", "admin123");
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+
+        Path path = Paths.get(agentWorkingDir.getAbsolutePath(), "build.json");
+        Files.write(path, ("[{\"image\":\"localhost:5000/alpine\",\"tag\":\"3.6\"}," +
+                "{\"image\":\"localhost:5000/busybox\",\"tag\":\"1.31\"}," +
+                "{\"image\":\"localhost:5000/alpine\",\"tag\":\"latest\"}]").getBytes());
+
+        final Map<String, DockerProgressHandler> progressHandlers = new ConcurrentHashMap<>();
+        for (String image : new String[]{"localhost:5000/alpine:3.6", "localhost:5000/busybox:1.31", "localhost:5000/alpine:latest"}) {
+            final DockerProgressHandler handler = mock(DockerProgressHandler.class);
+            when(handler.getDigest()).thenReturn("sha256:" + image.hashCode());
+            progressHandlers.put(image, handler);
+        }
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, dockerProgressHandler,
+                (DockerImage image) -> progressHandlers.get(image.toString()), dockerClientFactory).execute();
+
+        verify(dockerClient).push("localhost:5000/alpine:3.6", progressHandlers.get("localhost:5000/alpine:3.6"));
+        verify(dockerClient).push("localhost:5000/busybox:1.31", progressHandlers.get("localhost:5000/busybox:1.31"));
+        verify(dockerClient).push("localhost:5000/alpine:latest", progressHandlers.get("localhost:5000/alpine:latest"));
+        assertThat(response.responseCode()).isEqualTo(200);
+        assertThat(response.responseBody()).isEqualTo("{\"metadata\":{" +
+                "\"image\":\"localhost:5000/alpine:3.6\"," +
+                "\"images\":\"localhost:5000/alpine:3.6@sha256:" + "localhost:5000/alpine:3.6".hashCode() +
+                ",localhost:5000/busybox:1.31@sha256:" + "localhost:5000/busybox:1.31".hashCode() +
+                ",localhost:5000/alpine:latest@sha256:" + "localhost:5000/alpine:latest".hashCode() + "\"," +
+                "\"digest\":\"sha256:" + "localhost:5000/alpine:3.6".hashCode() + "\"}}");
+    }
+
+    @Test
+    void shouldFailThePublishWhenAnyOfTheImagesFailsToPush() throws IOException, DockerException, InterruptedException {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "build.json");
+        final ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("localhost:5000", "other", "admin", "admin123");
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+
+        Path path = Paths.get(agentWorkingDir.getAbsolutePath(), "build.json");
+        Files.write(path, "[{\"image\":\"alpine\",\"tag\":\"3.6\"},{\"image\":\"busybox\",\"tag\":\"1.31\"}]".getBytes());
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+        doThrow(new RuntimeException("Some error")).when(dockerClient).push(eq("busybox:1.31"), any(ProgressHandler.class));
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, dockerProgressHandler,
+                (DockerImage image) -> mock(DockerProgressHandler.class), dockerClientFactory).execute();
+
+        assertThat(response.responseCode()).isEqualTo(500);
+        assertThat(response.responseBody()).contains("Some error");
+    }
+
+    @Test
+    void shouldNotPushAnImageWhichTheRegistryAlreadyHas() throws IOException, DockerException, InterruptedException {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "localhost:5000/alpine", Optional.of("3.6"));
+        final ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("localhost:5000", "other", "admin", "admin123");
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+        final RegistryManifestProbe manifestProbe = mock(RegistryManifestProbe.class);
+        final Image localImage = mock(Image.class);
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+        when(localImage.repoDigests()).thenReturn(ImmutableList.of("localhost:5000/alpine@sha256:remote", "localhost:5000/busybox@sha256:other"));
+        when(dockerClient.listImages(any(DockerClient.ListImagesParam.class))).thenReturn(ImmutableList.of(localImage));
+        when(manifestProbe.remoteDigest(any(), any())).thenReturn(Optional.of("sha256:remote"));
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, dockerProgressHandler,
+                (Function<DockerImage, DockerProgressHandler>) image -> dockerProgressHandler, dockerClientFactory, manifestProbe).execute();
+
+        verify(dockerClient, never()).push(any(), any(ProgressHandler.class));
+        assertThat(response.responseCode()).isEqualTo(200);
+        assertThat(response.responseBody()).isEqualTo("{\"metadata\":{\"image\":\"localhost:5000/alpine:3.6\",\"digest\":\"sha256:remote\"}}");
+    }
+
+    @Test
+    void shouldPushAnImageWhenTheRegistryHasADifferentDigestForTheTag() throws IOException, DockerException, InterruptedException {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "localhost:5000/alpine", Optional.of("3.6"));
+        final ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("localhost:5000", "other", "admin", "admin123");
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+        final RegistryManifestProbe manifestProbe = mock(RegistryManifestProbe.class);
+        final Image localImage = mock(Image.class);
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+        when(localImage.repoDigests()).thenReturn(ImmutableList.of("localhost:5000/alpine@sha256:local"));
+        when(dockerClient.listImages(any(DockerClient.ListImagesParam.class))).thenReturn(ImmutableList.of(localImage));
+        when(manifestProbe.remoteDigest(any(), any())).thenReturn(Optional.of("sha256:remote"));
+        when(dockerProgressHandler.getDigest()).thenReturn("sha256:local");
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, dockerProgressHandler,
+                (Function<DockerImage, DockerProgressHandler>) image -> dockerProgressHandler, dockerClientFactory, manifestProbe).execute();
+
+        verify(dockerClient).push(eq("localhost:5000/alpine:3.6"), any(ProgressHandler.class));
+        assertThat(response.responseCode()).isEqualTo(200);
+        assertThat(response.responseBody()).isEqualTo("{\"metadata\":{\"image\":\"localhost:5000/alpine:3.6\",\"digest\":\"sha256:local\"}}");
+    }
 }
@@ -26,6 +26,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static java.lang.String.format;
@@ -77,6 +78,28 @@ class BuildFileArtifactPlanConfigTest {
                 .hasMessage("File[build-file.json] content is not a valid json. It must contain json data `{'image':'DOCKER-IMAGE-NAME', 'tag':'TAG'}` format.");
     }
 
+    @Test
+    void shouldReadEveryImageListedInTheBuildFile() throws IOException, UnresolvedPropertyException {
+        Path file = Paths.get(agentWorkingDir.getAbsolutePath(), "build-file.json");
+        Files.write(file, "[{\"image\":\"alpine\",\"tag\":\"3.6\"},{\"image\":\"alpine\",\"tag\":\"latest\"}]".getBytes());
+
+        final ArtifactPlanConfig artifactPlanConfig = new BuildFileArtifactPlanConfig("build-file.json");
+        final List<DockerImage> dockerImages = artifactPlanConfig.imagesToPush(agentWorkingDir.getAbsolutePath(), environmentVariables);
+
+        assertThat(dockerImages).extracting(DockerImage::toString).containsExactly("alpine:3.6", "alpine:latest");
+    }
+
+    @Test
+    void shouldErrorOutWhenFileContentIsNotAValidJSONWhileReadingEveryImage() throws IOException {
+        Path file = Paths.get(agentWorkingDir.getAbsolutePath(), "build-file.json");
+        Files.write(file, "bar".getBytes());
+        final ArtifactPlanConfig artifactPlanConfig = new BuildFileArtifactPlanConfig("build-file.json");
+
+        assertThatCode(() -> artifactPlanConfig.imagesToPush(agentWorkingDir.getAbsolutePath(), environmentVariables))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("File[build-file.json] content is not a valid json. It must contain json data `{'image':'DOCKER-IMAGE-NAME', 'tag':'TAG'}` or `[{'image':'DOCKER-IMAGE-NAME', 'tag':'TAG'}, ...]` format.");
+    }
+
     @Test
     void shouldErrorOutWhenFileDoesNotExist() {
         final ArtifactPlanConfig artifactPlanConfig = new BuildFileArtifactPlanConfig("random.json");
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
@@ -77,4 +78,39 @@ class DockerImageTest {
                 .isInstanceOf(FileNotFoundException.class)
                 .hasMessageContaining(String.format("%s/random.json (No such file or directory)", agentWorkingDir.getAbsolutePath()));
     }
+
+    @Test
+    void shouldDeserializeFileWithAnArrayToDockerImages() throws IOException {
+        Path path = Paths.get(agentWorkingDir.getAbsolutePath(), "build-file.json");
+        Files.write(path, "[{\"image\":\"alpine\",\"tag\":\"3.6\"},{\"image\":\"busybox\",\"tag\":\"1.31\"}]".getBytes());
+
+        final List<DockerImage> dockerImages = DockerImage.listFromFile(path.toFile());
+
+        assertThat(dockerImages).extracting(DockerImage::toString).containsExactly("alpine:3.6", "busybox:1.31");
+    }
+
+    @Test
+    void shouldDeserializeFileWithASingleImageToAListOfDockerImages() throws IOException {
+        Path path = Paths.get(agentWorkingDir.getAbsolutePath(), "build-file.json");
+        Files.write(path, "{\"image\":\"alpine\",\"tag\":\"3.6\"}".getBytes());
+
+        assertThat(DockerImage.listFromFile(path.toFile())).extracting(DockerImage::toString).containsExactly("alpine:3.6");
+    }
+
+    @Test
+    void shouldErrorOutWhenFileContentIsAnEmptyJSONArray() throws IOException {
+        Path path = Paths.get(agentWorkingDir.getAbsolutePath(), "build-file.json");
+        Files.write(path, "[]".getBytes());
+
+        assertThatCode(() -> DockerImage.listFromFile(path.toFile()))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Expected at least one image");
+    }
+
+    @Test
+    void shouldParseAnImageReference() {
+        assertThat(DockerImage.parse("localhost:5000/alpine:3.6")).extracting(DockerImage::getImage, DockerImage::getTag).containsExactly("localhost:5000/alpine", "3.6");
+        assertThat(DockerImage.parse("localhost:5000/alpine")).extracting(DockerImage::getImage, DockerImage::getTag).containsExactly("localhost:5000/alpine", "latest");
+        assertThat(DockerImage.parse("alpine:3.6")).extracting(DockerImage::getImage, DockerImage::getTag).containsExactly("alpine", "3.6");
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the id of every agent service known to the plugin to the clusters it belongs to, across all clusters. Cluster
+ * profiles pointing to the same swarm all list the same services, so an agent may belong to more than one cluster. The
+ * index is kept up to date by the {@link DockerServices} of each cluster as services are registered and forgotten.
+ */
+public class AgentIndex {
+    private final ConcurrentHashMap<String, Set<String>> clustersOfAgent = new ConcurrentHashMap<>();
+
+    void put(String agentId, String clusterId) {
+        clustersOfAgent.computeIfAbsent(agentId, id -> ConcurrentHashMap.newKeySet()).add(clusterId);
+    }
+
+    void remove(String agentId, String clusterId) {
+        clustersOfAgent.computeIfPresent(agentId, (id, clusterIds) -> {
+            clusterIds.remove(clusterId);
+            return clusterIds.isEmpty() ? null : clusterIds;
+        });
+    }
+
+    /**
+     * @return the ids of the clusters the agent runs in, empty if no cluster knows the agent.
+     */
+    public Set<String> clustersOf(String agentId) {
+        Set<String> clusterIds = clustersOfAgent.get(agentId);
+        return clusterIds == null ? Collections.emptySet() : Set.copyOf(clusterIds);
+    }
+
+    public boolean contains(String agentId) {
+        return clustersOfAgent.containsKey(agentId);
+    }
+
+    public boolean contains(String agentId, String clusterId) {
+        Set<String> clusterIds = clustersOfAgent.get(agentId);
+        return clusterIds != null && clusterIds.contains(clusterId);
+    }
+
+    public int size() {
+        return clustersOfAgent.size();
+    }
+}
@@ -16,6 +16,7 @@
 
 package cd.go.contrib.elasticagents.dockerswarm;
 
+import cd.go.contrib.elasticagents.common.Clock;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerCertificates;
 import com.spotify.docker.client.DockerClient;
@@ -28,34 +29,89 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.text.MessageFormat.format;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
+/**
+ * Keeps one docker client per cluster, keyed by {@link SwarmClusterConfiguration#uuid()}, so that request threads and
+ * the background watchers and samplers of several clusters do not replace each other's client. Clients are health
+ * checked periodically and closed when they fail the check or have not been used for a while.
+ */
 public class DockerClientFactory {
-    private DefaultDockerClient client;
-    private SwarmClusterConfiguration swarmClusterConfiguration;
+    static final Duration IDLE_TIMEOUT = Duration.ofMinutes(30);
+    static final Duration HEALTH_CHECK_INTERVAL = Duration.ofMinutes(1);
 
     private static final DockerClientFactory DOCKER_CLIENT_FACTORY = new DockerClientFactory();
 
-    public synchronized DockerClient docker(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception {
-        if (swarmClusterConfiguration.equals(this.swarmClusterConfiguration) && this.client != null) {
-            return this.client;
+    private final Map<String, PooledClient> clients = new ConcurrentHashMap<>();
+    private final ClientCreator clientCreator;
+    private final Clock clock;
+
+    public DockerClientFactory() {
+        this(DockerClientFactory::createClient, Clock.DEFAULT);
+    }
+
+    DockerClientFactory(ClientCreator clientCreator, Clock clock) {
+        this.clientCreator = clientCreator;
+        this.clock = clock;
+    }
+
+    public DockerClient docker(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception {
+        evictIdleClients();
+
+        while (true) {
+            final PooledClient pooledClient = clients.computeIfAbsent(swarmClusterConfiguration.uuid(), PooledClient::new);
+            final DockerClient client = pooledClient.use(swarmClusterConfiguration);
+            if (client != null) {
+                return client;
+            }
         }
+    }
 
-        this.swarmClusterConfiguration = swarmClusterConfiguration;
-        this.client = createClient(swarmClusterConfiguration);
-        return this.client;
+    /**
+     * Creates a dedicated client for following the events stream of the swarm. Unlike the shared client it has no read
+     * timeout, as the stream may stay quiet for a long time. The caller is responsible for closing it.
+     */
+    public DefaultDockerClient streamingClient(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception {
+        return createClient(swarmClusterConfiguration, DefaultDockerClient.builder()
+                .connectionPoolSize(1)
+                .readTimeoutMillis(0));
+    }
+
+    /**
+     * Closes the client of a cluster that is no longer in use, rather than waiting for it to go idle.
+     */
+    public void release(SwarmClusterConfiguration swarmClusterConfiguration) {
+        final PooledClient pooledClient = clients.remove(swarmClusterConfiguration.uuid());
+        if (pooledClient != null) {
+            pooledClient.evict("the cluster is no longer watched");
+        }
     }
 
     public static DockerClientFactory instance() {
         return DOCKER_CLIENT_FACTORY;
     }
 
+    private void evictIdleClients() {
+        final long now = clock.now().getMillis();
+        clients.forEach((clusterId, pooledClient) -> {
+            if (now - pooledClient.lastUsedAt > IDLE_TIMEOUT.toMillis() && clients.remove(clusterId, pooledClient)) {
+                pooledClient.evict("it has not been used for " + IDLE_TIMEOUT.toMinutes() + " minutes");
+            }
+        });
+    }
+
     private static DefaultDockerClient createClient(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception {
-        DefaultDockerClient.Builder builder = DefaultDockerClient.builder();
+        return createClient(swarmClusterConfiguration, DefaultDockerClient.builder());
+    }
 
+    private static DefaultDockerClient createClient(SwarmClusterConfiguration swarmClusterConfiguration,
+                                                    DefaultDockerClient.Builder builder) throws Exception {
         builder.uri(swarmClusterConfiguration.getDockerURI());
         if (swarmClusterConfiguration.getDockerURI().startsWith("https://")) {
             setupCerts(swarmClusterConfiguration, builder);
@@ -68,8 +124,15 @@ public class DockerClientFactory {
         }
 
         DefaultDockerClient docker = builder.build();
-        String ping = docker.ping();
+        String ping;
+        try {
+            ping = docker.ping();
+        } catch (Exception e) {
+            docker.close();
+            throw e;
+        }
         if (!"OK".equals(ping)) {
+            docker.close();
             throw new RuntimeException("Could not ping the docker server, the server said '" + ping + "' instead of 'OK'.");
         }
         return docker;
@@ -94,4 +157,71 @@ public class DockerClientFactory {
             FileUtils.deleteDirectory(tempDirectory);
         }
     }
+
+    interface ClientCreator {
+        DefaultDockerClient create(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception;
+    }
+
+    private class PooledClient {
+        private final String clusterId;
+        private DefaultDockerClient client;
+        private boolean evicted;
+        private volatile long lastUsedAt;
+        private long lastCheckedAt;
+
+        PooledClient(String clusterId) {
+            this.clusterId = clusterId;
+            this.lastUsedAt = clock.now().getMillis();
+        }
+
+        /**
+         * Returns the client of this cluster, creating it if needed, or <code>null</code> if this entry was evicted
+         * in the meantime and the caller should look it up again.
+         */
+        synchronized DockerClient use(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception {
+            if (evicted) {
+                return null;
+            }
+
+            if (client != null && !isHealthy()) {
+                close("it failed the health check");
+            }
+
+            if (client == null) {
+                client = clientCreator.create(swarmClusterConfiguration);
+                lastCheckedAt = clock.now().getMillis();
+            }
+
+            lastUsedAt = clock.now().getMillis();
+            return client;
+        }
+
+        synchronized void evict(String reason) {
+            evicted = true;
+            close(reason);
+        }
+
+        private void close(String reason) {
+            if (client != null) {
+                DockerSwarmPlugin.LOG.info(format("Closing docker client for cluster {0} as {1}.", clusterId, reason));
+                client.close();
+                client = null;
+            }
+        }
+
+        private boolean isHealthy() {
+            final long now = clock.now().getMillis();
+            if (now - lastCheckedAt < HEALTH_CHECK_INTERVAL.toMillis()) {
+                return true;
+            }
+
+            lastCheckedAt = now;
+            try {
+                return "OK".equals(client.ping());
+            } catch (Exception e) {
+                DockerSwarmPlugin.LOG.warn("Docker client health check failed.", e);
+                return false;
+            }
+        }
+    }
 }
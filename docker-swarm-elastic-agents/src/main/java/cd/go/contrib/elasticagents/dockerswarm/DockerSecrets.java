@@ -61,8 +61,15 @@ public class DockerSecrets extends ArrayList<DockerSecrets.DockerSecret> {
         return map;
     }
 
+    public List<String> names() {
+        return stream().map(DockerSecret::name).collect(toList());
+    }
+
     public List<SecretBind> toSecretBind(List<Secret> secrets) {
-        final Map<String, Secret> secretMap = secrets.stream().collect(Collectors.toMap(o -> o.secretSpec().name(), o -> o));
+        return toSecretBind(secrets.stream().collect(Collectors.toMap(o -> o.secretSpec().name(), o -> o)));
+    }
+
+    public List<SecretBind> toSecretBind(Map<String, Secret> secretMap) {
         final List<SecretBind> secretBinds = new ArrayList<>();
 
         for (DockerSecret dockerSecret : this) {
@@ -18,13 +18,11 @@ package cd.go.contrib.elasticagents.dockerswarm;
 
 import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 import cd.go.contrib.elasticagents.common.requests.AbstractCreateAgentRequest;
-import cd.go.contrib.elasticagents.dockerswarm.utils.Size;
-import cd.go.contrib.elasticagents.dockerswarm.utils.Util;
-import com.google.gson.Gson;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.exceptions.ServiceNotFoundException;
 import com.spotify.docker.client.messages.ServiceCreateResponse;
+import com.spotify.docker.client.messages.Version;
 import com.spotify.docker.client.messages.swarm.*;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
@@ -35,14 +33,13 @@ import static cd.go.contrib.elasticagents.dockerswarm.Constants.*;
 import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
 import static cd.go.plugin.base.GsonTransformer.fromJson;
 import static java.text.MessageFormat.format;
-import static org.apache.commons.lang.StringUtils.isBlank;
 
 public class DockerService {
-    private static final Gson GSON = new Gson();
     private final DateTime createdAt;
     private final SwarmElasticProfileConfiguration properties;
     private final String environment;
     private JobIdentifier jobIdentifier;
+    private String id;
     private String name;
 
     public DockerService(String name,
@@ -50,6 +47,16 @@ public class DockerService {
                          SwarmElasticProfileConfiguration properties,
                          String environment,
                          JobIdentifier jobIdentifier) {
+        this(null, name, createdAt, properties, environment, jobIdentifier);
+    }
+
+    public DockerService(String id,
+                         String name,
+                         Date createdAt,
+                         SwarmElasticProfileConfiguration properties,
+                         String environment,
+                         JobIdentifier jobIdentifier) {
+        this.id = id;
         this.name = name;
         this.createdAt = new DateTime(createdAt);
         this.properties = properties;
@@ -57,6 +64,10 @@ public class DockerService {
         this.jobIdentifier = jobIdentifier;
     }
 
+    public String id() {
+        return id;
+    }
+
     public String name() {
         return name;
     }
@@ -89,7 +100,8 @@ public class DockerService {
     public static DockerService fromService(Service service) {
         Map<String, String> labels = service.spec().labels();
         final SwarmElasticProfileConfiguration properties = fromJson(labels.get(CONFIGURATION_LABEL_KEY), SwarmElasticProfileConfiguration.class);
-        return new DockerService(service.spec().name(),
+        return new DockerService(service.id(),
+                service.spec().name(),
                 service.createdAt(),
                 properties,
                 labels.get(ENVIRONMENT_LABEL_KEY),
@@ -99,94 +111,114 @@ public class DockerService {
     public static DockerService create(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
                                        SwarmClusterConfiguration swarmClusterConfiguration,
                                        DockerClient docker) throws InterruptedException, DockerException {
+        return create(request, swarmClusterConfiguration, docker, null);
+    }
+
+    public static DockerService create(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
+                                       SwarmClusterConfiguration swarmClusterConfiguration,
+                                       DockerClient docker,
+                                       String targetNodeId) throws InterruptedException, DockerException {
+        return create(request, swarmClusterConfiguration, docker, targetNodeId, new SwarmMetadata());
+    }
+
+    public static DockerService create(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
+                                       SwarmClusterConfiguration swarmClusterConfiguration,
+                                       DockerClient docker,
+                                       String targetNodeId,
+                                       SwarmMetadata metadata) throws InterruptedException, DockerException {
+        ServiceSpec serviceSpec = serviceSpec(request, swarmClusterConfiguration, docker, targetNodeId, metadata);
+
+        ServiceCreateResponse service = docker.createService(serviceSpec);
+
+        String id = service.id();
+
+        Service serviceInfo = docker.inspectService(id);
+
+        LOG.debug("Created service " + serviceInfo.spec().name());
+        return fromRequest(id, serviceSpec.name(), serviceInfo.createdAt(), request);
+    }
+
+    static DockerService fromRequest(String serviceId,
+                                     String serviceName,
+                                     Date createdAt,
+                                     AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request) {
+        return new DockerService(serviceId,
+                serviceName,
+                createdAt,
+                request.getElasticProfileConfiguration(),
+                request.getEnvironment(),
+                request.getJobIdentifier());
+    }
+
+    static ServiceSpec serviceSpec(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
+                                   SwarmClusterConfiguration swarmClusterConfiguration,
+                                   DockerClient docker,
+                                   String targetNodeId,
+                                   SwarmMetadata metadata) throws InterruptedException, DockerException {
         String serviceName = UUID.randomUUID().toString();
+        final ServiceSpecTemplate template = ServiceSpecTemplate.of(request.getElasticProfileConfiguration());
 
-        HashMap<String, String> labels = labelsFrom(request);
-        String imageName = image(request.getElasticProfileConfiguration().getImage());
-        String[] env = environmentFrom(request, swarmClusterConfiguration, serviceName);
+        HashMap<String, String> labels = labelsFrom(request, template);
+        String[] env = environmentFrom(request, template, swarmClusterConfiguration, serviceName);
 
         final ContainerSpec.Builder containerSpecBuilder = ContainerSpec.builder()
-                .image(imageName)
+                .image(template.getImage())
                 .env(env);
 
-        if (StringUtils.isNotBlank(request.getElasticProfileConfiguration().getCommand())) {
-            containerSpecBuilder.command(Util.splitIntoLinesAndTrimSpaces(request.getElasticProfileConfiguration().getCommand()).toArray(new String[]{}));
+        if (template.getCommand() != null) {
+            containerSpecBuilder.command(template.getCommand());
         }
 
-        if (Util.dockerApiVersionAtLeast(docker, "1.26")) {
-            containerSpecBuilder.hosts(new Hosts().hosts(request.getElasticProfileConfiguration().getHosts()));
-            final DockerMounts dockerMounts = DockerMounts.fromString(request.getElasticProfileConfiguration().getMounts());
-            containerSpecBuilder.mounts(dockerMounts.toMount());
-            final DockerSecrets dockerSecrets = DockerSecrets.fromString(request.getElasticProfileConfiguration().getSecrets());
-            containerSpecBuilder.secrets(dockerSecrets.toSecretBind(docker.listSecrets()));
+        if (metadata.apiVersionAtLeast(docker, "1.26")) {
+            containerSpecBuilder.hosts(template.getHosts());
+            containerSpecBuilder.mounts(template.getMounts());
+            final DockerSecrets dockerSecrets = template.getSecrets();
+            containerSpecBuilder.secrets(dockerSecrets.isEmpty() ? Collections.emptyList() : dockerSecrets.toSecretBind(metadata.secrets(docker, dockerSecrets.names())));
         } else {
-            LOG.warn(format("Detected docker version and api version is {0} and {1} respectively. Docker with api version 1.26 or above is required to use volume mounts, secrets and host file entries. Please refer https://docs.docker.com/engine/api/v1.32/#section/Versioning for more information about docker release.", docker.version().version(), docker.version().apiVersion()));
+            final Version version = metadata.version(docker);
+            LOG.warn(format("Detected docker version and api version is {0} and {1} respectively. Docker with api version 1.26 or above is required to use volume mounts, secrets and host file entries. Please refer https://docs.docker.com/engine/api/v1.32/#section/Versioning for more information about docker release.", version.version(), version.apiVersion()));
         }
 
-        Driver.Builder driverBuilder = Driver.builder()
-                .name(request.getElasticProfileConfiguration().getLogDriver())
-                .options(Util.linesToMap(request.getElasticProfileConfiguration().getLogDriverOptions()));
-
         TaskSpec taskSpec = TaskSpec.builder()
                 .containerSpec(containerSpecBuilder.build())
-                .resources(resourceRequirements(request.getElasticProfileConfiguration()))
-                .placement(Placement.create(Util.linesToList(request.getElasticProfileConfiguration().getConstraints())))
-                .logDriver(StringUtils.isBlank(request.getElasticProfileConfiguration().getLogDriver()) ? null : driverBuilder.build())
+                .resources(template.getResources())
+                .placement(placement(template, targetNodeId))
+                .logDriver(template.getLogDriver())
                 .build();
 
-        ServiceSpec serviceSpec = ServiceSpec.builder()
+        return ServiceSpec.builder()
                 .name(serviceName)
                 .labels(labels)
                 .taskTemplate(taskSpec)
-                .networks(Networks.fromString(request.getElasticProfileConfiguration().getNetworks(), docker.listNetworks()))
+                .networks(networks(template, docker, metadata))
                 .build();
-
-        ServiceCreateResponse service = docker.createService(serviceSpec);
-
-        String id = service.id();
-
-        Service serviceInfo = docker.inspectService(id);
-
-        LOG.debug("Created service " + serviceInfo.spec().name());
-        return new DockerService(serviceName,
-                serviceInfo.createdAt(),
-                request.getElasticProfileConfiguration(),
-                request.getEnvironment(),
-                request.getJobIdentifier());
     }
 
-    private static ResourceRequirements resourceRequirements(SwarmElasticProfileConfiguration swarmElasticProfileConfiguration) {
-        ResourceRequirements.Builder resourceRequirementsBuilder = ResourceRequirements.builder();
-        final String maxMemory = swarmElasticProfileConfiguration.getMaxMemory();
-        if (StringUtils.isNotBlank(maxMemory)) {
-            resourceRequirementsBuilder.limits(
-                    Resources.builder()
-                            .memoryBytes(Size.parse(maxMemory).toBytes())
-                            .build()
-            );
+    private static List<NetworkAttachmentConfig> networks(ServiceSpecTemplate template, DockerClient docker, SwarmMetadata metadata) throws DockerException, InterruptedException {
+        final Collection<String> names = template.getNetworkNames();
+        if (names.isEmpty()) {
+            return Collections.emptyList();
         }
+        return Networks.fromString(template.getNetworks(), metadata.networks(docker, names));
+    }
 
-        final String reservedMemory = swarmElasticProfileConfiguration.getReservedMemory();
-        if (StringUtils.isNotBlank(reservedMemory)) {
-            resourceRequirementsBuilder.reservations(
-                    Resources.builder()
-                            .memoryBytes(Size.parse(reservedMemory).toBytes())
-                            .build()
-            );
+    private static Placement placement(ServiceSpecTemplate template, String targetNodeId) {
+        if (targetNodeId == null) {
+            return Placement.create(template.getConstraints());
         }
-
-        return resourceRequirementsBuilder.build();
+        final List<String> constraints = new ArrayList<>(template.getConstraints());
+        constraints.add("node.id==" + targetNodeId);
+        return Placement.create(constraints);
     }
 
     private static String[] environmentFrom(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
+                                            ServiceSpecTemplate template,
                                             SwarmClusterConfiguration swarmClusterConfiguration,
                                             String containerName) {
         Set<String> env = new HashSet<>();
 
         env.addAll(swarmClusterConfiguration.getEnvironmentVariables());
-        if (StringUtils.isNotBlank(request.getElasticProfileConfiguration().getEnvironment())) {
-            env.addAll(Util.splitIntoLinesAndTrimSpaces(request.getElasticProfileConfiguration().getEnvironment()));
-        }
+        env.addAll(template.getEnvironment());
 
         env.addAll(Arrays.asList(
                 "GO_EA_MODE=" + mode(),
@@ -199,7 +231,7 @@ public class DockerService {
         return env.toArray(new String[env.size()]);
     }
 
-    private static HashMap<String, String> labelsFrom(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request) {
+    private static HashMap<String, String> labelsFrom(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request, ServiceSpecTemplate template) {
         HashMap<String, String> labels = new HashMap<>();
 
         labels.put(CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
@@ -207,7 +239,7 @@ public class DockerService {
         if (StringUtils.isNotBlank(request.getEnvironment())) {
             labels.put(ENVIRONMENT_LABEL_KEY, request.getEnvironment());
         }
-        labels.put(CONFIGURATION_LABEL_KEY, GSON.toJson(request.getElasticProfileConfiguration()));
+        labels.put(CONFIGURATION_LABEL_KEY, template.getConfigurationLabel());
         return labels;
     }
 
@@ -238,15 +270,4 @@ public class DockerService {
         return "";
     }
 
-    private static String image(String image) {
-        if (isBlank(image)) {
-            throw new IllegalArgumentException("Must provide `Image` attribute.");
-        }
-
-        if (!image.contains(":")) {
-            return image + ":latest";
-        }
-        return image;
-    }
-
 }
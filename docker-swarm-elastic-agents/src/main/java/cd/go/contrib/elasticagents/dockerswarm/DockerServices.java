@@ -16,36 +16,45 @@
 
 package cd.go.contrib.elasticagents.dockerswarm;
 
+import cd.go.contrib.elasticagents.common.AgentCapacity;
 import cd.go.contrib.elasticagents.common.Clock;
 import cd.go.contrib.elasticagents.common.ConsoleLogAppender;
 import cd.go.contrib.elasticagents.common.ElasticAgentRequestClient;
-import cd.go.contrib.elasticagents.common.SetupSemaphore;
 import cd.go.contrib.elasticagents.common.agent.Agent;
 import cd.go.contrib.elasticagents.common.agent.AgentInstances;
 import cd.go.contrib.elasticagents.common.agent.Agents;
-import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 import cd.go.contrib.elasticagents.common.requests.AbstractCreateAgentRequest;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.ResourceUsage;
 import com.google.common.collect.ImmutableMap;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.exceptions.ServiceNotFoundException;
+import com.spotify.docker.client.messages.Event;
 import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.ServiceSpec;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
 
 public class DockerServices implements AgentInstances<DockerService, SwarmElasticProfileConfiguration, SwarmClusterConfiguration> {
+    private static final Period FULL_SYNC_INTERVAL = Period.minutes(5);
+
     private final ConcurrentHashMap<String, DockerService> services = new ConcurrentHashMap<>();
     private final DockerClientFactory factory;
-    private boolean refreshed;
-    private List<JobIdentifier> jobsWaitingForAgentCreation = new ArrayList<>();
+    private volatile boolean refreshed;
+    private volatile DateTime lastFullSync;
+    private ServiceEventWatcher eventWatcher;
+    private ResourceUsageSampler usageSampler;
+    private SwarmClusterConfiguration watchedCluster;
+    private AgentIndex agentIndex;
+    private String clusterId;
+    private final AgentCapacity capacity = new AgentCapacity();
+    private final NodeScheduler nodeScheduler = new NodeScheduler();
+    private final SwarmMetadata metadata = new SwarmMetadata();
+    private final ServiceCreationBatcher batcher = new ServiceCreationBatcher(this::register);
     public Clock clock = Clock.DEFAULT;
-    final Semaphore semaphore = new Semaphore(0, true);
 
     public DockerServices() {
         this(DockerClientFactory.instance());
@@ -62,36 +71,72 @@ public class DockerServices implements AgentInstances<DockerService, SwarmElasti
                                 ConsoleLogAppender consoleLogAppender) throws Exception {
         SwarmClusterConfiguration swarmClusterConfiguration = request.getClusterProfileProperties();
         final Integer maxAllowedContainers = swarmClusterConfiguration.getMaxDockerContainers();
-        synchronized (services) {
-            if (!jobsWaitingForAgentCreation.contains(request.getJobIdentifier())) {
-                jobsWaitingForAgentCreation.add(request.getJobIdentifier());
-            }
-            doWithLockOnSemaphore(new SetupSemaphore(maxAllowedContainers, services, semaphore));
-            List<Map<String, String>> messages = new ArrayList<>();
+        capacity.waitFor(request.getJobIdentifier());
+        List<Map<String, String>> messages = new ArrayList<>();
 
-            if (semaphore.tryAcquire()) {
-                pluginRequest.addServerHealthMessage(messages);
-                DockerService dockerService = DockerService.create(request, swarmClusterConfiguration, docker(swarmClusterConfiguration));
-                register(dockerService);
-                jobsWaitingForAgentCreation.remove(request.getJobIdentifier());
-                return dockerService;
-            } else {
-                String maxLimitExceededMessage = "The number of containers currently running is currently at the maximum permissible limit (" + services.size() + "). Not creating any more containers.";
-                Map<String, String> messageToBeAdded = new HashMap<>();
-                messageToBeAdded.put("type", "warning");
-                messageToBeAdded.put("message", maxLimitExceededMessage);
-                messages.add(messageToBeAdded);
+        AgentCapacity.Reservation reservation = capacity.tryReserve(maxAllowedContainers, services::size);
+        if (reservation == null) {
+            String maxLimitExceededMessage = "The number of containers currently running is currently at the maximum permissible limit (" + services.size() + "). Not creating any more containers.";
+            addWarning(messages, maxLimitExceededMessage);
+            pluginRequest.addServerHealthMessage(messages);
+            DockerSwarmPlugin.LOG.info(maxLimitExceededMessage);
+            return null;
+        }
+
+        NodeScheduler.Claim claim = null;
+        try {
+            DockerClient docker = docker(swarmClusterConfiguration);
+            try {
+                claim = nodeScheduler.claimNode(request.getElasticProfileConfiguration(), docker);
+            } catch (InsufficientNodeResourcesException e) {
+                addWarning(messages, e.getMessage());
                 pluginRequest.addServerHealthMessage(messages);
-                DockerSwarmPlugin.LOG.info(maxLimitExceededMessage);
+                DockerSwarmPlugin.LOG.info(e.getMessage());
                 return null;
             }
+
+            pluginRequest.addServerHealthMessage(messages);
+            DockerService dockerService;
+            try {
+                dockerService = create(request, docker, claim == null ? null : claim.nodeId());
+            } catch (DockerException e) {
+                // a secret may have been replaced since it was looked up
+                metadata.invalidate();
+                throw e;
+            }
+            nodeScheduler.placed(claim, dockerService.id());
+            claim = null;
+            register(dockerService);
+            capacity.stopWaitingFor(request.getJobIdentifier());
+            reservation.commit();
+            return dockerService;
+        } finally {
+            nodeScheduler.release(claim);
+            reservation.rollback();
         }
     }
 
-    private void doWithLockOnSemaphore(Runnable runnable) {
-        synchronized (semaphore) {
-            runnable.run();
+    private DockerService create(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
+                                 DockerClient docker,
+                                 String targetNodeId) throws Exception {
+        SwarmClusterConfiguration swarmClusterConfiguration = request.getClusterProfileProperties();
+        int batchWindow = swarmClusterConfiguration.getServiceCreationBatchWindow();
+        if (batchWindow <= 0) {
+            return DockerService.create(request, swarmClusterConfiguration, docker, targetNodeId, metadata);
         }
+        ServiceSpec serviceSpec = DockerService.serviceSpec(request, swarmClusterConfiguration, docker, targetNodeId, metadata);
+        return batcher.create(request, serviceSpec, docker, batchWindow);
+    }
+
+    private static void addWarning(List<Map<String, String>> messages, String message) {
+        Map<String, String> messageToBeAdded = new HashMap<>();
+        messageToBeAdded.put("type", "warning");
+        messageToBeAdded.put("message", message);
+        messages.add(messageToBeAdded);
+    }
+
+    public AgentCapacity.Utilisation getCapacityUtilisation(SwarmClusterConfiguration swarmClusterConfiguration) {
+        return capacity.utilisation(swarmClusterConfiguration.getMaxDockerContainers(), services.size());
     }
 
     @Override
@@ -103,16 +148,7 @@ public class DockerServices implements AgentInstances<DockerService, SwarmElasti
             DockerSwarmPlugin.LOG.warn("Requested to terminate an instance that does not exist " + agentId);
         }
 
-        doWithLockOnSemaphore(new Runnable() {
-            @Override
-            public void run() {
-                semaphore.release();
-            }
-        });
-
-        synchronized (services) {
-            services.remove(agentId);
-        }
+        forget(agentId);
     }
 
     @Override
@@ -146,18 +182,112 @@ public class DockerServices implements AgentInstances<DockerService, SwarmElasti
     }
 
     private void refreshAgentInstances(SwarmClusterConfiguration pluginSettings) throws Exception {
-        DockerClient dockerClient = docker(pluginSettings);
-        List<Service> clusterSpecificServices = dockerClient.listServices();
-        services.clear();
+        resync(docker(pluginSettings));
+    }
+
+    /**
+     * Reconciles the inventory with the services labelled as created by this plugin. Services registered while the
+     * listing is in progress are kept, they may simply not be part of it yet.
+     */
+    void resync(DockerClient dockerClient) throws Exception {
+        Set<String> knownBeforeListing = new HashSet<>(services.keySet());
+        List<Service> clusterSpecificServices = dockerClient.listServices(Service.Criteria.builder()
+                .addLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID)
+                .build());
+
+        Set<String> listed = new HashSet<>();
         for (Service service : clusterSpecificServices) {
-            ImmutableMap<String, String> labels = service.spec().labels();
-            if (labels != null && Constants.PLUGIN_ID.equals(labels.get(Constants.CREATED_BY_LABEL_KEY))) {
-                register(DockerService.fromService(service));
-            }
+            DockerService dockerService = DockerService.fromService(service);
+            listed.add(dockerService.name());
+            register(dockerService);
         }
+
+        knownBeforeListing.removeAll(listed);
+        knownBeforeListing.forEach(this::forget);
+        lastFullSync = clock.now();
         refreshed = true;
     }
 
+    void apply(Event event, DockerClient dockerClient) throws Exception {
+        String action = event.action();
+        if (event.actor() == null || action == null) {
+            return;
+        }
+
+        switch (action) {
+            case "create":
+                Service service;
+                try {
+                    service = dockerClient.inspectService(event.actor().id());
+                } catch (ServiceNotFoundException e) {
+                    return;
+                }
+                ImmutableMap<String, String> labels = service.spec().labels();
+                if (labels != null && Constants.PLUGIN_ID.equals(labels.get(Constants.CREATED_BY_LABEL_KEY))) {
+                    if (services.putIfAbsent(service.spec().name(), DockerService.fromService(service)) == null) {
+                        indexed(service.spec().name());
+                    }
+                }
+                break;
+            case "remove":
+                String name = event.actor().attributes() == null ? null : event.actor().attributes().get("name");
+                if (name != null) {
+                    forget(name);
+                }
+                break;
+            default:
+                // updates do not affect the inventory
+        }
+    }
+
+    /**
+     * Starts following the service events of the swarm, if not already doing so. While the stream is connected the
+     * inventory is kept up to date from the events, and it is reconciled with a full listing every few minutes. The
+     * resource usage of the agents is sampled alongside.
+     */
+    public synchronized void watch(SwarmClusterConfiguration swarmClusterConfiguration) {
+        watchedCluster = swarmClusterConfiguration;
+        if (eventWatcher == null) {
+            eventWatcher = new ServiceEventWatcher(this, swarmClusterConfiguration, factory);
+            eventWatcher.start();
+        }
+        if (usageSampler == null) {
+            usageSampler = new ResourceUsageSampler(swarmClusterConfiguration, factory);
+            usageSampler.start();
+        }
+    }
+
+    public synchronized void stopWatching() {
+        if (eventWatcher != null) {
+            eventWatcher.stop();
+            eventWatcher = null;
+        }
+        if (usageSampler != null) {
+            usageSampler.stop();
+            usageSampler = null;
+        }
+        if (watchedCluster != null) {
+            factory.release(watchedCluster);
+            watchedCluster = null;
+        }
+    }
+
+    /**
+     * @return the latest resource usage sample of the swarm, or {@code null} if it has not been sampled yet.
+     */
+    public synchronized ResourceUsage getResourceUsage() {
+        return usageSampler == null ? null : usageSampler.latest();
+    }
+
+    public boolean isInSync() {
+        ServiceEventWatcher watcher = this.eventWatcher;
+        return watcher != null && watcher.isInSync();
+    }
+
+    private boolean isFullSyncDue() {
+        return isInSync() && lastFullSync != null && clock.now().isAfter(lastFullSync.plus(FULL_SYNC_INTERVAL));
+    }
+
     //TODO: Delete this
     public void refreshAll(SwarmClusterConfiguration swarmClusterConfiguration, boolean forceRefresh) throws Exception {
         if (!refreshed || forceRefresh) {
@@ -167,13 +297,56 @@ public class DockerServices implements AgentInstances<DockerService, SwarmElasti
 
     @Override
     public void refreshAll(SwarmClusterConfiguration pluginSettings) throws Exception {
-        if (!refreshed) {
+        if (!refreshed || isFullSyncDue()) {
             refreshAgentInstances(pluginSettings);
         }
     }
 
     public void register(DockerService service) {
         services.put(service.name(), service);
+        indexed(service.name());
+    }
+
+    private void forget(String name) {
+        if (services.remove(name) != null) {
+            unindexed(name);
+        }
+    }
+
+    /**
+     * Adds the services of this cluster to the given cross-cluster index, and keeps them up to date in it from now on.
+     */
+    public synchronized void attach(AgentIndex agentIndex, String clusterId) {
+        if (agentIndex == this.agentIndex && clusterId.equals(this.clusterId)) {
+            return;
+        }
+        detach();
+        this.agentIndex = agentIndex;
+        this.clusterId = clusterId;
+        services.keySet().forEach(name -> agentIndex.put(name, clusterId));
+    }
+
+    /**
+     * Removes the services of this cluster from the index it is attached to, if any.
+     */
+    public synchronized void detach() {
+        if (agentIndex != null) {
+            services.keySet().forEach(name -> agentIndex.remove(name, clusterId));
+            agentIndex = null;
+            clusterId = null;
+        }
+    }
+
+    private synchronized void indexed(String name) {
+        if (agentIndex != null && services.containsKey(name)) {
+            agentIndex.put(name, clusterId);
+        }
+    }
+
+    private synchronized void unindexed(String name) {
+        if (agentIndex != null && !services.containsKey(name)) {
+            agentIndex.remove(name, clusterId);
+        }
     }
 
     private DockerClient docker(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception {
@@ -185,11 +358,20 @@ public class DockerServices implements AgentInstances<DockerService, SwarmElasti
         Period period = swarmClusterConfiguration.getAutoRegisterPeriod();
         DockerServices unregisteredContainers = new DockerServices();
 
+        boolean inSync = isInSync();
         for (String serviceName : services.keySet()) {
             if (knownAgents.containsAgentWithId(serviceName)) {
                 continue;
             }
 
+            DockerService dockerService = services.get(serviceName);
+            if (inSync && dockerService != null) {
+                if (clock.now().isAfter(dockerService.createdAt().plus(period))) {
+                    unregisteredContainers.register(dockerService);
+                }
+                continue;
+            }
+
             Service serviceInfo;
             try {
                 serviceInfo = docker(swarmClusterConfiguration).inspectService(serviceName);
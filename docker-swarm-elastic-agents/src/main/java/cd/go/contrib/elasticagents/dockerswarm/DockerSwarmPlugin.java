@@ -33,8 +33,8 @@ import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static cd.go.contrib.elasticagents.dockerswarm.Constants.PLUGIN_IDENTIFIER;
 import static cd.go.contrib.elasticagents.dockerswarm.Constants.PROCESSOR_API_VERSION;
@@ -47,7 +47,8 @@ public class DockerSwarmPlugin implements GoPlugin {
     @Override
     public void initializeGoApplicationAccessor(GoApplicationAccessor accessor) {
         final ElasticAgentRequestClient pluginRequest = new ElasticAgentRequestClient(accessor, PROCESSOR_API_VERSION, PLUGIN_IDENTIFIER);
-        final Map<String, DockerServices> clusterToServicesMap = new HashMap<>();
+        final Map<String, DockerServices> clusterToServicesMap = new ConcurrentHashMap<>();
+        final AgentIndex agentIndex = new AgentIndex();
         requestDispatcher = BaseBuilder
                 .forElastic()
                 .v5()
@@ -61,13 +62,13 @@ public class DockerSwarmPlugin implements GoPlugin {
                 .validateElasticProfile(new ContainerMemorySettingsValidator())
                 .validateClusterProfile(new GoServerURLValidator())
                 .pluginStatusReport(null)
-                .agentStatusReport(new AgentStatusReportExecutor())
-                .clusterStatusReport(new ClusterStatusReportExecutor())
+                .agentStatusReport(new AgentStatusReportExecutor(clusterToServicesMap, agentIndex))
+                .clusterStatusReport(new ClusterStatusReportExecutor(clusterToServicesMap))
                 .migrateConfiguration(new MigrateConfigurationRequestExecutor())
-                .jobCompletion(new JobCompletionRequestExecutor(clusterToServicesMap, pluginRequest))
-                .createAgent(new CreateAgentRequestExecutor(clusterToServicesMap, pluginRequest))
-                .shouldAssignWork(new ShouldAssignWorkRequestExecutor(clusterToServicesMap))
-                .serverPing(new ServerPingRequestExecutor(clusterToServicesMap, pluginRequest))
+                .jobCompletion(new JobCompletionRequestExecutor(clusterToServicesMap, agentIndex, pluginRequest))
+                .createAgent(new CreateAgentRequestExecutor(clusterToServicesMap, agentIndex, pluginRequest))
+                .shouldAssignWork(new ShouldAssignWorkRequestExecutor(clusterToServicesMap, agentIndex))
+                .serverPing(new ServerPingRequestExecutor(clusterToServicesMap, agentIndex, pluginRequest))
                 .build();
     }
 
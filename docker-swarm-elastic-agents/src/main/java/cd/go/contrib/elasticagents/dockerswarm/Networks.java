@@ -27,13 +27,19 @@ import static java.text.MessageFormat.format;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
 public class Networks {
+    public static Collection<String> names(String networkConfig) {
+        return isBlank(networkConfig) ? Collections.emptyList() : Util.splitIntoLinesAndTrimSpaces(networkConfig);
+    }
+
     public static List<NetworkAttachmentConfig> fromString(String networkConfig, List<Network> dockerNetworks) {
+        return fromString(networkConfig, dockerNetworks.stream().collect(Collectors.toMap(o -> o.name(), o -> o)));
+    }
+
+    public static List<NetworkAttachmentConfig> fromString(String networkConfig, Map<String, Network> availableNetworks) {
         if (isBlank(networkConfig)) {
             return Collections.emptyList();
         }
 
-        final Map<String, Network> availableNetworks = dockerNetworks.stream().collect(Collectors.toMap(o -> o.name(), o -> o));
-
         final List<NetworkAttachmentConfig> serviceNetworks = new ArrayList<>();
         final Collection<String> networkEntries = Util.splitIntoLinesAndTrimSpaces(networkConfig);
         networkEntries.forEach(networkEntry -> {
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import com.spotify.docker.client.messages.swarm.Node;
+
+import java.util.Map;
+
+/**
+ * Evaluates swarm placement constraints such as {@code node.labels.disk==ssd} against a node, for the attributes the
+ * plugin knows how to read.
+ */
+class NodeConstraint {
+    private static final String NODE_LABELS = "node.labels.";
+    private static final String ENGINE_LABELS = "engine.labels.";
+
+    static boolean isSupported(String expression) {
+        final String[] parts = split(expression);
+        return parts != null && isKnownAttribute(parts[0]);
+    }
+
+    static boolean matches(String expression, Node node) {
+        final String[] parts = split(expression);
+        if (parts == null) {
+            return false;
+        }
+
+        final boolean equal = parts[2].equalsIgnoreCase(valueOf(parts[0], node));
+        return "==".equals(parts[1]) == equal;
+    }
+
+    private static boolean isKnownAttribute(String attribute) {
+        switch (attribute) {
+            case "node.id":
+            case "node.hostname":
+            case "node.role":
+            case "node.platform.os":
+            case "node.platform.arch":
+                return true;
+            default:
+                return attribute.startsWith(NODE_LABELS) || attribute.startsWith(ENGINE_LABELS);
+        }
+    }
+
+    private static String valueOf(String attribute, Node node) {
+        switch (attribute) {
+            case "node.id":
+                return node.id();
+            case "node.hostname":
+                return node.description().hostname();
+            case "node.role":
+                return node.spec().role();
+            case "node.platform.os":
+                return node.description().platform() == null ? null : node.description().platform().os();
+            case "node.platform.arch":
+                return node.description().platform() == null ? null : node.description().platform().architecture();
+            default:
+                if (attribute.startsWith(NODE_LABELS)) {
+                    return label(node.spec().labels(), attribute.substring(NODE_LABELS.length()));
+                }
+                if (attribute.startsWith(ENGINE_LABELS) && node.description().engine() != null) {
+                    return label(node.description().engine().labels(), attribute.substring(ENGINE_LABELS.length()));
+                }
+                return null;
+        }
+    }
+
+    private static String label(Map<String, String> labels, String key) {
+        return labels == null ? null : labels.get(key);
+    }
+
+    private static String[] split(String expression) {
+        for (String operator : new String[]{"==", "!="}) {
+            final int index = expression.indexOf(operator);
+            if (index > 0) {
+                return new String[]{expression.substring(0, index).trim(), operator, expression.substring(index + operator.length()).trim()};
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.dockerswarm.utils.Size;
+import cd.go.contrib.elasticagents.dockerswarm.utils.Util;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.swarm.Node;
+import com.spotify.docker.client.messages.swarm.Task;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import java.util.*;
+
+import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
+import static java.text.MessageFormat.format;
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Picks the node an agent service should run on, based on the memory the tasks on each node have reserved. Only
+ * profiles with a memory reservation are scheduled, the others are left to the swarm scheduler.
+ * <p>
+ * A node picked for a service is claimed until the task of that service shows up in the task list, so that agents
+ * created in quick succession do not all land on the same node.
+ */
+class NodeScheduler {
+    private static final Period CLAIM_TIMEOUT = Period.minutes(1);
+
+    private final List<Claim> claims = new ArrayList<>();
+    private final Clock clock;
+
+    NodeScheduler() {
+        this(Clock.DEFAULT);
+    }
+
+    NodeScheduler(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return a claim on the node with the most free memory that can hold the reservation of the profile, or
+     * {@code null} if placement is left to the swarm.
+     * @throws InsufficientNodeResourcesException if none of the nodes the profile can run on has enough free memory.
+     */
+    Claim claimNode(SwarmElasticProfileConfiguration profile, DockerClient docker) throws DockerException, InterruptedException {
+        if (isBlank(profile.getReservedMemory())) {
+            return null;
+        }
+
+        final List<String> constraints = Util.linesToList(profile.getConstraints());
+        if (!constraints.stream().allMatch(NodeConstraint::isSupported)) {
+            LOG.debug(format("Not scheduling on node resources, the constraints {0} are not all understood by the plugin.", constraints));
+            return null;
+        }
+
+        final long required = Size.parse(profile.getReservedMemory()).toBytes();
+        final List<Task> runningTasks = docker.listTasks(Task.Criteria.builder().desiredState("running").build());
+        final List<Node> nodes = docker.listNodes();
+
+        synchronized (this) {
+            final Map<String, Long> reserved = reservedMemoryByNode(runningTasks);
+
+            Node target = null;
+            long targetFree = Long.MIN_VALUE;
+            long mostFree = 0;
+            for (Node node : nodes) {
+                if (!isSchedulable(node) || !constraints.stream().allMatch(constraint -> NodeConstraint.matches(constraint, node))) {
+                    continue;
+                }
+
+                final long free = node.description().resources().memoryBytes() - reserved.getOrDefault(node.id(), 0L);
+                mostFree = Math.max(mostFree, free);
+                if (free >= required && free > targetFree) {
+                    target = node;
+                    targetFree = free;
+                }
+            }
+
+            if (target == null) {
+                throw new InsufficientNodeResourcesException(format("None of the swarm nodes has {0} of memory free to run the agent (at most {1} is free). Not creating the agent until one has.",
+                        Util.readableSize(required), Util.readableSize(mostFree)));
+            }
+
+            final Claim claim = new Claim(target.id(), required, clock.now());
+            claims.add(claim);
+            LOG.debug(format("Scheduling the agent on node {0} which has {1} of memory free.", target.description().hostname(), Util.readableSize(targetFree)));
+            return claim;
+        }
+    }
+
+    /**
+     * Marks the claim as held by the service with the given id, it is released once a task of the service is listed.
+     */
+    synchronized void placed(Claim claim, String serviceId) {
+        if (claim != null) {
+            claim.serviceId = serviceId;
+        }
+    }
+
+    synchronized void release(Claim claim) {
+        if (claim != null) {
+            claims.remove(claim);
+        }
+    }
+
+    private Map<String, Long> reservedMemoryByNode(List<Task> runningTasks) {
+        final Map<String, Long> reserved = new HashMap<>();
+        final Set<String> listedServices = new HashSet<>();
+        for (Task task : runningTasks) {
+            if (task.serviceId() != null) {
+                listedServices.add(task.serviceId());
+            }
+            if (task.nodeId() == null || task.spec() == null || task.spec().resources() == null
+                    || task.spec().resources().reservations() == null || task.spec().resources().reservations().memoryBytes() == null) {
+                continue;
+            }
+            reserved.merge(task.nodeId(), task.spec().resources().reservations().memoryBytes(), Long::sum);
+        }
+
+        final DateTime expiredBefore = clock.now().minus(CLAIM_TIMEOUT);
+        claims.removeIf(claim -> claim.claimedAt.isBefore(expiredBefore) || (claim.serviceId != null && listedServices.contains(claim.serviceId)));
+        for (Claim claim : claims) {
+            reserved.merge(claim.nodeId, claim.memoryBytes, Long::sum);
+        }
+        return reserved;
+    }
+
+    private static boolean isSchedulable(Node node) {
+        return node.spec() != null && "active".equalsIgnoreCase(node.spec().availability())
+                && node.status() != null && "ready".equalsIgnoreCase(node.status().state())
+                && node.description() != null && node.description().resources() != null
+                && node.description().resources().memoryBytes() != null;
+    }
+
+    static class Claim {
+        private final String nodeId;
+        private final long memoryBytes;
+        private final DateTime claimedAt;
+        private String serviceId;
+
+        private Claim(String nodeId, long memoryBytes, DateTime claimedAt) {
+            this.nodeId = nodeId;
+            this.memoryBytes = memoryBytes;
+            this.claimedAt = claimedAt;
+        }
+
+        String nodeId() {
+            return nodeId;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.ResourceUsage;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.ResourceUsage.NodeUsage;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.ResourceUsage.ProfileUsage;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.CpuStats;
+import com.spotify.docker.client.messages.MemoryStats;
+import com.spotify.docker.client.messages.swarm.Node;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.Task;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Periodically samples the container stats of the agent tasks of a swarm and aggregates them per node and per elastic
+ * profile. The docker API only serves the stats of containers running on the node it is called on, so the tasks on
+ * other nodes are counted but not sampled. Stats are read a few containers at a time, and those not read within the
+ * stats timeout are counted but not sampled.
+ */
+public class ResourceUsageSampler {
+    static final long SAMPLE_INTERVAL_SECONDS = 60;
+    private static final Duration STATS_TIMEOUT = Duration.ofSeconds(30);
+    private static final ExecutorService STATS_EXECUTOR = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "docker-swarm-usage-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SwarmClusterConfiguration swarmClusterConfiguration;
+    private final DockerClientFactory factory;
+    private final Clock clock;
+    private final Duration statsTimeout;
+    private volatile ResourceUsage latest;
+    private ScheduledExecutorService scheduler;
+
+    public ResourceUsageSampler(SwarmClusterConfiguration swarmClusterConfiguration, DockerClientFactory factory) {
+        this(swarmClusterConfiguration, factory, Clock.DEFAULT);
+    }
+
+    ResourceUsageSampler(SwarmClusterConfiguration swarmClusterConfiguration, DockerClientFactory factory, Clock clock) {
+        this(swarmClusterConfiguration, factory, clock, STATS_TIMEOUT);
+    }
+
+    ResourceUsageSampler(SwarmClusterConfiguration swarmClusterConfiguration, DockerClientFactory factory, Clock clock, Duration statsTimeout) {
+        this.swarmClusterConfiguration = swarmClusterConfiguration;
+        this.factory = factory;
+        this.clock = clock;
+        this.statsTimeout = statsTimeout;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "docker-swarm-usage-sampler-" + swarmClusterConfiguration.uuid());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sampleQuietly, 0, SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return the most recent sample, or {@code null} if the swarm has not been sampled yet.
+     */
+    public ResourceUsage latest() {
+        return latest;
+    }
+
+    private void sampleQuietly() {
+        try {
+            latest = sample(factory.docker(swarmClusterConfiguration));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.warn(format("Could not sample the resource usage of cluster {0}: {1}", swarmClusterConfiguration.uuid(), e.getMessage()));
+        }
+    }
+
+    ResourceUsage sample(DockerClient docker) throws DockerException, InterruptedException {
+        final Map<String, SwarmElasticProfileConfiguration> profileOfService = new HashMap<>();
+        for (Service service : docker.listServices(Service.Criteria.builder()
+                .addLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID)
+                .build())) {
+            profileOfService.put(service.id(), DockerService.fromService(service).getElasticProfileConfiguration());
+        }
+
+        final Map<Task, Future<ContainerStats>> statsOfTask = new LinkedHashMap<>();
+        for (Task task : docker.listTasks(Task.Criteria.builder()
+                .desiredState("running")
+                .label(Constants.CREATED_BY_LABEL_KEY + "=" + Constants.PLUGIN_ID)
+                .build())) {
+            if (profileOfService.containsKey(task.serviceId()) && task.status() != null && "running".equals(task.status().state())) {
+                statsOfTask.put(task, STATS_EXECUTOR.submit(() -> stats(docker, task)));
+            }
+        }
+
+        final long deadline = System.nanoTime() + statsTimeout.toNanos();
+        final Map<String, Usage> byNode = new LinkedHashMap<>();
+        final Map<SwarmElasticProfileConfiguration, Usage> byProfile = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Task, Future<ContainerStats>> entry : statsOfTask.entrySet()) {
+                final Task task = entry.getKey();
+                final ContainerStats stats = await(task, entry.getValue(), deadline);
+                byNode.computeIfAbsent(task.nodeId(), nodeId -> new Usage()).add(stats);
+                byProfile.computeIfAbsent(profileOfService.get(task.serviceId()), p -> new Usage()).add(stats);
+            }
+        } finally {
+            statsOfTask.values().forEach(stats -> stats.cancel(true));
+        }
+
+        final List<NodeUsage> nodes = new ArrayList<>();
+        for (Node node : docker.listNodes()) {
+            final Usage usage = byNode.getOrDefault(node.id(), new Usage());
+            final boolean described = node.description() != null && node.description().resources() != null;
+            nodes.add(new NodeUsage(node.id(),
+                    node.description() == null ? null : node.description().hostname(),
+                    usage.tasks,
+                    usage.sampled,
+                    usage.memoryBytes,
+                    described ? node.description().resources().memoryBytes() : 0,
+                    usage.cpuPercent,
+                    described ? node.description().resources().nanoCpus() / 1e9 : 0));
+        }
+
+        final List<ProfileUsage> profiles = new ArrayList<>();
+        byProfile.forEach((profile, usage) -> profiles.add(new ProfileUsage(profile.getImage(),
+                profile.getReservedMemory(),
+                profile.getMaxMemory(),
+                usage.tasks,
+                usage.sampled,
+                usage.sampled == 0 ? 0 : usage.memoryBytes / usage.sampled,
+                usage.peakMemoryBytes,
+                usage.sampled == 0 ? 0 : usage.cpuPercent / usage.sampled)));
+
+        return new ResourceUsage(clock.now().getMillis(), nodes, profiles);
+    }
+
+    private static ContainerStats await(Task task, Future<ContainerStats> stats, long deadline) throws InterruptedException {
+        try {
+            return stats.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            LOG.debug(format("Timed out reading the stats of task {0}.", task.id()));
+            return null;
+        } catch (ExecutionException e) {
+            LOG.debug(format("Could not read the stats of task {0}: {1}", task.id(), e.getCause().getMessage()));
+            return null;
+        }
+    }
+
+    private static ContainerStats stats(DockerClient docker, Task task) throws DockerException, InterruptedException {
+        if (task.status().containerStatus() == null || task.status().containerStatus().containerId() == null) {
+            return null;
+        }
+        try {
+            return docker.stats(task.status().containerStatus().containerId());
+        } catch (ContainerNotFoundException e) {
+            // the container runs on another node
+            return null;
+        }
+    }
+
+    static long memoryUsage(ContainerStats stats) {
+        final MemoryStats memory = stats.memoryStats();
+        if (memory == null || memory.usage() == null) {
+            return 0;
+        }
+        final Long cache = memory.stats() == null ? null : memory.stats().cache();
+        return Math.max(0, memory.usage() - (cache == null ? 0 : cache));
+    }
+
+    /**
+     * @return the CPU used by the container between the two readings of the stats, where 100 is one full CPU.
+     */
+    static double cpuPercent(ContainerStats stats) {
+        final CpuStats cpu = stats.cpuStats();
+        final CpuStats previous = stats.precpuStats();
+        if (cpu == null || previous == null || cpu.cpuUsage() == null || previous.cpuUsage() == null
+                || cpu.systemCpuUsage() == null || previous.systemCpuUsage() == null) {
+            return 0;
+        }
+
+        final long cpuDelta = cpu.cpuUsage().totalUsage() - previous.cpuUsage().totalUsage();
+        final long systemDelta = cpu.systemCpuUsage() - previous.systemCpuUsage();
+        if (cpuDelta <= 0 || systemDelta <= 0) {
+            return 0;
+        }
+        final int onlineCpus = cpu.cpuUsage().percpuUsage() == null || cpu.cpuUsage().percpuUsage().isEmpty() ? 1 : cpu.cpuUsage().percpuUsage().size();
+        return 100.0 * cpuDelta / systemDelta * onlineCpus;
+    }
+
+    private static class Usage {
+        private int tasks;
+        private int sampled;
+        private long memoryBytes;
+        private long peakMemoryBytes;
+        private double cpuPercent;
+
+        private void add(ContainerStats stats) {
+            tasks++;
+            if (stats == null) {
+                return;
+            }
+            final long memory = memoryUsage(stats);
+            sampled++;
+            memoryBytes += memory;
+            peakMemoryBytes = Math.max(peakMemoryBytes, memory);
+            cpuPercent += cpuPercent(stats);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.requests.AbstractCreateAgentRequest;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.ServiceSpec;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Creates the agent services requested for the same elastic profile together. A request is created right away when no
+ * services of its cluster and profile are being created; requests arriving while some are join the next batch, which
+ * is created once the batch in flight is done, it is full or the window has passed. All services of a batch are created
+ * concurrently, checked with a single listing of the plugin's services and registered at once, instead of inspecting
+ * each service on its own.
+ */
+class ServiceCreationBatcher {
+    static final int MAX_BATCH_SIZE = 50;
+    private static final int PARALLELISM = 8;
+    private static final ExecutorService SHARED_CREATORS = newCreators();
+
+    private final Map<List<Object>, Batch> openBatches = new HashMap<>();
+    private final Map<List<Object>, Batch> creatingBatches = new HashMap<>();
+    private final ExecutorService creators;
+    private final Consumer<DockerService> registry;
+
+    ServiceCreationBatcher(Consumer<DockerService> registry) {
+        this(registry, SHARED_CREATORS);
+    }
+
+    ServiceCreationBatcher(Consumer<DockerService> registry, ExecutorService creators) {
+        this.registry = registry;
+        this.creators = creators;
+    }
+
+    /**
+     * Creates the service right away, or adds it to the open batch of its cluster and profile if services of those are
+     * being created, and waits until it has been created.
+     *
+     * @param windowMillis how long the first request of a batch waits at most for the batch in flight to be done.
+     */
+    DockerService create(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
+                         ServiceSpec serviceSpec,
+                         DockerClient docker,
+                         long windowMillis) throws Exception {
+        final List<Object> key = Arrays.asList(request.getClusterProfileProperties().uuid(), request.getElasticProfileConfiguration());
+        final PendingService pending = new PendingService(request, serviceSpec);
+        final Batch batch;
+        final boolean leader;
+        synchronized (openBatches) {
+            Batch open = openBatches.get(key);
+            if (open == null && !creatingBatches.containsKey(key)) {
+                leader = true;
+                batch = new Batch();
+                batch.add(pending);
+                batch.ready.countDown();
+            } else {
+                leader = open == null;
+                if (leader) {
+                    open = new Batch();
+                    openBatches.put(key, open);
+                }
+                batch = open;
+                if (batch.add(pending) >= MAX_BATCH_SIZE) {
+                    openBatches.remove(key);
+                }
+            }
+        }
+
+        if (leader) {
+            try {
+                batch.ready.await(windowMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                synchronized (openBatches) {
+                    openBatches.remove(key, batch);
+                }
+                batch.pending.forEach(service -> service.result.completeExceptionally(e));
+                throw e;
+            }
+            startCreating(key, batch);
+            try {
+                createAll(batch.pending, docker);
+            } finally {
+                doneCreating(key, batch);
+            }
+        }
+        return pending.get();
+    }
+
+    // used by test
+    int waitingRequests() {
+        synchronized (openBatches) {
+            return openBatches.values().stream().mapToInt(batch -> batch.pending.size()).sum();
+        }
+    }
+
+    private void startCreating(List<Object> key, Batch batch) {
+        synchronized (openBatches) {
+            openBatches.remove(key, batch);
+            creatingBatches.put(key, batch);
+        }
+    }
+
+    private void doneCreating(List<Object> key, Batch batch) {
+        synchronized (openBatches) {
+            creatingBatches.remove(key, batch);
+            Batch next = openBatches.get(key);
+            if (next != null) {
+                next.ready.countDown();
+            }
+        }
+    }
+
+    private void createAll(List<PendingService> batch, DockerClient docker) {
+        final Map<PendingService, Future<?>> creations = new LinkedHashMap<>();
+        for (PendingService pending : batch) {
+            creations.put(pending, creators.submit(() -> docker.createService(pending.serviceSpec)));
+        }
+
+        final List<PendingService> created = new ArrayList<>();
+        for (Map.Entry<PendingService, Future<?>> creation : creations.entrySet()) {
+            try {
+                creation.getValue().get();
+                created.add(creation.getKey());
+            } catch (ExecutionException e) {
+                creation.getKey().result.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                creations.keySet().forEach(pending -> pending.result.completeExceptionally(e));
+                return;
+            }
+        }
+        if (created.isEmpty()) {
+            return;
+        }
+
+        final Map<String, Service> listed = new HashMap<>();
+        try {
+            for (Service service : docker.listServices(Service.Criteria.builder()
+                    .addLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID)
+                    .build())) {
+                listed.put(service.spec().name(), service);
+            }
+        } catch (Exception e) {
+            LOG.warn(format("Could not list the services of a batch of {0}, inspecting them one by one.", created.size()), e);
+        }
+
+        for (PendingService pending : created) {
+            try {
+                final String serviceName = pending.serviceSpec.name();
+                Service service = listed.get(serviceName);
+                if (service == null) {
+                    service = docker.inspectService(serviceName);
+                }
+                final DockerService dockerService = DockerService.fromRequest(service.id(), serviceName, service.createdAt(), pending.request);
+                registry.accept(dockerService);
+                pending.result.complete(dockerService);
+            } catch (Exception e) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+        LOG.debug(format("Created a batch of {0} services, {1} of them successfully.", batch.size(), created.size()));
+    }
+
+    private static ExecutorService newCreators() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(PARALLELISM, runnable -> {
+            Thread thread = new Thread(runnable, "docker-swarm-service-creator-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class Batch {
+        private final List<PendingService> pending = new ArrayList<>();
+        private final CountDownLatch ready = new CountDownLatch(1);
+
+        private int add(PendingService service) {
+            pending.add(service);
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                ready.countDown();
+            }
+            return pending.size();
+        }
+    }
+
+    private static class PendingService {
+        private final AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request;
+        private final ServiceSpec serviceSpec;
+        private final CompletableFuture<DockerService> result = new CompletableFuture<>();
+
+        private PendingService(AbstractCreateAgentRequest<SwarmElasticProfileConfiguration, SwarmClusterConfiguration> request,
+                               ServiceSpec serviceSpec) {
+            this.request = request;
+            this.serviceSpec = serviceSpec;
+        }
+
+        private DockerService get() throws Exception {
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
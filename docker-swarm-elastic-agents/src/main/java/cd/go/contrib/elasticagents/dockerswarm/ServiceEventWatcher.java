@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.messages.Event;
+
+import java.util.concurrent.TimeUnit;
+
+import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Keeps a {@link DockerServices} inventory up to date by following the service events of the swarm. Service events do
+ * not carry the service labels, so created services are inspected to tell the ones created by this plugin apart.
+ * Every time the stream is (re)opened the inventory is resynced with a label filtered listing, so events missed while
+ * the stream was down are not lost. While the stream cannot be opened the inventory is resynced before every retry, so
+ * it does not go stale until the stream is back.
+ */
+public class ServiceEventWatcher implements Runnable {
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final DockerServices dockerServices;
+    private final SwarmClusterConfiguration swarmClusterConfiguration;
+    private final DockerClientFactory factory;
+    private volatile boolean inSync;
+    private volatile boolean stopped;
+    private volatile EventStream eventStream;
+
+    public ServiceEventWatcher(DockerServices dockerServices,
+                               SwarmClusterConfiguration swarmClusterConfiguration,
+                               DockerClientFactory factory) {
+        this.dockerServices = dockerServices;
+        this.swarmClusterConfiguration = swarmClusterConfiguration;
+        this.factory = factory;
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "docker-swarm-service-events-" + swarmClusterConfiguration.uuid());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        inSync = false;
+        EventStream stream = this.eventStream;
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * @return true when the inventory reflects the swarm, i.e. the events stream is connected and the inventory has
+     * been resynced since it was opened.
+     */
+    public boolean isInSync() {
+        return inSync;
+    }
+
+    @Override
+    public void run() {
+        long retryDelay = 1000;
+        while (!stopped) {
+            try {
+                // subscribe before resyncing so that nothing happening in between is missed
+                try (DefaultDockerClient streamingClient = factory.streamingClient(swarmClusterConfiguration);
+                     EventStream stream = streamingClient.events(DockerClient.EventsParam.type(Event.Type.SERVICE))) {
+                    this.eventStream = stream;
+                    dockerServices.resync(factory.docker(swarmClusterConfiguration));
+                    inSync = true;
+                    retryDelay = 1000;
+                    LOG.debug(format("Listening to service events for cluster {0}", swarmClusterConfiguration.uuid()));
+
+                    while (!stopped && stream.hasNext()) {
+                        // look the client up for every event, the factory may have replaced it while the stream was quiet
+                        dockerServices.apply(stream.next(), factory.docker(swarmClusterConfiguration));
+                    }
+                }
+                if (!stopped) {
+                    LOG.warn(format("Service events stream for cluster {0} was closed by the docker daemon.", swarmClusterConfiguration.uuid()));
+                }
+            } catch (Exception e) {
+                if (!stopped) {
+                    LOG.warn(format("Service events stream for cluster {0} failed, falling back to polling until it is reconnected.", swarmClusterConfiguration.uuid()), e);
+                }
+            } finally {
+                inSync = false;
+                this.eventStream = null;
+            }
+
+            if (!stopped) {
+                poll();
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void poll() {
+        try {
+            dockerServices.resync(factory.docker(swarmClusterConfiguration));
+        } catch (Exception e) {
+            LOG.debug(format("Could not resync the services of cluster {0} while its events stream is down.", swarmClusterConfiguration.uuid()), e);
+        }
+    }
+}
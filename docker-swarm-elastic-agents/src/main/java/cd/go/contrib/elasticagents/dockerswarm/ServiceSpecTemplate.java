@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.dockerswarm.utils.Size;
+import cd.go.contrib.elasticagents.dockerswarm.utils.Util;
+import com.google.gson.Gson;
+import com.spotify.docker.client.messages.mount.Mount;
+import com.spotify.docker.client.messages.swarm.Driver;
+import com.spotify.docker.client.messages.swarm.ResourceRequirements;
+import com.spotify.docker.client.messages.swarm.Resources;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.*;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * The parts of an agent service spec that only depend on the elastic profile, parsed and validated once per profile.
+ * The fields that differ per agent, such as the name, the labels and the environment, are added when the service is
+ * created.
+ */
+public class ServiceSpecTemplate {
+    private static final Gson GSON = new Gson();
+    private static final int MAX_CACHED_TEMPLATES = 64;
+    private static final Map<SwarmElasticProfileConfiguration, ServiceSpecTemplate> TEMPLATES = Collections.synchronizedMap(
+            new LinkedHashMap<SwarmElasticProfileConfiguration, ServiceSpecTemplate>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SwarmElasticProfileConfiguration, ServiceSpecTemplate> eldest) {
+                    return size() > MAX_CACHED_TEMPLATES;
+                }
+            });
+
+    private final String image;
+    private final List<String> command;
+    private final List<String> environment;
+    private final List<String> hosts;
+    private final List<Mount> mounts;
+    private final DockerSecrets secrets;
+    private final Driver logDriver;
+    private final ResourceRequirements resources;
+    private final List<String> constraints;
+    private final String networks;
+    private final Collection<String> networkNames;
+    private final String configurationLabel;
+
+    ServiceSpecTemplate(SwarmElasticProfileConfiguration profile) {
+        image = image(profile.getImage());
+        command = StringUtils.isNotBlank(profile.getCommand()) ? List.copyOf(Util.splitIntoLinesAndTrimSpaces(profile.getCommand())) : null;
+        environment = StringUtils.isNotBlank(profile.getEnvironment()) ? List.copyOf(Util.splitIntoLinesAndTrimSpaces(profile.getEnvironment())) : Collections.emptyList();
+        hosts = List.copyOf(new Hosts().hosts(profile.getHosts()));
+        mounts = List.copyOf(DockerMounts.fromString(profile.getMounts()).toMount());
+        secrets = DockerSecrets.fromString(profile.getSecrets());
+        logDriver = StringUtils.isBlank(profile.getLogDriver()) ? null : Driver.builder()
+                .name(profile.getLogDriver())
+                .options(Util.linesToMap(profile.getLogDriverOptions()))
+                .build();
+        resources = resourceRequirements(profile);
+        constraints = List.copyOf(Util.linesToList(profile.getConstraints()));
+        networks = profile.getNetworks();
+        networkNames = List.copyOf(Networks.names(profile.getNetworks()));
+        configurationLabel = GSON.toJson(profile);
+    }
+
+    /**
+     * @return the template of the given profile, compiled on first use.
+     * @throws RuntimeException if the profile is not valid, for example when it has no image or an unparsable size.
+     */
+    public static ServiceSpecTemplate of(SwarmElasticProfileConfiguration profile) {
+        ServiceSpecTemplate template = TEMPLATES.get(profile);
+        if (template == null) {
+            template = new ServiceSpecTemplate(profile);
+            TEMPLATES.put(profile, template);
+        }
+        return template;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public List<String> getCommand() {
+        return command;
+    }
+
+    public List<String> getEnvironment() {
+        return environment;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public List<Mount> getMounts() {
+        return mounts;
+    }
+
+    public DockerSecrets getSecrets() {
+        return secrets;
+    }
+
+    public Driver getLogDriver() {
+        return logDriver;
+    }
+
+    public ResourceRequirements getResources() {
+        return resources;
+    }
+
+    public List<String> getConstraints() {
+        return constraints;
+    }
+
+    public String getNetworks() {
+        return networks;
+    }
+
+    public Collection<String> getNetworkNames() {
+        return networkNames;
+    }
+
+    public String getConfigurationLabel() {
+        return configurationLabel;
+    }
+
+    private static ResourceRequirements resourceRequirements(SwarmElasticProfileConfiguration swarmElasticProfileConfiguration) {
+        ResourceRequirements.Builder resourceRequirementsBuilder = ResourceRequirements.builder();
+        final String maxMemory = swarmElasticProfileConfiguration.getMaxMemory();
+        if (StringUtils.isNotBlank(maxMemory)) {
+            resourceRequirementsBuilder.limits(
+                    Resources.builder()
+                            .memoryBytes(Size.parse(maxMemory).toBytes())
+                            .build()
+            );
+        }
+
+        final String reservedMemory = swarmElasticProfileConfiguration.getReservedMemory();
+        if (StringUtils.isNotBlank(reservedMemory)) {
+            resourceRequirementsBuilder.reservations(
+                    Resources.builder()
+                            .memoryBytes(Size.parse(reservedMemory).toBytes())
+                            .build()
+            );
+        }
+
+        return resourceRequirementsBuilder.build();
+    }
+
+    private static String image(String image) {
+        if (isBlank(image)) {
+            throw new IllegalArgumentException("Must provide `Image` attribute.");
+        }
+
+        if (!image.contains(":")) {
+            return image + ":latest";
+        }
+        return image;
+    }
+}
@@ -31,6 +31,8 @@ import org.joda.time.Period;
 import java.util.Collection;
 import java.util.Objects;
 
+import static org.apache.commons.lang.StringUtils.isBlank;
+
 @Setter
 @Accessors(chain = true)
 @ToString(doNotUseGetters = true)
@@ -100,6 +102,11 @@ public class SwarmClusterConfiguration implements ClusterProfileConfiguration {
     @Property(name = ENABLE_PRIVATE_REGISTRY_AUTHENTICATION)
     private String useDockerAuthInfo;
 
+    @Expose
+    @SerializedName("service_creation_batch_window")
+    @Property(name = "service_creation_batch_window")
+    private String serviceCreationBatchWindow;
+
     private Period autoRegisterPeriod;
 
     public Period getAutoRegisterPeriod() {
@@ -124,6 +131,13 @@ public class SwarmClusterConfiguration implements ClusterProfileConfiguration {
         return Integer.valueOf(maxDockerContainers);
     }
 
+    public int getServiceCreationBatchWindow() {
+        if (isBlank(serviceCreationBatchWindow)) {
+            return 0;
+        }
+        return Integer.parseInt(serviceCreationBatchWindow);
+    }
+
     public String getGoServerUrl() {
         return goServerUrl;
     }
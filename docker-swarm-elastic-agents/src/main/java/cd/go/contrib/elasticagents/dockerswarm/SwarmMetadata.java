@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.Version;
+import com.spotify.docker.client.messages.swarm.Secret;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static com.spotify.docker.client.VersionCompare.compareVersion;
+
+/**
+ * Caches the daemon version, the networks and the secrets of a swarm, which are looked up every time a service is
+ * created. Entries are kept for a while, and a network or secret that is not known is looked up again right away in
+ * case it was created since the last lookup.
+ */
+public class SwarmMetadata {
+    static final Period VERSION_TTL = Period.minutes(10);
+    static final Period LOOKUP_TTL = Period.minutes(1);
+
+    private final Clock clock;
+    private Version version;
+    private DateTime versionFetchedAt;
+    private Map<String, Network> networks;
+    private DateTime networksFetchedAt;
+    private Map<String, Secret> secrets;
+    private DateTime secretsFetchedAt;
+
+    public SwarmMetadata() {
+        this(Clock.DEFAULT);
+    }
+
+    SwarmMetadata(Clock clock) {
+        this.clock = clock;
+    }
+
+    public synchronized Version version(DockerClient docker) throws DockerException, InterruptedException {
+        if (version == null || isExpired(versionFetchedAt, VERSION_TTL)) {
+            version = docker.version();
+            versionFetchedAt = clock.now();
+        }
+        return version;
+    }
+
+    public boolean apiVersionAtLeast(DockerClient docker, String expected) throws DockerException, InterruptedException {
+        return compareVersion(version(docker).apiVersion(), expected) >= 0;
+    }
+
+    /**
+     * @return the networks of the swarm by name, looked up again if any of the given names is not known.
+     */
+    public synchronized Map<String, Network> networks(DockerClient docker, Collection<String> names) throws DockerException, InterruptedException {
+        if (networks == null || isExpired(networksFetchedAt, LOOKUP_TTL) || !networks.keySet().containsAll(names)) {
+            networks = byName(docker.listNetworks(), Network::name);
+            networksFetchedAt = clock.now();
+        }
+        return networks;
+    }
+
+    /**
+     * @return the secrets of the swarm by name, looked up again if any of the given names is not known.
+     */
+    public synchronized Map<String, Secret> secrets(DockerClient docker, Collection<String> names) throws DockerException, InterruptedException {
+        if (secrets == null || isExpired(secretsFetchedAt, LOOKUP_TTL) || !secrets.keySet().containsAll(names)) {
+            secrets = byName(docker.listSecrets(), secret -> secret.secretSpec().name());
+            secretsFetchedAt = clock.now();
+        }
+        return secrets;
+    }
+
+    public synchronized void invalidate() {
+        version = null;
+        networks = null;
+        secrets = null;
+    }
+
+    private boolean isExpired(DateTime fetchedAt, Period ttl) {
+        return clock.now().isAfter(fetchedAt.plus(ttl));
+    }
+
+    private static <T> Map<String, T> byName(List<T> items, Function<T, String> name) {
+        final Map<String, T> byName = new HashMap<>();
+        for (T item : items) {
+            byName.put(name.apply(item), item);
+        }
+        return Collections.unmodifiableMap(byName);
+    }
+}
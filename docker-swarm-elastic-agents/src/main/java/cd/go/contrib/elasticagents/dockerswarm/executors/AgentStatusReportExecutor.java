@@ -18,8 +18,11 @@ package cd.go.contrib.elasticagents.dockerswarm.executors;
 
 import cd.go.contrib.elasticagents.common.ViewBuilder;
 import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+import cd.go.contrib.elasticagents.dockerswarm.AgentIndex;
 import cd.go.contrib.elasticagents.dockerswarm.Constants;
 import cd.go.contrib.elasticagents.dockerswarm.DockerClientFactory;
+import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
+import cd.go.contrib.elasticagents.dockerswarm.SwarmClusterConfiguration;
 import cd.go.contrib.elasticagents.dockerswarm.model.reports.agent.DockerServiceElasticAgent;
 import cd.go.contrib.elasticagents.dockerswarm.reports.StatusReportGenerationErrorHandler;
 import cd.go.contrib.elasticagents.dockerswarm.reports.StatusReportGenerationException;
@@ -27,25 +30,38 @@ import cd.go.contrib.elasticagents.dockerswarm.requests.AgentStatusReportRequest
 import cd.go.plugin.base.executors.AbstractExecutor;
 import com.google.gson.JsonObject;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ServiceNotFoundException;
 import com.spotify.docker.client.messages.swarm.Service;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.apache.commons.lang.StringUtils;
 
-import java.util.Objects;
+import java.util.Collections;
+import java.util.Map;
 
 import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
 
 public class AgentStatusReportExecutor extends AbstractExecutor<AgentStatusReportRequest> {
+    private final Map<String, DockerServices> clusterToServicesMap;
+    private final AgentIndex agentIndex;
     private final DockerClientFactory dockerClientFactory;
     private final ViewBuilder builder;
 
-    public AgentStatusReportExecutor() {
-        this(DockerClientFactory.instance(), ViewBuilder.instance());
+    public AgentStatusReportExecutor(Map<String, DockerServices> clusterToServicesMap, AgentIndex agentIndex) {
+        this(clusterToServicesMap, agentIndex, DockerClientFactory.instance(), ViewBuilder.instance());
     }
 
     public AgentStatusReportExecutor(DockerClientFactory dockerClientFactory,
                                      ViewBuilder builder) {
+        this(Collections.emptyMap(), new AgentIndex(), dockerClientFactory, builder);
+    }
+
+    AgentStatusReportExecutor(Map<String, DockerServices> clusterToServicesMap,
+                              AgentIndex agentIndex,
+                              DockerClientFactory dockerClientFactory,
+                              ViewBuilder builder) {
+        this.clusterToServicesMap = clusterToServicesMap;
+        this.agentIndex = agentIndex;
         this.dockerClientFactory = dockerClientFactory;
         this.builder = builder;
     }
@@ -63,8 +79,9 @@ public class AgentStatusReportExecutor extends AbstractExecutor<AgentStatusRepor
         LOG.info(String.format("[status-report] Generating status report for agent: %s with job: %s", elasticAgentId, jobIdentifier));
 
         try {
-            final DockerClient dockerClient = dockerClientFactory.docker(request.getClusterProfileConfiguration());
-            Service dockerService = findService(elasticAgentId, jobIdentifier, dockerClient);
+            final SwarmClusterConfiguration clusterProfileConfiguration = request.getClusterProfileConfiguration();
+            final DockerClient dockerClient = dockerClientFactory.docker(clusterProfileConfiguration);
+            Service dockerService = findService(elasticAgentId, jobIdentifier, clusterProfileConfiguration.uuid(), dockerClient);
 
             DockerServiceElasticAgent elasticAgent = DockerServiceElasticAgent.fromService(dockerService, dockerClient);
             final String statusReportView = builder.build(builder.getTemplate("docker-swarm/agent-status-report.template.ftlh"), elasticAgent);
@@ -80,10 +97,11 @@ public class AgentStatusReportExecutor extends AbstractExecutor<AgentStatusRepor
 
     private Service findService(String elasticAgentId,
                                 JobIdentifier jobIdentifier,
+                                String clusterId,
                                 DockerClient dockerClient) throws Exception {
         Service dockerService;
         if (StringUtils.isNotBlank(elasticAgentId)) {
-            dockerService = findServiceUsingElasticAgentId(elasticAgentId, dockerClient);
+            dockerService = findServiceUsingElasticAgentId(elasticAgentId, clusterId, dockerClient);
         } else {
             dockerService = findServiceUsingJobIdentifier(jobIdentifier, dockerClient);
         }
@@ -98,11 +116,26 @@ public class AgentStatusReportExecutor extends AbstractExecutor<AgentStatusRepor
         }
     }
 
-    private Service findServiceUsingElasticAgentId(String elasticAgentId, DockerClient client) throws Exception {
-        for (Service service : client.listServices()) {
-            if (Objects.equals(service.spec().name(), elasticAgentId) || service.id().equals(elasticAgentId)) {
+    /**
+     * Looks the service up by its name, which is the elastic agent id, or by its id. When the inventory of the cluster
+     * is kept in sync from the swarm events, a service the agent index does not place in the cluster is not looked up at
+     * all.
+     */
+    private Service findServiceUsingElasticAgentId(String elasticAgentId,
+                                                   String clusterId,
+                                                   DockerClient client) throws Exception {
+        DockerServices dockerServices = clusterToServicesMap.get(clusterId);
+        if (dockerServices != null && dockerServices.isInSync() && !agentIndex.contains(elasticAgentId, clusterId)) {
+            throw StatusReportGenerationException.noRunningService(elasticAgentId);
+        }
+
+        try {
+            Service service = client.inspectService(elasticAgentId);
+            if (service != null) {
                 return service;
             }
+        } catch (ServiceNotFoundException e) {
+            LOG.debug(String.format("[status-report] No service with name or id %s.", elasticAgentId));
         }
         throw StatusReportGenerationException.noRunningService(elasticAgentId);
     }
@@ -16,6 +16,7 @@
 
 package cd.go.contrib.elasticagents.dockerswarm.executors;
 
+import cd.go.contrib.elasticagents.dockerswarm.AgentIndex;
 import cd.go.contrib.elasticagents.dockerswarm.SwarmClusterConfiguration;
 import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
 import cd.go.plugin.base.executors.AbstractExecutor;
@@ -25,9 +26,15 @@ import java.util.Map;
 
 public abstract class BaseExecutor<T> extends AbstractExecutor<T> {
     protected final Map<String, DockerServices> clusterToServicesMap;
+    protected final AgentIndex agentIndex;
 
     BaseExecutor(Map<String, DockerServices> clusterToServicesMap) {
+        this(clusterToServicesMap, new AgentIndex());
+    }
+
+    BaseExecutor(Map<String, DockerServices> clusterToServicesMap, AgentIndex agentIndex) {
         this.clusterToServicesMap = clusterToServicesMap;
+        this.agentIndex = agentIndex;
     }
 
     protected void refreshInstancesForAllClusters(List<SwarmClusterConfiguration> listOfDockerSwarmClusterProfileProperties) throws Exception {
@@ -42,8 +49,9 @@ public abstract class BaseExecutor<T> extends AbstractExecutor<T> {
     }
 
     protected void refreshInstancesForCluster(SwarmClusterConfiguration swarmClusterConfiguration) throws Exception {
-        DockerServices dockerContainers = clusterToServicesMap.getOrDefault(swarmClusterConfiguration.uuid(), new DockerServices());
+        DockerServices dockerContainers = clusterToServicesMap.computeIfAbsent(swarmClusterConfiguration.uuid(), clusterId -> new DockerServices());
         dockerContainers.refreshAll(swarmClusterConfiguration);
-        clusterToServicesMap.put(swarmClusterConfiguration.uuid(), dockerContainers);
+        dockerContainers.attach(agentIndex, swarmClusterConfiguration.uuid());
+        dockerContainers.watch(swarmClusterConfiguration);
     }
 }
@@ -16,9 +16,14 @@
 
 package cd.go.contrib.elasticagents.dockerswarm.executors;
 
+import cd.go.contrib.elasticagents.common.AgentCapacity;
 import cd.go.contrib.elasticagents.common.ViewBuilder;
 import cd.go.contrib.elasticagents.dockerswarm.DockerClientFactory;
+import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
+import cd.go.contrib.elasticagents.dockerswarm.SwarmClusterConfiguration;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.ResourceUsage;
 import cd.go.contrib.elasticagents.dockerswarm.model.reports.SwarmCluster;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.SwarmClusterState;
 import cd.go.contrib.elasticagents.dockerswarm.reports.StatusReportGenerationErrorHandler;
 import cd.go.contrib.elasticagents.dockerswarm.requests.ClusterStatusReportRequest;
 import cd.go.plugin.base.executors.AbstractExecutor;
@@ -28,19 +33,32 @@ import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import freemarker.template.Template;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
 import static cd.go.plugin.base.GsonTransformer.fromJson;
 
 public class ClusterStatusReportExecutor extends AbstractExecutor<ClusterStatusReportRequest> {
+    private final Map<String, DockerServices> clusterToServicesMap;
     private final DockerClientFactory dockerClientFactory;
+    private final Map<String, SwarmClusterState> clusterStates = new ConcurrentHashMap<>();
     private ViewBuilder viewBuilder;
 
-    public ClusterStatusReportExecutor() {
-        this(DockerClientFactory.instance(), ViewBuilder.instance());
+    public ClusterStatusReportExecutor(Map<String, DockerServices> clusterToServicesMap) {
+        this(clusterToServicesMap, DockerClientFactory.instance(), ViewBuilder.instance());
     }
 
     ClusterStatusReportExecutor(DockerClientFactory dockerClientFactory,
                                 ViewBuilder viewBuilder) {
+        this(Collections.emptyMap(), dockerClientFactory, viewBuilder);
+    }
+
+    ClusterStatusReportExecutor(Map<String, DockerServices> clusterToServicesMap,
+                                DockerClientFactory dockerClientFactory,
+                                ViewBuilder viewBuilder) {
+        this.clusterToServicesMap = clusterToServicesMap;
         this.dockerClientFactory = dockerClientFactory;
         this.viewBuilder = viewBuilder;
     }
@@ -50,10 +68,16 @@ public class ClusterStatusReportExecutor extends AbstractExecutor<ClusterStatusR
     protected GoPluginApiResponse execute(ClusterStatusReportRequest request) {
         try {
             LOG.debug("[status-report] Generating cluster status report.");
-            final DockerClient dockerClient = dockerClientFactory.docker(request.getClusterProfileConfiguration());
-            final SwarmCluster swarmCluster = new SwarmCluster(dockerClient);
+            final SwarmClusterConfiguration clusterProfileConfiguration = request.getClusterProfileConfiguration();
+            final DockerClient dockerClient = dockerClientFactory.docker(clusterProfileConfiguration);
+            final SwarmCluster swarmCluster = clusterStates
+                    .computeIfAbsent(clusterProfileConfiguration.uuid(), uuid -> new SwarmClusterState())
+                    .get(dockerClient);
+            final DockerServices dockerServices = clusterToServicesMap.get(clusterProfileConfiguration.uuid());
+            final ResourceUsage usage = dockerServices == null ? null : dockerServices.getResourceUsage();
+            final AgentCapacity.Utilisation capacity = dockerServices == null ? null : dockerServices.getCapacityUtilisation(clusterProfileConfiguration);
             final Template template = viewBuilder.getTemplate("docker-swarm/cluster-status-report.template.ftlh");
-            final String statusReportView = viewBuilder.build(template, swarmCluster);
+            final String statusReportView = viewBuilder.build(template, swarmCluster.withUsage(usage, capacity));
 
             JsonObject responseJSON = new JsonObject();
             responseJSON.addProperty("view", statusReportView);
@@ -18,6 +18,7 @@ package cd.go.contrib.elasticagents.dockerswarm.executors;
 
 import cd.go.contrib.elasticagents.common.ConsoleLogAppender;
 import cd.go.contrib.elasticagents.common.ElasticAgentRequestClient;
+import cd.go.contrib.elasticagents.dockerswarm.AgentIndex;
 import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
 import cd.go.contrib.elasticagents.dockerswarm.requests.CreateAgentRequest;
 import cd.go.contrib.elasticagents.dockerswarm.validator.DockerMountsValidator;
@@ -46,7 +47,13 @@ public class CreateAgentRequestExecutor extends BaseExecutor<CreateAgentRequest>
 
     public CreateAgentRequestExecutor(Map<String, DockerServices> clusterToServicesMap,
                                       ElasticAgentRequestClient pluginRequest) {
-        super(clusterToServicesMap);
+        this(clusterToServicesMap, new AgentIndex(), pluginRequest);
+    }
+
+    public CreateAgentRequestExecutor(Map<String, DockerServices> clusterToServicesMap,
+                                      AgentIndex agentIndex,
+                                      ElasticAgentRequestClient pluginRequest) {
+        super(clusterToServicesMap, agentIndex);
         this.pluginRequest = pluginRequest;
         validators.add(new DockerSecretValidator());
         validators.add(new DockerMountsValidator());
@@ -18,6 +18,7 @@ package cd.go.contrib.elasticagents.dockerswarm.executors;
 
 import cd.go.contrib.elasticagents.common.ElasticAgentRequestClient;
 import cd.go.contrib.elasticagents.common.agent.Agent;
+import cd.go.contrib.elasticagents.dockerswarm.AgentIndex;
 import cd.go.contrib.elasticagents.dockerswarm.SwarmClusterConfiguration;
 import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
 import cd.go.contrib.elasticagents.dockerswarm.requests.JobCompletionRequest;
@@ -37,7 +38,13 @@ public class JobCompletionRequestExecutor extends BaseExecutor<JobCompletionRequ
 
     public JobCompletionRequestExecutor(Map<String, DockerServices> clusterToDockerServiceMap,
                                         ElasticAgentRequestClient pluginRequest) {
-        super(clusterToDockerServiceMap);
+        this(clusterToDockerServiceMap, new AgentIndex(), pluginRequest);
+    }
+
+    public JobCompletionRequestExecutor(Map<String, DockerServices> clusterToDockerServiceMap,
+                                        AgentIndex agentIndex,
+                                        ElasticAgentRequestClient pluginRequest) {
+        super(clusterToDockerServiceMap, agentIndex);
         this.pluginRequest = pluginRequest;
     }
 
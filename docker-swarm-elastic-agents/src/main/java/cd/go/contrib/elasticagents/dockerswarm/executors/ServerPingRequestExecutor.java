@@ -16,19 +16,20 @@
 
 package cd.go.contrib.elasticagents.dockerswarm.executors;
 
+import cd.go.contrib.elasticagents.common.AgentTerminator;
 import cd.go.contrib.elasticagents.common.ElasticAgentRequestClient;
 import cd.go.contrib.elasticagents.common.agent.Agent;
 import cd.go.contrib.elasticagents.common.agent.Agents;
 import cd.go.contrib.elasticagents.common.exceptions.ServerRequestFailedException;
+import cd.go.contrib.elasticagents.dockerswarm.AgentIndex;
 import cd.go.contrib.elasticagents.dockerswarm.SwarmClusterConfiguration;
 import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
 import cd.go.contrib.elasticagents.dockerswarm.requests.ServerPingRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
+import java.text.MessageFormat;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
@@ -36,16 +37,39 @@ import static cd.go.plugin.base.GsonTransformer.fromJson;
 
 public class ServerPingRequestExecutor extends BaseExecutor<ServerPingRequest> {
     private final ElasticAgentRequestClient pluginRequest;
+    private final AgentTerminator agentTerminator;
 
     public ServerPingRequestExecutor(Map<String, DockerServices> clusterSpecificAgentInstances,
                                      ElasticAgentRequestClient pluginRequest) {
-        super(clusterSpecificAgentInstances);
+        this(clusterSpecificAgentInstances, new AgentIndex(), pluginRequest);
+    }
+
+    public ServerPingRequestExecutor(Map<String, DockerServices> clusterSpecificAgentInstances,
+                                     AgentIndex agentIndex,
+                                     ElasticAgentRequestClient pluginRequest) {
+        this(clusterSpecificAgentInstances, agentIndex, pluginRequest, new AgentTerminator("docker-swarm-terminate-agent"));
+    }
+
+    ServerPingRequestExecutor(Map<String, DockerServices> clusterSpecificAgentInstances,
+                              ElasticAgentRequestClient pluginRequest,
+                              AgentTerminator agentTerminator) {
+        this(clusterSpecificAgentInstances, new AgentIndex(), pluginRequest, agentTerminator);
+    }
+
+    ServerPingRequestExecutor(Map<String, DockerServices> clusterSpecificAgentInstances,
+                              AgentIndex agentIndex,
+                              ElasticAgentRequestClient pluginRequest,
+                              AgentTerminator agentTerminator) {
+        super(clusterSpecificAgentInstances, agentIndex);
         this.pluginRequest = pluginRequest;
+        this.agentTerminator = agentTerminator;
     }
 
     @Override
     protected GoPluginApiResponse execute(ServerPingRequest serverPingRequest) {
+        pluginRequest.startAgentsSnapshot();
         try {
+            stopWatchingRemovedClusters(serverPingRequest.getAllClusterProfileConfigurations());
             refreshInstancesForAllClusters(serverPingRequest.getAllClusterProfileConfigurations());
             LOG.info("[server-ping] Starting execute server ping request.");
             List<SwarmClusterConfiguration> allDockerSwarmClusterProfileProperties = serverPingRequest.getAllClusterProfileConfigurations();
@@ -58,6 +82,20 @@ public class ServerPingRequestExecutor extends BaseExecutor<ServerPingRequest> {
             return DefaultGoPluginApiResponse.success("");
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            pluginRequest.endAgentsSnapshot();
+        }
+    }
+
+    private void stopWatchingRemovedClusters(List<SwarmClusterConfiguration> allClusterProfileProperties) {
+        Set<String> clusterIds = allClusterProfileProperties.stream().map(SwarmClusterConfiguration::uuid).collect(Collectors.toSet());
+        for (String clusterId : new ArrayList<>(clusterToServicesMap.keySet())) {
+            if (!clusterIds.contains(clusterId)) {
+                LOG.info(MessageFormat.format("[server-ping] Cluster {0} no longer exists, it will not be watched anymore.", clusterId));
+                DockerServices removed = clusterToServicesMap.remove(clusterId);
+                removed.stopWatching();
+                removed.detach();
+            }
         }
     }
 
@@ -76,18 +114,21 @@ public class ServerPingRequestExecutor extends BaseExecutor<ServerPingRequest> {
     private void terminateDisabledAgents(Agents agents,
                                          SwarmClusterConfiguration swarmClusterConfiguration,
                                          DockerServices dockerServices) throws Exception {
-        Collection<Agent> toBeDeleted = agents.findInstancesToTerminate();
+        Collection<Agent> toBeTerminated = agents.findInstancesToTerminate();
 
-        for (Agent agent : toBeDeleted) {
-            dockerServices.terminate(agent.elasticAgentId(), swarmClusterConfiguration);
-        }
-        pluginRequest.deleteAgents(toBeDeleted);
+        AgentTerminator.Result result = agentTerminator.terminate(toBeTerminated,
+                agent -> dockerServices.terminate(agent.elasticAgentId(), swarmClusterConfiguration));
+        result.getFailures().forEach((agent, e) ->
+                LOG.error(MessageFormat.format("[server-ping] Could not terminate the service of agent {0}, it will be retried on the next server ping.", agent.elasticAgentId()), e));
+
+        pluginRequest.deleteAgents(result.getTerminated());
     }
 
     private void CheckForPossiblyMissingAgents() {
         Collection<Agent> allAgents = pluginRequest.listAgents().agents();
-        List<Agent> missingAgents = allAgents.stream().filter(agent -> clusterToServicesMap.values().stream()
-                .noneMatch(instances -> instances.hasInstance(agent.elasticAgentId()))).collect(Collectors.toList());
+        List<Agent> missingAgents = allAgents.stream()
+                .filter(agent -> !agentIndex.contains(agent.elasticAgentId()))
+                .collect(Collectors.toList());
 
         if (!missingAgents.isEmpty()) {
             List<String> missingAgentIds = missingAgents.stream().map(Agent::elasticAgentId).collect(Collectors.toList());
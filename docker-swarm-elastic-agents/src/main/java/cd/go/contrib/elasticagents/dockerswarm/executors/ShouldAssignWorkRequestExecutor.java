@@ -16,6 +16,7 @@
 
 package cd.go.contrib.elasticagents.dockerswarm.executors;
 
+import cd.go.contrib.elasticagents.dockerswarm.AgentIndex;
 import cd.go.contrib.elasticagents.dockerswarm.DockerService;
 import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
 import cd.go.contrib.elasticagents.dockerswarm.requests.ShouldAssignWorkRequest;
@@ -32,7 +33,11 @@ import static java.text.MessageFormat.format;
 public class ShouldAssignWorkRequestExecutor extends BaseExecutor<ShouldAssignWorkRequest> {
 
     public ShouldAssignWorkRequestExecutor(Map<String, DockerServices> clusterToServicesMap) {
-        super(clusterToServicesMap);
+        this(clusterToServicesMap, new AgentIndex());
+    }
+
+    public ShouldAssignWorkRequestExecutor(Map<String, DockerServices> clusterToServicesMap, AgentIndex agentIndex) {
+        super(clusterToServicesMap, agentIndex);
     }
 
 
@@ -40,8 +45,10 @@ public class ShouldAssignWorkRequestExecutor extends BaseExecutor<ShouldAssignWo
     protected GoPluginApiResponse execute(ShouldAssignWorkRequest request) {
         try {
             refreshInstancesForCluster(request.getClusterProfileProperties());
-            DockerServices dockerServices = clusterToServicesMap.get(request.getClusterProfileProperties().uuid());
-            DockerService instance = dockerServices.find(request.getAgent().elasticAgentId());
+            String agentId = request.getAgent().elasticAgentId();
+            DockerService instance = agentIndex.contains(agentId, request.getClusterProfileProperties().uuid())
+                    ? getAgentInstancesFor(request.getClusterProfileProperties()).find(agentId)
+                    : null;
 
             if (instance == null) {
                 LOG.info(format("[should-assign-work] Agent with id `{0}` not exists.", request.getAgent().elasticAgentId()));
@@ -62,6 +62,29 @@ public class DockerNode {
         cpus = node.description().resources().nanoCpus() / 1000000000;
     }
 
+    private DockerNode(DockerNode node, List<DockerTask> tasks) {
+        id = node.id;
+        hostname = node.hostname;
+        role = node.role;
+        availability = node.availability;
+        os = node.os;
+        engineVersion = node.engineVersion;
+        architecture = node.architecture;
+        memory = node.memory;
+        cpus = node.cpus;
+        state = node.state;
+        nodeIP = node.nodeIP;
+        managerStatus = node.managerStatus;
+        this.tasks.addAll(tasks);
+    }
+
+    /**
+     * A copy of this node holding the given tasks, so that a converted node can be shared between cluster reports.
+     */
+    public DockerNode withTasks(List<DockerTask> tasks) {
+        return new DockerNode(this, tasks);
+    }
+
     private String getManagerStatus(ManagerStatus managerStatus) {
         if (managerStatus == null) {
             return null;
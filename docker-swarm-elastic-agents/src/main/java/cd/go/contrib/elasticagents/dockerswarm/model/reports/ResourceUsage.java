@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm.model.reports;
+
+import cd.go.contrib.elasticagents.dockerswarm.utils.Util;
+import com.google.gson.Gson;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The memory and CPU used by the agents of a swarm at the time of a sample, per node and per elastic profile. Only
+ * agents whose container stats could be read count towards the figures, see {@link NodeUsage#getSampledTasks()}.
+ */
+public class ResourceUsage {
+    private static final Gson GSON = new Gson();
+
+    private final long sampledAt;
+    private final List<NodeUsage> nodes;
+    private final List<ProfileUsage> profiles;
+
+    public ResourceUsage(long sampledAt, List<NodeUsage> nodes, List<ProfileUsage> profiles) {
+        this.sampledAt = sampledAt;
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.profiles = Collections.unmodifiableList(profiles);
+    }
+
+    public long getSampledAt() {
+        return sampledAt;
+    }
+
+    public List<NodeUsage> getNodes() {
+        return nodes;
+    }
+
+    public NodeUsage getNode(String nodeId) {
+        return nodes.stream().filter(node -> node.nodeId.equals(nodeId)).findFirst().orElse(null);
+    }
+
+    public List<ProfileUsage> getProfiles() {
+        return profiles;
+    }
+
+    public String toJson() {
+        return GSON.toJson(this);
+    }
+
+    private static String percentage(double value) {
+        return String.format(Locale.ROOT, "%.1f%%", value);
+    }
+
+    public static class NodeUsage {
+        private final String nodeId;
+        private final String hostname;
+        private final int tasks;
+        private final int sampledTasks;
+        private final long memoryUsedBytes;
+        private final long memoryBytes;
+        private final double cpuPercent;
+        private final double cpus;
+
+        public NodeUsage(String nodeId, String hostname, int tasks, int sampledTasks,
+                         long memoryUsedBytes, long memoryBytes, double cpuPercent, double cpus) {
+            this.nodeId = nodeId;
+            this.hostname = hostname;
+            this.tasks = tasks;
+            this.sampledTasks = sampledTasks;
+            this.memoryUsedBytes = memoryUsedBytes;
+            this.memoryBytes = memoryBytes;
+            this.cpuPercent = cpuPercent;
+            this.cpus = cpus;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public String getHostname() {
+            return hostname;
+        }
+
+        public int getTasks() {
+            return tasks;
+        }
+
+        /**
+         * @return the number of agent tasks whose container stats could be read, the stats of containers on other
+         * nodes than the one the plugin talks to are not available from the docker API.
+         */
+        public int getSampledTasks() {
+            return sampledTasks;
+        }
+
+        public long getMemoryUsedBytes() {
+            return memoryUsedBytes;
+        }
+
+        public String getMemoryUsed() {
+            return Util.readableSize(memoryUsedBytes);
+        }
+
+        public String getMemoryUtilisation() {
+            return memoryBytes <= 0 ? "" : percentage(100.0 * memoryUsedBytes / memoryBytes);
+        }
+
+        /**
+         * @return the CPU used by the agents of the node, as a percentage of all CPUs of the node.
+         */
+        public String getCpuUtilisation() {
+            return cpus <= 0 ? "" : percentage(cpuPercent / cpus);
+        }
+    }
+
+    public static class ProfileUsage {
+        private final String image;
+        private final String reservedMemory;
+        private final String maxMemory;
+        private final int agents;
+        private final int sampledAgents;
+        private final long averageMemoryBytes;
+        private final long peakMemoryBytes;
+        private final double averageCpuPercent;
+
+        public ProfileUsage(String image, String reservedMemory, String maxMemory, int agents, int sampledAgents,
+                            long averageMemoryBytes, long peakMemoryBytes, double averageCpuPercent) {
+            this.image = image;
+            this.reservedMemory = reservedMemory;
+            this.maxMemory = maxMemory;
+            this.agents = agents;
+            this.sampledAgents = sampledAgents;
+            this.averageMemoryBytes = averageMemoryBytes;
+            this.peakMemoryBytes = peakMemoryBytes;
+            this.averageCpuPercent = averageCpuPercent;
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public String getReservedMemory() {
+            return reservedMemory;
+        }
+
+        public String getMaxMemory() {
+            return maxMemory;
+        }
+
+        public int getAgents() {
+            return agents;
+        }
+
+        public int getSampledAgents() {
+            return sampledAgents;
+        }
+
+        public long getAverageMemoryBytes() {
+            return averageMemoryBytes;
+        }
+
+        public String getAverageMemory() {
+            return Util.readableSize(averageMemoryBytes);
+        }
+
+        public long getPeakMemoryBytes() {
+            return peakMemoryBytes;
+        }
+
+        public String getPeakMemory() {
+            return Util.readableSize(peakMemoryBytes);
+        }
+
+        /**
+         * @return the average CPU used by an agent of the profile, where 100% is one full CPU.
+         */
+        public String getAverageCpu() {
+            return percentage(averageCpuPercent);
+        }
+    }
+}
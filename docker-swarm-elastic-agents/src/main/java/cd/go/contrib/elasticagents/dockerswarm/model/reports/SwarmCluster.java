@@ -16,32 +16,43 @@
 
 package cd.go.contrib.elasticagents.dockerswarm.model.reports;
 
-import cd.go.contrib.elasticagents.dockerswarm.Constants;
+import cd.go.contrib.elasticagents.common.AgentCapacity;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
-import com.spotify.docker.client.messages.swarm.Service;
-import com.spotify.docker.client.messages.swarm.Task;
-import org.apache.commons.lang.StringUtils;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-
-import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 
 public class SwarmCluster {
     private final List<DockerNode> nodes;
+    private final ResourceUsage usage;
+    private final AgentCapacity.Utilisation capacity;
 
     public SwarmCluster(DockerClient dockerClient) throws DockerException, InterruptedException {
-        nodes = dockerClient.listNodes().stream().map(node -> new DockerNode(node)).collect(toList());
-        LOG.info("Running docker swarm nodes " + nodes.size());
-        fetchTasks(dockerClient);
+        this(new SwarmClusterState().fetchNodes(dockerClient));
+    }
+
+    SwarmCluster(List<DockerNode> nodes) {
+        this.nodes = new ArrayList<>(nodes);
+        this.usage = null;
+        this.capacity = null;
         sortNodes();
     }
 
+    private SwarmCluster(SwarmCluster cluster, ResourceUsage usage, AgentCapacity.Utilisation capacity) {
+        this.nodes = cluster.nodes;
+        this.usage = usage;
+        this.capacity = capacity;
+    }
+
+    /**
+     * A copy of this cluster reporting the given resource usage and agent capacity, so that the cluster itself can
+     * stay cached.
+     */
+    public SwarmCluster withUsage(ResourceUsage usage, AgentCapacity.Utilisation capacity) {
+        return new SwarmCluster(this, usage, capacity);
+    }
+
     private void sortNodes() {
         nodes.sort((node1, node2) -> {
             final int leaderCompareResult = Boolean.compare(node2.isLeader(), node1.isLeader());
@@ -56,49 +67,15 @@ public class SwarmCluster {
         });
     }
 
-    private void fetchTasks(DockerClient dockerClient) throws DockerException, InterruptedException {
-        final Map<String, DockerNode> dockerNodeMap = nodes.stream().distinct().collect(toMap(DockerNode::getId, node -> node));
-        final List<Task> tasks = dockerClient.listTasks();
-        LOG.info("Running tasks " + tasks.size());
-        final Map<String, Service> serviceIdToService = serviceIdToServiceMap(dockerClient);
-
-        for (Task task : tasks) {
-            final Service service = serviceIdToService.get(task.serviceId());
-            if (service == null || !createdByPlugin(service)) {
-                continue;
-            }
-
-            final DockerTask dockerTask = new DockerTask(task, service);
-            final DockerNode dockerNode = dockerNodeMap.get(dockerTask.getNodeId());
-            if (dockerNode != null) {
-                dockerNode.add(dockerTask);
-            }
-        }
-    }
-
-    private boolean createdByPlugin(Service service) {
-        final String createdBy = service.spec().labels().get(Constants.CREATED_BY_LABEL_KEY);
-        if (StringUtils.isBlank(createdBy)) {
-            return false;
-        }
-
-        return createdBy.equals(Constants.PLUGIN_ID);
+    public List<DockerNode> getNodes() {
+        return nodes;
     }
 
-    private Map<String, Service> serviceIdToServiceMap(DockerClient dockerClient) throws DockerException, InterruptedException {
-        final List<Service> services = dockerClient.listServices();
-        if (services == null || services.isEmpty()) {
-            return Collections.emptyMap();
-        }
-
-        final HashMap<String, Service> serviceIdToService = new HashMap<>();
-        for (Service service : services) {
-            serviceIdToService.put(service.id(), service);
-        }
-        return serviceIdToService;
+    public ResourceUsage getUsage() {
+        return usage;
     }
 
-    public List<DockerNode> getNodes() {
-        return nodes;
+    public AgentCapacity.Utilisation getCapacity() {
+        return capacity;
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm.model.reports;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.dockerswarm.Constants;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.swarm.Node;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.Task;
+import com.spotify.docker.client.messages.swarm.Version;
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static cd.go.contrib.elasticagents.dockerswarm.DockerSwarmPlugin.LOG;
+
+/**
+ * Keeps the model of a swarm cluster used by the cluster status report. The nodes, the tasks and the services of the
+ * plugin are fetched concurrently, and the result is reused for a short while. Between refreshes only the nodes and
+ * the tasks whose version changed are converted again.
+ */
+public class SwarmClusterState {
+    public static final Period DEFAULT_TTL = Period.seconds(10);
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "docker-swarm-cluster-report");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Clock clock;
+    private final Period ttl;
+    private Map<String, Versioned<DockerNode>> nodes = new HashMap<>();
+    private Map<String, Versioned<DockerTask>> tasks = new HashMap<>();
+    private SwarmCluster swarmCluster;
+    private DateTime refreshedAt;
+
+    public SwarmClusterState() {
+        this(Clock.DEFAULT, DEFAULT_TTL);
+    }
+
+    public SwarmClusterState(Clock clock, Period ttl) {
+        this.clock = clock;
+        this.ttl = ttl;
+    }
+
+    public synchronized SwarmCluster get(DockerClient dockerClient) throws DockerException, InterruptedException {
+        if (swarmCluster == null || clock.now().isAfter(refreshedAt.plus(ttl))) {
+            swarmCluster = new SwarmCluster(fetchNodes(dockerClient));
+            refreshedAt = clock.now();
+        }
+        return swarmCluster;
+    }
+
+    synchronized List<DockerNode> fetchNodes(DockerClient dockerClient) throws DockerException, InterruptedException {
+        final Future<List<Task>> pluginTasks = FETCH_EXECUTOR.submit(() -> dockerClient.listTasks(Task.Criteria.builder()
+                .label(Constants.CREATED_BY_LABEL_KEY + "=" + Constants.PLUGIN_ID)
+                .build()));
+        final Future<List<Service>> pluginServices = FETCH_EXECUTOR.submit(() -> dockerClient.listServices(Service.Criteria.builder()
+                .addLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID)
+                .build()));
+
+        final List<Node> swarmNodes;
+        try {
+            swarmNodes = dockerClient.listNodes();
+        } catch (DockerException | InterruptedException | RuntimeException e) {
+            pluginTasks.cancel(true);
+            pluginServices.cancel(true);
+            throw e;
+        }
+        LOG.info("Running docker swarm nodes " + swarmNodes.size());
+
+        final Map<String, List<DockerTask>> nodeIdToTasks = tasksByNode(await(pluginTasks), serviceIdToServiceMap(await(pluginServices)));
+
+        final Map<String, Versioned<DockerNode>> refreshedNodes = new HashMap<>();
+        final List<DockerNode> result = new ArrayList<>();
+        for (Node node : swarmNodes) {
+            final Versioned<DockerNode> dockerNode = reuseOrConvert(nodes, node.id(), node.version(), () -> new DockerNode(node));
+            refreshedNodes.put(node.id(), dockerNode);
+            result.add(dockerNode.value.withTasks(nodeIdToTasks.getOrDefault(node.id(), Collections.emptyList())));
+        }
+        nodes = refreshedNodes;
+        return result;
+    }
+
+    private Map<String, List<DockerTask>> tasksByNode(List<Task> swarmTasks, Map<String, Service> serviceIdToService) {
+        LOG.info("Running tasks " + swarmTasks.size());
+        final Map<String, Versioned<DockerTask>> refreshedTasks = new HashMap<>();
+        final Map<String, List<DockerTask>> nodeIdToTasks = new HashMap<>();
+        for (Task task : swarmTasks) {
+            final Service service = serviceIdToService.get(task.serviceId());
+            if (service == null || !createdByPlugin(service)) {
+                continue;
+            }
+
+            final Versioned<DockerTask> dockerTask = reuseOrConvert(tasks, task.id(), task.version(), () -> new DockerTask(task, service));
+            refreshedTasks.put(task.id(), dockerTask);
+            nodeIdToTasks.computeIfAbsent(dockerTask.value.getNodeId(), nodeId -> new ArrayList<>()).add(dockerTask.value);
+        }
+        tasks = refreshedTasks;
+        return nodeIdToTasks;
+    }
+
+    private static <T> Versioned<T> reuseOrConvert(Map<String, Versioned<T>> known, String id, Version version, Callable<T> converter) {
+        final Long index = version == null ? null : version.index();
+        final Versioned<T> existing = known.get(id);
+        if (index != null && existing != null && index.equals(existing.index)) {
+            return existing;
+        }
+
+        try {
+            return new Versioned<>(index, converter.call());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean createdByPlugin(Service service) {
+        final String createdBy = service.spec().labels() == null ? null : service.spec().labels().get(Constants.CREATED_BY_LABEL_KEY);
+        if (StringUtils.isBlank(createdBy)) {
+            return false;
+        }
+
+        return createdBy.equals(Constants.PLUGIN_ID);
+    }
+
+    private Map<String, Service> serviceIdToServiceMap(List<Service> services) {
+        if (services == null || services.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final HashMap<String, Service> serviceIdToService = new HashMap<>();
+        for (Service service : services) {
+            serviceIdToService.put(service.id(), service);
+        }
+        return serviceIdToService;
+    }
+
+    private static <T> T await(Future<T> future) throws DockerException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DockerException) {
+                throw (DockerException) e.getCause();
+            }
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static class Versioned<T> {
+        private final Long index;
+        private final T value;
+
+        private Versioned(Long index, T value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+}
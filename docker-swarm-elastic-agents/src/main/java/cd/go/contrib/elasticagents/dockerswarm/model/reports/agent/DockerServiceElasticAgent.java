@@ -17,6 +17,7 @@
 package cd.go.contrib.elasticagents.dockerswarm.model.reports.agent;
 
 import cd.go.contrib.elasticagents.common.EnvironmentVariable;
+import cd.go.contrib.elasticagents.common.LogTail;
 import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 import cd.go.contrib.elasticagents.dockerswarm.utils.Util;
 import com.spotify.docker.client.DockerClient;
@@ -31,14 +32,24 @@ import org.apache.commons.lang.StringUtils;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static cd.go.contrib.elasticagents.dockerswarm.Constants.JOB_IDENTIFIER_LABEL_KEY;
 
 public class DockerServiceElasticAgent {
+    private static final ExecutorService LOGS_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "docker-swarm-agent-logs");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private String id;
     private String name;
     private Date createdAt;
-    private String logs;
+    private LogTail logs;
     private String limits;
     private String reservations;
     private String image;
@@ -64,7 +75,15 @@ public class DockerServiceElasticAgent {
     }
 
     public String getLogs() {
-        return logs;
+        return logs.getText();
+    }
+
+    public boolean isLogsTruncated() {
+        return logs.isTruncated();
+    }
+
+    public int getLogLines() {
+        return logs.getLines();
     }
 
     public String getLimits() {
@@ -120,9 +139,10 @@ public class DockerServiceElasticAgent {
         agent.createdAt = service.createdAt();
         agent.jobIdentifier = JobIdentifier.fromJson(service.spec().labels().get(JOB_IDENTIFIER_LABEL_KEY));
 
-        LogStream logStream = client.serviceLogs(service.id(), DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr());
-        agent.logs = logStream.readFully();
-        logStream.close();
+        final Future<LogTail> logs = LOGS_EXECUTOR.submit(() -> {
+            LogStream logStream = client.serviceLogs(service.id(), LogTail.logsParams(LogTail.DEFAULT_LINES));
+            return LogTail.read(logStream, LogTail.DEFAULT_MAX_BYTES);
+        });
 
         TaskSpec taskSpec = service.spec().taskTemplate();
 
@@ -136,11 +156,21 @@ public class DockerServiceElasticAgent {
         agent.environments = EnvironmentVariable.parse(taskSpec.containerSpec().env());
         agent.hosts = listToString(taskSpec.containerSpec().hosts());
 
-        final List<Task> tasks = client.listTasks(Task.Criteria.builder().serviceName(service.id()).build());
-        if (!tasks.isEmpty()) {
-            for (Task task : tasks) {
-                agent.tasksStatus.add(new TaskStatus(task));
+        try {
+            final List<Task> tasks = client.listTasks(Task.Criteria.builder().serviceName(service.id()).build());
+            if (!tasks.isEmpty()) {
+                for (Task task : tasks) {
+                    agent.tasksStatus.add(new TaskStatus(task));
+                }
+            }
+            agent.logs = logs.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DockerException) {
+                throw (DockerException) e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            logs.cancel(true);
         }
 
         return agent;
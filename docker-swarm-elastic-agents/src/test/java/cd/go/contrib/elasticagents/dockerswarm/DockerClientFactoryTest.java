@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import com.spotify.docker.client.DefaultDockerClient;
+import org.joda.time.Period;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class DockerClientFactoryTest {
+    private Clock.TestClock clock;
+    private List<DefaultDockerClient> created;
+    private DockerClientFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        clock = new Clock.TestClock();
+        created = new ArrayList<>();
+        factory = new DockerClientFactory(configuration -> {
+            final DefaultDockerClient client = mock(DefaultDockerClient.class);
+            when(client.ping()).thenReturn("OK");
+            created.add(client);
+            return client;
+        }, clock);
+    }
+
+    @Test
+    void shouldKeepOneClientPerClusterWhenUsedAlternately() throws Exception {
+        final SwarmClusterConfiguration cluster = cluster("http://swarm-1:2375");
+        final SwarmClusterConfiguration otherCluster = cluster("http://swarm-2:2375");
+
+        final DefaultDockerClient client = (DefaultDockerClient) factory.docker(cluster);
+        final DefaultDockerClient otherClient = (DefaultDockerClient) factory.docker(otherCluster);
+
+        assertThat(factory.docker(cluster)).isSameAs(client);
+        assertThat(factory.docker(otherCluster)).isSameAs(otherClient);
+        assertThat(created).hasSize(2);
+        verify(client, never()).close();
+        verify(otherClient, never()).close();
+    }
+
+    @Test
+    void shouldCloseAndReplaceClientsThatWereNotUsedForTheIdleTimeout() throws Exception {
+        final SwarmClusterConfiguration cluster = cluster("http://swarm-1:2375");
+        final DefaultDockerClient idleClient = (DefaultDockerClient) factory.docker(cluster);
+
+        clock.forward(Period.minutes((int) DockerClientFactory.IDLE_TIMEOUT.toMinutes() + 1));
+
+        assertThat(factory.docker(cluster)).isNotSameAs(idleClient);
+        verify(idleClient).close();
+    }
+
+    @Test
+    void shouldCloseAndReplaceAClientThatFailsTheHealthCheck() throws Exception {
+        final SwarmClusterConfiguration cluster = cluster("http://swarm-1:2375");
+        final DefaultDockerClient unhealthyClient = (DefaultDockerClient) factory.docker(cluster);
+        when(unhealthyClient.ping()).thenThrow(new RuntimeException("connection refused"));
+
+        clock.forward(Period.minutes((int) DockerClientFactory.HEALTH_CHECK_INTERVAL.toMinutes() + 1));
+
+        assertThat(factory.docker(cluster)).isNotSameAs(unhealthyClient);
+        verify(unhealthyClient).close();
+        assertThat(created).hasSize(2);
+    }
+
+    @Test
+    void shouldCloseTheClientOfAReleasedCluster() throws Exception {
+        final SwarmClusterConfiguration cluster = cluster("http://swarm-1:2375");
+        final DefaultDockerClient client = (DefaultDockerClient) factory.docker(cluster);
+
+        factory.release(cluster);
+
+        verify(client).close();
+        assertThat(factory.docker(cluster)).isNotSameAs(client);
+    }
+
+    private SwarmClusterConfiguration cluster(String dockerUri) {
+        return new SwarmClusterConfiguration()
+                .setGoServerUrl("https://gocd.example.com/go")
+                .setDockerURI(dockerUri)
+                .setMaxDockerContainers("1")
+                .setAutoRegisterTimeout("1");
+    }
+}
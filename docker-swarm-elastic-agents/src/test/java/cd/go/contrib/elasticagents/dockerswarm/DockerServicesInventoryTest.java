@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ServiceNotFoundException;
+import com.spotify.docker.client.messages.Event;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.ServiceSpec;
+import com.spotify.docker.client.messages.swarm.TaskSpec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static cd.go.contrib.elasticagents.dockerswarm.Constants.JOB_IDENTIFIER_LABEL_KEY;
+import static java.util.List.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DockerServicesInventoryTest {
+    private DockerClient dockerClient;
+    private DockerServices dockerServices;
+
+    @BeforeEach
+    void setUp() {
+        dockerClient = mock(DockerClient.class);
+        dockerServices = new DockerServices();
+    }
+
+    @Test
+    void shouldRegisterServicesCreatedByThePluginFromCreateEvents() throws Exception {
+        Service service = service("service-1", Constants.PLUGIN_ID);
+        when(dockerClient.inspectService("id-service-1")).thenReturn(service);
+
+        dockerServices.apply(event("create", "id-service-1", "service-1"), dockerClient);
+
+        assertThat(dockerServices.hasInstance("service-1")).isTrue();
+    }
+
+    @Test
+    void shouldIgnoreCreateEventsOfServicesNotCreatedByThePlugin() throws Exception {
+        Service service = service("service-1", "some-other-plugin");
+        when(dockerClient.inspectService("id-service-1")).thenReturn(service);
+
+        dockerServices.apply(event("create", "id-service-1", "service-1"), dockerClient);
+
+        assertThat(dockerServices.hasInstance("service-1")).isFalse();
+    }
+
+    @Test
+    void shouldIgnoreCreateEventsOfServicesRemovedInTheMeantime() throws Exception {
+        when(dockerClient.inspectService("id-service-1")).thenThrow(new ServiceNotFoundException("id-service-1"));
+
+        dockerServices.apply(event("create", "id-service-1", "service-1"), dockerClient);
+
+        assertThat(dockerServices.hasInstance("service-1")).isFalse();
+    }
+
+    @Test
+    void shouldForgetServicesFromRemoveEvents() throws Exception {
+        Service service = service("service-1", Constants.PLUGIN_ID);
+        when(dockerClient.listServices(any(Service.Criteria.class))).thenReturn(of(service));
+        dockerServices.resync(dockerClient);
+
+        dockerServices.apply(event("remove", "id-service-1", "service-1"), dockerClient);
+
+        assertThat(dockerServices.hasInstance("service-1")).isFalse();
+    }
+
+    @Test
+    void shouldReplaceInventoryWithLabelledServicesOnResync() throws Exception {
+        Service service1 = service("service-1", Constants.PLUGIN_ID);
+        Service service2 = service("service-2", Constants.PLUGIN_ID);
+        when(dockerClient.listServices(any(Service.Criteria.class)))
+                .thenReturn(of(service1, service2))
+                .thenReturn(of(service2));
+
+        dockerServices.resync(dockerClient);
+        assertThat(dockerServices.hasInstance("service-1")).isTrue();
+        assertThat(dockerServices.hasInstance("service-2")).isTrue();
+
+        dockerServices.resync(dockerClient);
+        assertThat(dockerServices.hasInstance("service-1")).isFalse();
+        assertThat(dockerServices.hasInstance("service-2")).isTrue();
+    }
+
+    @Test
+    void shouldKeepServicesRegisteredWhileListingOnResync() throws Exception {
+        Service listed = service("service-1", Constants.PLUGIN_ID);
+        Service createdMeanwhile = service("service-created-meanwhile", Constants.PLUGIN_ID);
+        when(dockerClient.listServices(any(Service.Criteria.class))).thenAnswer(invocation -> {
+            dockerServices.register(DockerService.fromService(createdMeanwhile));
+            return of(listed);
+        });
+
+        dockerServices.resync(dockerClient);
+
+        assertThat(dockerServices.hasInstance("service-1")).isTrue();
+        assertThat(dockerServices.hasInstance("service-created-meanwhile")).isTrue();
+    }
+
+    @Test
+    void shouldAddTheServicesOfTheClusterToTheIndexItIsAttachedTo() throws Exception {
+        AgentIndex agentIndex = new AgentIndex();
+        dockerServices.register(DockerService.fromService(service("service-1", Constants.PLUGIN_ID)));
+
+        dockerServices.attach(agentIndex, "cluster-1");
+        dockerServices.register(DockerService.fromService(service("service-2", Constants.PLUGIN_ID)));
+
+        assertThat(agentIndex.clustersOf("service-1")).containsExactly("cluster-1");
+        assertThat(agentIndex.clustersOf("service-2")).containsExactly("cluster-1");
+    }
+
+    @Test
+    void shouldRemoveForgottenServicesFromTheIndex() throws Exception {
+        AgentIndex agentIndex = new AgentIndex();
+        Service service1 = service("service-1", Constants.PLUGIN_ID);
+        Service service2 = service("service-2", Constants.PLUGIN_ID);
+        when(dockerClient.listServices(any(Service.Criteria.class)))
+                .thenReturn(of(service1, service2))
+                .thenReturn(of(service2));
+        dockerServices.attach(agentIndex, "cluster-1");
+
+        dockerServices.resync(dockerClient);
+        dockerServices.resync(dockerClient);
+        dockerServices.apply(event("remove", "id-service-2", "service-2"), dockerClient);
+
+        assertThat(agentIndex.contains("service-1")).isFalse();
+        assertThat(agentIndex.contains("service-2")).isFalse();
+    }
+
+    @Test
+    void shouldNotRemoveServicesOfOtherClustersFromTheIndexOnDetach() throws Exception {
+        AgentIndex agentIndex = new AgentIndex();
+        DockerServices otherCluster = new DockerServices();
+        otherCluster.attach(agentIndex, "cluster-2");
+        otherCluster.register(DockerService.fromService(service("service-1", Constants.PLUGIN_ID)));
+        dockerServices.attach(agentIndex, "cluster-1");
+        dockerServices.register(DockerService.fromService(service("service-2", Constants.PLUGIN_ID)));
+
+        dockerServices.detach();
+
+        assertThat(agentIndex.clustersOf("service-1")).containsExactly("cluster-2");
+        assertThat(agentIndex.contains("service-2")).isFalse();
+    }
+
+    @Test
+    void shouldKeepAServiceInTheIndexForEveryClusterOfTheSameSwarm() throws Exception {
+        AgentIndex agentIndex = new AgentIndex();
+        DockerServices otherCluster = new DockerServices();
+        otherCluster.attach(agentIndex, "cluster-2");
+        dockerServices.attach(agentIndex, "cluster-1");
+        otherCluster.register(DockerService.fromService(service("service-1", Constants.PLUGIN_ID)));
+        dockerServices.register(DockerService.fromService(service("service-1", Constants.PLUGIN_ID)));
+
+        assertThat(agentIndex.clustersOf("service-1")).containsExactlyInAnyOrder("cluster-1", "cluster-2");
+
+        dockerServices.detach();
+
+        assertThat(agentIndex.clustersOf("service-1")).containsExactly("cluster-2");
+        assertThat(agentIndex.contains("service-1", "cluster-1")).isFalse();
+        assertThat(agentIndex.contains("service-1", "cluster-2")).isTrue();
+    }
+
+    private Event event(String action, String id, String name) {
+        Event.Actor actor = mock(Event.Actor.class);
+        when(actor.id()).thenReturn(id);
+        when(actor.attributes()).thenReturn(ImmutableMap.of("name", name));
+
+        Event event = mock(Event.class);
+        when(event.action()).thenReturn(action);
+        when(event.actor()).thenReturn(actor);
+        return event;
+    }
+
+    private Service service(String name, String createdBy) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put(JOB_IDENTIFIER_LABEL_KEY, new JobIdentifier(1L).toJson());
+        labels.put(Constants.CREATED_BY_LABEL_KEY, createdBy);
+
+        Service service = mock(Service.class);
+        when(service.spec()).thenReturn(ServiceSpec.builder()
+                .name(name)
+                .taskTemplate(TaskSpec.builder().build())
+                .labels(labels)
+                .build());
+        return service;
+    }
+}
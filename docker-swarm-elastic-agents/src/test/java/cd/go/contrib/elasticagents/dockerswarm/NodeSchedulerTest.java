@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.swarm.*;
+import org.joda.time.Period;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class NodeSchedulerTest {
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private DockerClient docker;
+    private Clock.TestClock clock;
+    private NodeScheduler nodeScheduler;
+    private SwarmElasticProfileConfiguration profile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        docker = mock(DockerClient.class);
+        clock = new Clock.TestClock();
+        nodeScheduler = new NodeScheduler(clock);
+        profile = new SwarmElasticProfileConfiguration();
+        profile.setImage("alpine");
+        profile.setReservedMemory("1G");
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    void shouldLeavePlacementToTheSwarmWhenTheProfileReservesNoMemory() throws Exception {
+        profile.setReservedMemory(null);
+
+        assertThat(nodeScheduler.claimNode(profile, docker)).isNull();
+        verifyNoInteractions(docker);
+    }
+
+    @Test
+    void shouldPickTheNodeWithTheMostFreeMemory() throws Exception {
+        final Node small = node("small", 4 * GB, ImmutableMap.of());
+        final Node large = node("large", 8 * GB, ImmutableMap.of());
+        final Task task = task("busy-service-id", "large", 6 * GB);
+        when(docker.listNodes()).thenReturn(Arrays.asList(small, large));
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(Arrays.asList(task));
+
+        assertThat(nodeScheduler.claimNode(profile, docker).nodeId()).isEqualTo("small");
+    }
+
+    @Test
+    void shouldRejectWhenNoNodeHasEnoughFreeMemory() throws Exception {
+        final Node node = node("node", 4 * GB, ImmutableMap.of());
+        final Task task = task("busy-service-id", "node", 3.5 * GB);
+        when(docker.listNodes()).thenReturn(Arrays.asList(node));
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(Arrays.asList(task));
+
+        assertThatThrownBy(() -> nodeScheduler.claimNode(profile, docker))
+                .isInstanceOf(InsufficientNodeResourcesException.class)
+                .hasMessageContaining("None of the swarm nodes has 1 GB of memory free");
+    }
+
+    @Test
+    void shouldCountClaimsUntilTheTaskOfTheServiceIsListed() throws Exception {
+        final Node first = node("first", 4 * GB, ImmutableMap.of());
+        final Node second = node("second", (long) (3.5 * GB), ImmutableMap.of());
+        when(docker.listNodes()).thenReturn(Arrays.asList(first, second));
+
+        final NodeScheduler.Claim claim = nodeScheduler.claimNode(profile, docker);
+        nodeScheduler.placed(claim, "service-id-1");
+        assertThat(claim.nodeId()).isEqualTo("first");
+        assertThat(nodeScheduler.claimNode(profile, docker).nodeId()).isEqualTo("second");
+    }
+
+    @Test
+    void shouldForgetClaimsOnceTheirTaskIsListed() throws Exception {
+        final Node first = node("first", 4 * GB, ImmutableMap.of());
+        final Node second = node("second", 3 * GB, ImmutableMap.of());
+        final Task task = task("service-id-1", "first", 0);
+        when(docker.listNodes()).thenReturn(Arrays.asList(first, second));
+
+        nodeScheduler.placed(nodeScheduler.claimNode(profile, docker), "service-id-1");
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(Arrays.asList(task));
+
+        assertThat(nodeScheduler.claimNode(profile, docker).nodeId()).isEqualTo("first");
+    }
+
+    @Test
+    void shouldNotBlockOtherClaimsWhileListingTheSwarm() throws Exception {
+        final Node first = node("first", 4 * GB, ImmutableMap.of());
+        when(docker.listNodes()).thenReturn(Arrays.asList(first));
+        final DockerClient slowDocker = mock(DockerClient.class);
+        final CountDownLatch listing = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        when(slowDocker.listTasks(any(Task.Criteria.class))).thenAnswer(invocation -> {
+            listing.countDown();
+            done.await(5, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        });
+        when(slowDocker.listNodes()).thenReturn(Arrays.asList(first));
+
+        final CompletableFuture<NodeScheduler.Claim> slowClaim = CompletableFuture.supplyAsync(() -> {
+            try {
+                return nodeScheduler.claimNode(profile, slowDocker);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThat(listing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(nodeScheduler.claimNode(profile, docker).nodeId()).isEqualTo("first");
+        assertThat(slowClaim).isNotDone();
+        done.countDown();
+        assertThat(slowClaim.get(5, TimeUnit.SECONDS).nodeId()).isEqualTo("first");
+    }
+
+    @Test
+    void shouldExpireClaims() throws Exception {
+        final Node first = node("first", 4 * GB, ImmutableMap.of());
+        final Node second = node("second", 3 * GB, ImmutableMap.of());
+        when(docker.listNodes()).thenReturn(Arrays.asList(first, second));
+
+        nodeScheduler.claimNode(profile, docker);
+        clock.forward(Period.minutes(2));
+
+        assertThat(nodeScheduler.claimNode(profile, docker).nodeId()).isEqualTo("first");
+    }
+
+    @Test
+    void shouldOnlyConsiderNodesMatchingTheConstraints() throws Exception {
+        final Node ssd = node("ssd", 2 * GB, ImmutableMap.of("disk", "ssd"));
+        final Node hdd = node("hdd", 8 * GB, ImmutableMap.of("disk", "hdd"));
+        when(docker.listNodes()).thenReturn(Arrays.asList(ssd, hdd));
+        profile.setConstraints("node.labels.disk==ssd");
+
+        assertThat(nodeScheduler.claimNode(profile, docker).nodeId()).isEqualTo("ssd");
+    }
+
+    @Test
+    void shouldLeavePlacementToTheSwarmForConstraintsItDoesNotUnderstand() throws Exception {
+        profile.setConstraints("node.some.attribute==value");
+
+        assertThat(nodeScheduler.claimNode(profile, docker)).isNull();
+        verifyNoInteractions(docker);
+    }
+
+    private Node node(String id, long memoryBytes, ImmutableMap<String, String> labels) {
+        final Node node = mock(Node.class);
+        final NodeStatus status = mock(NodeStatus.class);
+        final NodeDescription description = mock(NodeDescription.class);
+        final Resources resources = mock(Resources.class);
+
+        when(node.id()).thenReturn(id);
+        when(node.spec()).thenReturn(NodeSpec.builder().name(id).availability("active").role("worker").labels(labels).build());
+        when(node.status()).thenReturn(status);
+        when(status.state()).thenReturn("ready");
+        when(node.description()).thenReturn(description);
+        when(description.hostname()).thenReturn(id);
+        when(description.resources()).thenReturn(resources);
+        when(resources.memoryBytes()).thenReturn(memoryBytes);
+        return node;
+    }
+
+    private Task task(String serviceId, String nodeId, double reservedMemoryBytes) {
+        final Task task = mock(Task.class);
+        when(task.serviceId()).thenReturn(serviceId);
+        when(task.nodeId()).thenReturn(nodeId);
+        when(task.spec()).thenReturn(TaskSpec.builder()
+                .resources(ResourceRequirements.builder()
+                        .reservations(Resources.builder().memoryBytes((long) reservedMemoryBytes).build())
+                        .build())
+                .build());
+        return task;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.ResourceUsage;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.CpuStats;
+import com.spotify.docker.client.messages.MemoryStats;
+import com.spotify.docker.client.messages.swarm.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static cd.go.contrib.elasticagents.dockerswarm.Constants.CONFIGURATION_LABEL_KEY;
+import static cd.go.contrib.elasticagents.dockerswarm.Constants.JOB_IDENTIFIER_LABEL_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ResourceUsageSamplerTest {
+    private static final long MB = 1024 * 1024;
+    private DockerClient docker;
+    private ResourceUsageSampler sampler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        docker = mock(DockerClient.class);
+        sampler = new ResourceUsageSampler(new SwarmClusterConfiguration(), mock(DockerClientFactory.class), new Clock.TestClock());
+
+        final Service alpine = service("alpine-service", profile("alpine:latest", "512M"));
+        final Service busybox = service("busybox-service", profile("busybox:latest", null));
+        when(docker.listServices(any(Service.Criteria.class))).thenReturn(List.of(alpine, busybox));
+
+        final Node manager = node("manager", 4_000_000_000L, 1024 * MB);
+        final Node worker = node("worker", 2_000_000_000L, 2048 * MB);
+        when(docker.listNodes()).thenReturn(List.of(manager, worker));
+    }
+
+    @Test
+    void shouldAggregateTheUsageOfSampledAgentsPerNodeAndProfile() throws Exception {
+        final Task first = task("alpine-service", "manager", "container-1", "running");
+        final Task second = task("alpine-service", "manager", "container-2", "running");
+        final Task third = task("busybox-service", "manager", "container-3", "running");
+        final Task notOurs = task("some-other-service", "manager", "container-4", "running");
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(List.of(first, second, third, notOurs));
+        final ContainerStats firstStats = stats(100 * MB, 50);
+        final ContainerStats secondStats = stats(300 * MB, 150);
+        final ContainerStats thirdStats = stats(112 * MB, 0);
+        when(docker.stats("container-1")).thenReturn(firstStats);
+        when(docker.stats("container-2")).thenReturn(secondStats);
+        when(docker.stats("container-3")).thenReturn(thirdStats);
+
+        final ResourceUsage usage = sampler.sample(docker);
+
+        final ResourceUsage.NodeUsage manager = usage.getNode("manager");
+        assertThat(manager.getTasks()).isEqualTo(3);
+        assertThat(manager.getSampledTasks()).isEqualTo(3);
+        assertThat(manager.getMemoryUsedBytes()).isEqualTo(512 * MB);
+        assertThat(manager.getMemoryUtilisation()).isEqualTo("50.0%");
+        assertThat(manager.getCpuUtilisation()).isEqualTo("50.0%");
+        assertThat(usage.getNode("worker").getTasks()).isZero();
+
+        assertThat(usage.getProfiles()).hasSize(2);
+        final ResourceUsage.ProfileUsage alpine = usage.getProfiles().get(0);
+        assertThat(alpine.getImage()).isEqualTo("alpine:latest");
+        assertThat(alpine.getReservedMemory()).isEqualTo("512M");
+        assertThat(alpine.getAgents()).isEqualTo(2);
+        assertThat(alpine.getAverageMemoryBytes()).isEqualTo(200 * MB);
+        assertThat(alpine.getPeakMemoryBytes()).isEqualTo(300 * MB);
+        assertThat(alpine.getAverageCpu()).isEqualTo("100.0%");
+    }
+
+    @Test
+    void shouldCountTasksOnOtherNodesWithoutSamplingThem() throws Exception {
+        final Task local = task("alpine-service", "manager", "container-1", "running");
+        final Task remote = task("alpine-service", "worker", "container-2", "running");
+        final Task starting = task("alpine-service", "worker", "container-3", "preparing");
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(List.of(local, remote, starting));
+        final ContainerStats localStats = stats(100 * MB, 50);
+        when(docker.stats("container-1")).thenReturn(localStats);
+        when(docker.stats("container-2")).thenThrow(new ContainerNotFoundException("container-2"));
+
+        final ResourceUsage usage = sampler.sample(docker);
+
+        assertThat(usage.getNode("worker").getTasks()).isEqualTo(1);
+        assertThat(usage.getNode("worker").getSampledTasks()).isZero();
+        final ResourceUsage.ProfileUsage alpine = usage.getProfiles().get(0);
+        assertThat(alpine.getAgents()).isEqualTo(2);
+        assertThat(alpine.getSampledAgents()).isEqualTo(1);
+        assertThat(alpine.getAverageMemoryBytes()).isEqualTo(100 * MB);
+    }
+
+    @Test
+    void shouldOnlyListTheTasksCreatedByThePlugin() throws Exception {
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(List.of());
+
+        sampler.sample(docker);
+
+        final ArgumentCaptor<Task.Criteria> criteria = ArgumentCaptor.forClass(Task.Criteria.class);
+        verify(docker).listTasks(criteria.capture());
+        assertThat(criteria.getValue().label()).isEqualTo(Constants.CREATED_BY_LABEL_KEY + "=" + Constants.PLUGIN_ID);
+        assertThat(criteria.getValue().desiredState()).isEqualTo("running");
+    }
+
+    @Test
+    void shouldCountTasksWhoseStatsAreNotReadInTimeWithoutSamplingThem() throws Exception {
+        sampler = new ResourceUsageSampler(new SwarmClusterConfiguration(), mock(DockerClientFactory.class), new Clock.TestClock(), Duration.ofMillis(200));
+        final Task quick = task("alpine-service", "manager", "container-1", "running");
+        final Task stuck = task("alpine-service", "manager", "container-2", "running");
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(List.of(quick, stuck));
+        final ContainerStats quickStats = stats(100 * MB, 50);
+        when(docker.stats("container-1")).thenReturn(quickStats);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(docker.stats("container-2")).thenAnswer(invocation -> {
+            release.await();
+            return null;
+        });
+
+        try {
+            final ResourceUsage usage = sampler.sample(docker);
+
+            assertThat(usage.getNode("manager").getTasks()).isEqualTo(2);
+            assertThat(usage.getNode("manager").getSampledTasks()).isEqualTo(1);
+            assertThat(usage.getNode("manager").getMemoryUsedBytes()).isEqualTo(100 * MB);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void shouldSerializeTheUsageToJson() throws Exception {
+        when(docker.listTasks(any(Task.Criteria.class))).thenReturn(List.of());
+
+        final Map<String, Object> json = new Gson().fromJson(sampler.sample(docker).toJson(), new TypeToken<Map<String, Object>>() {
+        }.getType());
+
+        assertThat(json).containsKeys("sampledAt", "nodes", "profiles");
+        assertThat((List<?>) json.get("nodes")).hasSize(2);
+    }
+
+    private static SwarmElasticProfileConfiguration profile(String image, String reservedMemory) {
+        final SwarmElasticProfileConfiguration profile = new SwarmElasticProfileConfiguration();
+        profile.setImage(image);
+        profile.setReservedMemory(reservedMemory);
+        return profile;
+    }
+
+    private static Service service(String id, SwarmElasticProfileConfiguration profile) {
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(JOB_IDENTIFIER_LABEL_KEY, new JobIdentifier(1L).toJson());
+        labels.put(CONFIGURATION_LABEL_KEY, new Gson().toJson(profile));
+        final Service service = mock(Service.class);
+        when(service.id()).thenReturn(id);
+        when(service.spec()).thenReturn(ServiceSpec.builder().name(id).taskTemplate(TaskSpec.builder().build()).labels(labels).build());
+        return service;
+    }
+
+    private static Node node(String id, long nanoCpus, long memoryBytes) {
+        final Resources resources = Resources.builder().nanoCpus(nanoCpus).memoryBytes(memoryBytes).build();
+        final NodeDescription description = mock(NodeDescription.class);
+        when(description.hostname()).thenReturn(id + "-host");
+        when(description.resources()).thenReturn(resources);
+        final Node node = mock(Node.class);
+        when(node.id()).thenReturn(id);
+        when(node.description()).thenReturn(description);
+        return node;
+    }
+
+    private static Task task(String serviceId, String nodeId, String containerId, String state) {
+        final ContainerStatus containerStatus = mock(ContainerStatus.class);
+        when(containerStatus.containerId()).thenReturn(containerId);
+        final TaskStatus status = mock(TaskStatus.class);
+        when(status.state()).thenReturn(state);
+        when(status.containerStatus()).thenReturn(containerStatus);
+        final Task task = mock(Task.class);
+        when(task.serviceId()).thenReturn(serviceId);
+        when(task.nodeId()).thenReturn(nodeId);
+        when(task.status()).thenReturn(status);
+        return task;
+    }
+
+    /**
+     * Stats of a container on a 2 CPU host that used the given percentage of one CPU between the two readings.
+     */
+    private static ContainerStats stats(long memoryBytes, long cpuPercent) {
+        final MemoryStats memory = mock(MemoryStats.class);
+        when(memory.usage()).thenReturn(memoryBytes);
+        final CpuStats cpu = cpuStats(1_000 + cpuPercent * 10, 20_000L);
+        final CpuStats previous = cpuStats(1_000, 18_000L);
+        final ContainerStats stats = mock(ContainerStats.class);
+        when(stats.memoryStats()).thenReturn(memory);
+        when(stats.cpuStats()).thenReturn(cpu);
+        when(stats.precpuStats()).thenReturn(previous);
+        return stats;
+    }
+
+    private static CpuStats cpuStats(long totalUsage, long systemUsage) {
+        final CpuStats.CpuUsage cpuUsage = mock(CpuStats.CpuUsage.class);
+        when(cpuUsage.totalUsage()).thenReturn(totalUsage);
+        when(cpuUsage.percpuUsage()).thenReturn(ImmutableList.of(1L, 1L));
+        final CpuStats cpuStats = mock(CpuStats.class);
+        when(cpuStats.cpuUsage()).thenReturn(cpuUsage);
+        when(cpuStats.systemCpuUsage()).thenReturn(systemUsage);
+        return cpuStats;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+import cd.go.contrib.elasticagents.dockerswarm.requests.CreateAgentRequest;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.ServiceSpec;
+import com.spotify.docker.client.messages.swarm.TaskSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ServiceCreationBatcherTest {
+    private DockerClient docker;
+    private List<DockerService> registered;
+    private ExecutorService requests;
+    private ServiceCreationBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        docker = mock(DockerClient.class);
+        registered = Collections.synchronizedList(new ArrayList<>());
+        requests = Executors.newCachedThreadPool();
+        batcher = new ServiceCreationBatcher(registered::add, Executors.newCachedThreadPool());
+    }
+
+    @AfterEach
+    void tearDown() {
+        requests.shutdownNow();
+    }
+
+    @Test
+    void shouldCreateTheServicesRequestedWhileABatchIsInFlightTogether() throws Exception {
+        final List<Service> services = List.of(service("service-0"), service("service-1"), service("service-2"), service("service-3"));
+        when(docker.listServices(any(Service.Criteria.class))).thenReturn(services);
+        final CountDownLatch inFlight = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(docker.createService(argThat(spec -> spec != null && "service-0".equals(spec.name())))).thenAnswer(invocation -> {
+            inFlight.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+
+        final Future<DockerService> first = submit(request("alpine"), "service-0", 60_000);
+        assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+        final List<Future<DockerService>> created = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            created.add(submit(request("alpine"), "service-" + i, 60_000));
+        }
+        awaitWaitingRequests(3);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).name()).isEqualTo("service-0");
+        for (Future<DockerService> future : created) {
+            assertThat(future.get(5, TimeUnit.SECONDS).jobIdentifier()).isEqualTo(new JobIdentifier(100L));
+        }
+        verify(docker, times(4)).createService(any(ServiceSpec.class));
+        verify(docker, times(2)).listServices(any(Service.Criteria.class));
+        verify(docker, never()).inspectService(anyString());
+        assertThat(registered).extracting(DockerService::name).containsExactlyInAnyOrder("service-0", "service-1", "service-2", "service-3");
+    }
+
+    @Test
+    void shouldCreateALoneServiceWithoutWaitingForTheWindow() throws Exception {
+        final List<Service> services = List.of(service("service-1"));
+        when(docker.listServices(any(Service.Criteria.class))).thenReturn(services);
+
+        assertThat(submit(request("alpine"), "service-1", 60_000).get(5, TimeUnit.SECONDS).name()).isEqualTo("service-1");
+    }
+
+    @Test
+    void shouldBatchEachProfileSeparately() throws Exception {
+        final List<Service> services = List.of(service("service-1"), service("service-2"));
+        when(docker.listServices(any(Service.Criteria.class))).thenReturn(services);
+
+        final Future<DockerService> alpine = submit(request("alpine"), "service-1");
+        final Future<DockerService> busybox = submit(request("busybox"), "service-2");
+
+        assertThat(alpine.get().name()).isEqualTo("service-1");
+        assertThat(busybox.get().name()).isEqualTo("service-2");
+        verify(docker, times(2)).listServices(any(Service.Criteria.class));
+    }
+
+    @Test
+    void shouldFailOnlyTheServicesThatCouldNotBeCreated() throws Exception {
+        final List<Service> services = List.of(service("service-1"));
+        when(docker.listServices(any(Service.Criteria.class))).thenReturn(services);
+        when(docker.createService(argThat(spec -> spec != null && "service-2".equals(spec.name()))))
+                .thenThrow(new DockerException("no such network"));
+
+        final Future<DockerService> first = submit(request("alpine"), "service-1");
+        final Future<DockerService> second = submit(request("alpine"), "service-2");
+
+        assertThat(first.get().name()).isEqualTo("service-1");
+        assertThatThrownBy(second::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(DockerException.class);
+        assertThat(registered).extracting(DockerService::name).containsExactly("service-1");
+    }
+
+    @Test
+    void shouldInspectServicesMissingFromTheListing() throws Exception {
+        final Service service = service("service-1");
+        when(docker.listServices(any(Service.Criteria.class))).thenReturn(Collections.emptyList());
+        when(docker.inspectService("service-1")).thenReturn(service);
+
+        assertThat(submit(request("alpine"), "service-1").get().name()).isEqualTo("service-1");
+        verify(docker).inspectService("service-1");
+    }
+
+    private Future<DockerService> submit(CreateAgentRequest request, String serviceName) {
+        return submit(request, serviceName, 500);
+    }
+
+    private Future<DockerService> submit(CreateAgentRequest request, String serviceName, long windowMillis) {
+        final ServiceSpec spec = ServiceSpec.builder().name(serviceName).taskTemplate(TaskSpec.builder().build()).build();
+        return requests.submit(() -> batcher.create(request, spec, docker, windowMillis));
+    }
+
+    private void awaitWaitingRequests(int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (batcher.waitingRequests() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(batcher.waitingRequests()).isEqualTo(count);
+    }
+
+    private static CreateAgentRequest request(String image) {
+        final SwarmElasticProfileConfiguration profile = new SwarmElasticProfileConfiguration();
+        profile.setImage(image);
+        final CreateAgentRequest request = new CreateAgentRequest();
+        request.setElasticProfileConfiguration(profile)
+                .setJobIdentifier(new JobIdentifier(100L))
+                .setClusterProfileProperties(new SwarmClusterConfiguration());
+        return request;
+    }
+
+    private static Service service(String name) {
+        final Service service = mock(Service.class);
+        when(service.spec()).thenReturn(ServiceSpec.builder().name(name).taskTemplate(TaskSpec.builder().build()).build());
+        when(service.createdAt()).thenReturn(new Date());
+        return service;
+    }
+}
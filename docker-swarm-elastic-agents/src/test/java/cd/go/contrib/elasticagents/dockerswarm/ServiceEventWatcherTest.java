@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.swarm.Service;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static java.util.List.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ServiceEventWatcherTest {
+    @Test
+    void shouldResyncTheInventoryWhileTheEventsStreamCannotBeOpened() throws Exception {
+        SwarmClusterConfiguration swarmClusterConfiguration = new SwarmClusterConfiguration();
+        DockerClientFactory factory = mock(DockerClientFactory.class);
+        DockerClient docker = mock(DockerClient.class);
+        when(factory.streamingClient(swarmClusterConfiguration)).thenThrow(new IOException("connection refused"));
+        when(factory.docker(swarmClusterConfiguration)).thenReturn(docker);
+        when(docker.listServices(any(Service.Criteria.class))).thenReturn(of());
+
+        DockerServices dockerServices = new DockerServices(factory);
+        ServiceEventWatcher watcher = new ServiceEventWatcher(dockerServices, swarmClusterConfiguration, factory);
+        watcher.start();
+        try {
+            verify(docker, timeout(5000)).listServices(any(Service.Criteria.class));
+            assertThat(watcher.isInSync()).isFalse();
+        } finally {
+            watcher.stop();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ServiceSpecTemplateTest {
+
+    @Test
+    void shouldCompileTheProfileIntoASpecTemplate() {
+        final SwarmElasticProfileConfiguration profile = profile("alpine");
+        profile.setCommand("ls\n-al");
+        profile.setEnvironment("A=B\n C=D ");
+        profile.setReservedMemory("512M");
+        profile.setConstraints("node.role==worker");
+        profile.setLogDriver("syslog");
+
+        final ServiceSpecTemplate template = new ServiceSpecTemplate(profile);
+
+        assertThat(template.getImage()).isEqualTo("alpine:latest");
+        assertThat(template.getCommand()).containsExactly("ls", "-al");
+        assertThat(template.getEnvironment()).containsExactly("A=B", "C=D");
+        assertThat(template.getResources().reservations().memoryBytes()).isEqualTo(512L * 1024 * 1024);
+        assertThat(template.getResources().limits()).isNull();
+        assertThat(template.getConstraints()).containsExactly("node.role==worker");
+        assertThat(template.getLogDriver().name()).isEqualTo("syslog");
+        assertThat(template.getMounts()).isEmpty();
+        assertThat(template.getSecrets().isEmpty()).isTrue();
+    }
+
+    @Test
+    void shouldNotSetACommandOrLogDriverWhenTheProfileHasNone() {
+        final ServiceSpecTemplate template = new ServiceSpecTemplate(profile("alpine:3.9"));
+
+        assertThat(template.getImage()).isEqualTo("alpine:3.9");
+        assertThat(template.getCommand()).isNull();
+        assertThat(template.getLogDriver()).isNull();
+        assertThat(template.getEnvironment()).isEmpty();
+    }
+
+    @Test
+    void shouldReuseTheTemplateOfAnEqualProfile() {
+        final ServiceSpecTemplate template = ServiceSpecTemplate.of(profile("busybox"));
+
+        assertThat(ServiceSpecTemplate.of(profile("busybox"))).isSameAs(template);
+        assertThat(ServiceSpecTemplate.of(profile("busybox:1.30"))).isNotSameAs(template);
+    }
+
+    @Test
+    void shouldRejectAProfileWithoutAnImage() {
+        assertThatThrownBy(() -> ServiceSpecTemplate.of(profile(" ")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Must provide `Image` attribute.");
+    }
+
+    @Test
+    void shouldNotExposeMutableState() {
+        final ServiceSpecTemplate template = new ServiceSpecTemplate(profile("alpine"));
+        final List<String> constraints = template.getConstraints();
+
+        assertThatThrownBy(() -> constraints.add("node.id==abc")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private static SwarmElasticProfileConfiguration profile(String image) {
+        final SwarmElasticProfileConfiguration profile = new SwarmElasticProfileConfiguration();
+        profile.setImage(image);
+        return profile;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.Version;
+import com.spotify.docker.client.messages.swarm.Secret;
+import com.spotify.docker.client.messages.swarm.SecretSpec;
+import org.joda.time.Period;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class SwarmMetadataTest {
+    private DockerClient docker;
+    private Clock.TestClock clock;
+    private SwarmMetadata metadata;
+
+    @BeforeEach
+    void setUp() {
+        docker = mock(DockerClient.class);
+        clock = new Clock.TestClock();
+        metadata = new SwarmMetadata(clock);
+    }
+
+    @Test
+    void shouldFetchTheVersionOnceWithinTheTtl() throws Exception {
+        final Version version = mock(Version.class);
+        when(version.apiVersion()).thenReturn("1.30");
+        when(docker.version()).thenReturn(version);
+
+        assertThat(metadata.apiVersionAtLeast(docker, "1.26")).isTrue();
+        assertThat(metadata.apiVersionAtLeast(docker, "1.31")).isFalse();
+        assertThat(metadata.version(docker)).isSameAs(version);
+        verify(docker, times(1)).version();
+
+        clock.forward(SwarmMetadata.VERSION_TTL.plus(Period.seconds(1)));
+        metadata.version(docker);
+        verify(docker, times(2)).version();
+    }
+
+    @Test
+    void shouldReuseTheNetworksWhileAllRequestedNamesAreKnown() throws Exception {
+        final Network frontend = network("frontend");
+        when(docker.listNetworks()).thenReturn(Arrays.asList(frontend));
+
+        assertThat(metadata.networks(docker, Collections.singletonList("frontend"))).containsEntry("frontend", frontend);
+        assertThat(metadata.networks(docker, Collections.singletonList("frontend"))).containsEntry("frontend", frontend);
+
+        verify(docker, times(1)).listNetworks();
+    }
+
+    @Test
+    void shouldLookUpTheNetworksAgainWhenANameIsNotKnown() throws Exception {
+        final Network frontend = network("frontend");
+        final Network backend = network("backend");
+        when(docker.listNetworks())
+                .thenReturn(Arrays.asList(frontend))
+                .thenReturn(Arrays.asList(frontend, backend));
+
+        metadata.networks(docker, Collections.singletonList("frontend"));
+
+        assertThat(metadata.networks(docker, Arrays.asList("frontend", "backend"))).containsKeys("frontend", "backend");
+        verify(docker, times(2)).listNetworks();
+    }
+
+    @Test
+    void shouldLookUpTheSecretsAgainOnceExpiredOrInvalidated() throws Exception {
+        final Secret secret = mock(Secret.class);
+        when(secret.secretSpec()).thenReturn(SecretSpec.builder().name("password").build());
+        when(docker.listSecrets()).thenReturn(Arrays.asList(secret));
+
+        metadata.secrets(docker, Collections.singletonList("password"));
+        metadata.secrets(docker, Collections.singletonList("password"));
+        verify(docker, times(1)).listSecrets();
+
+        clock.forward(SwarmMetadata.LOOKUP_TTL.plus(Period.seconds(1)));
+        metadata.secrets(docker, Collections.singletonList("password"));
+        verify(docker, times(2)).listSecrets();
+
+        metadata.invalidate();
+        assertThat(metadata.secrets(docker, Collections.singletonList("password"))).containsEntry("password", secret);
+        verify(docker, times(3)).listSecrets();
+    }
+
+    private Network network(String name) {
+        final Network network = mock(Network.class);
+        when(network.name()).thenReturn(name);
+        return network;
+    }
+}
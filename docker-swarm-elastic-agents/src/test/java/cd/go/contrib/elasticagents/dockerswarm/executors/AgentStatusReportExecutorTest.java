@@ -16,9 +16,12 @@
 
 package cd.go.contrib.elasticagents.dockerswarm.executors;
 
+import cd.go.contrib.elasticagents.common.LogTail;
 import cd.go.contrib.elasticagents.common.ViewBuilder;
 import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+import cd.go.contrib.elasticagents.dockerswarm.AgentIndex;
 import cd.go.contrib.elasticagents.dockerswarm.DockerClientFactory;
+import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
 import cd.go.contrib.elasticagents.dockerswarm.SwarmClusterConfiguration;
 import cd.go.contrib.elasticagents.dockerswarm.requests.AgentStatusReportRequest;
 import cd.go.contrib.elasticagents.dockerswarm.utils.JobIdentifierMother;
@@ -27,6 +30,7 @@ import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.LogMessage;
 import com.spotify.docker.client.LogStream;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ServiceNotFoundException;
 import com.spotify.docker.client.messages.swarm.*;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.apache.commons.lang.StringUtils;
@@ -39,6 +43,8 @@ import org.mockito.Mock;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.Date;
 import java.util.Map;
@@ -47,9 +53,11 @@ import static cd.go.contrib.elasticagents.dockerswarm.Constants.JOB_IDENTIFIER_L
 import static cd.go.plugin.base.GsonTransformer.fromJson;
 import static com.spotify.docker.client.DockerClient.LogsParam.stderr;
 import static com.spotify.docker.client.DockerClient.LogsParam.stdout;
+import static com.spotify.docker.client.DockerClient.LogsParam.tail;
 import static java.util.List.of;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 class AgentStatusReportExecutorTest {
@@ -78,8 +86,8 @@ class AgentStatusReportExecutorTest {
         final Service service = mockedService("elastic-agent-id", "abcd-xyz");
         when(statusReportRequest.getJobIdentifier()).thenReturn(JobIdentifierMother.get());
         when(statusReportRequest.getElasticAgentId()).thenReturn("elastic-agent-id");
-        when(client.listServices()).thenReturn(of(service));
-        when(client.serviceLogs("abcd-xyz", stdout(), stderr())).thenReturn(new StubbedLogStream("some-logs"));
+        when(client.inspectService("elastic-agent-id")).thenReturn(service);
+        when(client.serviceLogs("abcd-xyz", stdout(), stderr(), tail(LogTail.DEFAULT_LINES))).thenReturn(new StubbedLogStream("some-logs"));
 
         GoPluginApiResponse response = executor.execute(statusReportRequest);
 
@@ -100,8 +108,8 @@ class AgentStatusReportExecutorTest {
         final Service service = mockedService("elastic-agent-id", "abcd-xyz");
         when(statusReportRequest.getJobIdentifier()).thenReturn(JobIdentifierMother.get());
         when(statusReportRequest.getElasticAgentId()).thenReturn("elastic-agent-id");
-        when(client.listServices()).thenReturn(of(service));
-        when(client.serviceLogs("abcd-xyz", stdout(), stderr())).thenReturn(new StubbedLogStream("some-logs"));
+        when(client.inspectService("elastic-agent-id")).thenReturn(service);
+        when(client.serviceLogs("abcd-xyz", stdout(), stderr(), tail(LogTail.DEFAULT_LINES))).thenReturn(new StubbedLogStream("some-logs"));
 
         GoPluginApiResponse response = executor.execute(statusReportRequest);
 
@@ -123,8 +131,8 @@ class AgentStatusReportExecutorTest {
         final Service service = mockedService("elastic-agent-id", "abcd-xyz");
         when(statusReportRequest.getJobIdentifier()).thenReturn(null);
         when(statusReportRequest.getElasticAgentId()).thenReturn("elastic-agent-id");
-        when(client.listServices()).thenReturn(of(service));
-        when(client.serviceLogs("abcd-xyz", stdout(), stderr())).thenReturn(new StubbedLogStream(""));
+        when(client.inspectService("elastic-agent-id")).thenReturn(service);
+        when(client.serviceLogs("abcd-xyz", stdout(), stderr(), tail(LogTail.DEFAULT_LINES))).thenReturn(new StubbedLogStream(""));
 
         GoPluginApiResponse response = executor.execute(statusReportRequest);
 
@@ -137,6 +145,31 @@ class AgentStatusReportExecutorTest {
         assertThat(document.select(".service-logs").text()).isEqualTo("Logs not available for this agent.");
     }
 
+    @Test
+    void shouldReportAMissingServiceWhenNoServiceHasTheElasticAgentId() throws Exception {
+        when(statusReportRequest.getJobIdentifier()).thenReturn(null);
+        when(statusReportRequest.getElasticAgentId()).thenReturn("elastic-agent-id");
+        when(client.inspectService("elastic-agent-id")).thenThrow(new ServiceNotFoundException("elastic-agent-id"));
+
+        GoPluginApiResponse response = executor.execute(statusReportRequest);
+
+        assertThat(response.responseBody()).contains("Service is not running.");
+    }
+
+    @Test
+    void shouldNotLookUpServicesUnknownToAnInventoryInSync() throws Exception {
+        final DockerServices dockerServices = mock(DockerServices.class);
+        when(dockerServices.isInSync()).thenReturn(true);
+        when(statusReportRequest.getJobIdentifier()).thenReturn(null);
+        when(statusReportRequest.getElasticAgentId()).thenReturn("elastic-agent-id");
+        executor = new AgentStatusReportExecutor(Map.of(swarmClusterConfiguration.uuid(), dockerServices), new AgentIndex(), dockerClientFactory, ViewBuilder.instance());
+
+        GoPluginApiResponse response = executor.execute(statusReportRequest);
+
+        assertThat(response.responseBody()).contains("Service is not running.");
+        verify(client, never()).inspectService(any());
+    }
+
     private boolean hasEnvironmentVariable(Document document, String name, String value) {
         final Elements elements = document.select(MessageFormat.format(".environments .name-value .name-value_pair label:contains({0})", name));
         if (elements.isEmpty()) {
@@ -187,6 +220,7 @@ class AgentStatusReportExecutorTest {
 
     class StubbedLogStream implements LogStream {
         private final String logs;
+        private boolean read;
 
         StubbedLogStream(String logs) {
 
@@ -215,12 +249,13 @@ class AgentStatusReportExecutorTest {
 
         @Override
         public boolean hasNext() {
-            return false;
+            return !read && !logs.isEmpty();
         }
 
         @Override
         public LogMessage next() {
-            return null;
+            read = true;
+            return new LogMessage(LogMessage.Stream.STDOUT, ByteBuffer.wrap(logs.getBytes(StandardCharsets.UTF_8)));
         }
     }
 
@@ -19,6 +19,7 @@ package cd.go.contrib.elasticagents.dockerswarm.executors;
 import cd.go.contrib.elasticagents.common.ViewBuilder;
 import cd.go.contrib.elasticagents.dockerswarm.SwarmClusterConfiguration;
 import cd.go.contrib.elasticagents.dockerswarm.DockerClientFactory;
+import cd.go.contrib.elasticagents.dockerswarm.DockerServices;
 import cd.go.contrib.elasticagents.dockerswarm.model.reports.SwarmCluster;
 import cd.go.contrib.elasticagents.dockerswarm.requests.ClusterStatusReportRequest;
 import com.spotify.docker.client.DockerClient;
@@ -26,6 +27,9 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import freemarker.template.Template;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -61,4 +65,20 @@ class ClusterStatusReportExecutorTest {
         assertThat(response.responseCode()).isEqualTo(200);
         assertThat(response.responseBody()).isEqualTo("{\"view\":\"status-report\"}");
     }
+
+    @Test
+    void shouldReportTheAgentCapacityOfTheCluster() throws Exception {
+        final ViewBuilder builder = mock(ViewBuilder.class);
+        final Template template = mock(Template.class);
+        swarmClusterConfiguration.setMaxDockerContainers("5");
+        final Map<String, DockerServices> clusterToServicesMap = Map.of(swarmClusterConfiguration.uuid(), new DockerServices(dockerClientFactory));
+        final ArgumentCaptor<SwarmCluster> swarmCluster = ArgumentCaptor.forClass(SwarmCluster.class);
+
+        when(builder.getTemplate("docker-swarm/cluster-status-report.template.ftlh")).thenReturn(template);
+        when(builder.build(eq(template), swarmCluster.capture())).thenReturn("status-report");
+        new ClusterStatusReportExecutor(clusterToServicesMap, dockerClientFactory, builder).execute(request);
+
+        assertThat(swarmCluster.getValue().getCapacity().getMaxAllowed()).isEqualTo(5);
+        assertThat(swarmCluster.getValue().getCapacity().getAvailable()).isEqualTo(5);
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.dockerswarm.model;
+
+import cd.go.contrib.elasticagents.common.Clock;
+import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+import cd.go.contrib.elasticagents.dockerswarm.Constants;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.DockerTask;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.SwarmCluster;
+import cd.go.contrib.elasticagents.dockerswarm.model.reports.SwarmClusterState;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.swarm.*;
+import org.joda.time.Period;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static cd.go.contrib.elasticagents.dockerswarm.Constants.JOB_IDENTIFIER_LABEL_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SwarmClusterStateTest {
+    private DockerClient dockerClient;
+    private Clock.TestClock clock;
+    private SwarmClusterState swarmClusterState;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dockerClient = mock(DockerClient.class);
+        clock = new Clock.TestClock();
+        swarmClusterState = new SwarmClusterState(clock, Period.seconds(10));
+
+        final Service service = mock(Service.class);
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(JOB_IDENTIFIER_LABEL_KEY, new JobIdentifier().toJson());
+        labels.put(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
+        when(service.id()).thenReturn("service-id");
+        when(service.spec()).thenReturn(ServiceSpec.builder()
+                .taskTemplate(TaskSpec.builder().build())
+                .labels(labels)
+                .build());
+        when(dockerClient.listServices(any(Service.Criteria.class))).thenReturn(Arrays.asList(service));
+    }
+
+    @Test
+    void shouldReuseTheClusterModelWithinTheTtl() throws Exception {
+        final Node node = mockNode("node-id", 1L);
+        when(dockerClient.listNodes()).thenReturn(Arrays.asList(node));
+        final Task task = mockTask("task-id", node.id(), 1L);
+        when(dockerClient.listTasks(any(Task.Criteria.class))).thenReturn(Arrays.asList(task));
+
+        final SwarmCluster first = swarmClusterState.get(dockerClient);
+        clock.forward(Period.seconds(5));
+        final SwarmCluster second = swarmClusterState.get(dockerClient);
+
+        assertThat(second).isSameAs(first);
+        verify(dockerClient, times(1)).listNodes();
+        verify(dockerClient, times(1)).listTasks(any(Task.Criteria.class));
+        verify(dockerClient, times(1)).listServices(any(Service.Criteria.class));
+    }
+
+    @Test
+    void shouldRefreshTheClusterModelOnceTheTtlExpires() throws Exception {
+        final Node node = mockNode("node-id", 1L);
+        when(dockerClient.listNodes()).thenReturn(Arrays.asList(node));
+        final Task task1 = mockTask("task-1", node.id(), 1L);
+        final Task task2 = mockTask("task-2", node.id(), 1L);
+        when(dockerClient.listTasks(any(Task.Criteria.class)))
+                .thenReturn(Arrays.asList(task1))
+                .thenReturn(Arrays.asList(task1, task2));
+
+        assertThat(swarmClusterState.get(dockerClient).getNodes().get(0).getTasks()).hasSize(1);
+        clock.forward(Period.seconds(11));
+
+        assertThat(swarmClusterState.get(dockerClient).getNodes().get(0).getTasks()).hasSize(2);
+        verify(dockerClient, times(2)).listNodes();
+    }
+
+    @Test
+    void shouldOnlyConvertTasksWhoseVersionChanged() throws Exception {
+        final Node node = mockNode("node-id", 1L);
+        when(dockerClient.listNodes()).thenReturn(Arrays.asList(node));
+        final Task task1 = mockTask("task-1", node.id(), 1L);
+        final Task task2 = mockTask("task-2", node.id(), 1L);
+        final Task updatedTask2 = mockTask("task-2", node.id(), 2L);
+        when(dockerClient.listTasks(any(Task.Criteria.class)))
+                .thenReturn(Arrays.asList(task1, task2))
+                .thenReturn(Arrays.asList(task1, updatedTask2));
+
+        final List<DockerTask> before = swarmClusterState.get(dockerClient).getNodes().get(0).getTasks();
+        clock.forward(Period.seconds(11));
+        final List<DockerTask> after = swarmClusterState.get(dockerClient).getNodes().get(0).getTasks();
+
+        assertThat(after.get(0)).isSameAs(before.get(0));
+        assertThat(after.get(1)).isNotSameAs(before.get(1));
+    }
+
+    private Node mockNode(String hostname, long versionIndex) {
+        final Node node = mock(Node.class);
+        final Version version = mock(Version.class);
+        when(version.index()).thenReturn(versionIndex);
+
+        when(node.id()).thenReturn(UUID.randomUUID().toString());
+        when(node.version()).thenReturn(version);
+        when(node.status()).thenReturn(mock(NodeStatus.class));
+        when(node.spec()).thenReturn(NodeSpec.builder().name("node-name").availability("active").role("manager").build());
+
+        final NodeDescription nodeDescription = mock(NodeDescription.class);
+        when(node.description()).thenReturn(nodeDescription);
+        when(nodeDescription.hostname()).thenReturn(hostname);
+        when(nodeDescription.engine()).thenReturn(mock(EngineConfig.class));
+        when(nodeDescription.resources()).thenReturn(mock(Resources.class));
+        when(nodeDescription.platform()).thenReturn(mock(Platform.class));
+        return node;
+    }
+
+    private Task mockTask(String taskId, String nodeId, long versionIndex) {
+        final Task task = mock(Task.class);
+        final Version version = mock(Version.class);
+        final TaskStatus taskStatus = mock(TaskStatus.class);
+        when(version.index()).thenReturn(versionIndex);
+
+        when(task.id()).thenReturn(taskId);
+        when(task.version()).thenReturn(version);
+        when(task.createdAt()).thenReturn(new Date());
+        when(task.spec()).thenReturn(TaskSpec.builder().containerSpec(ContainerSpec.builder().image("gocd-agent:latest").build()).build());
+        when(task.nodeId()).thenReturn(nodeId);
+        when(task.serviceId()).thenReturn("service-id");
+        when(task.status()).thenReturn(taskStatus);
+        when(taskStatus.state()).thenReturn("running");
+        return task;
+    }
+}
@@ -29,6 +29,7 @@ import static cd.go.contrib.elasticagents.dockerswarm.Constants.JOB_IDENTIFIER_L
 import static com.spotify.docker.client.DockerClient.ListContainersParam.withStatusCreated;
 import static com.spotify.docker.client.DockerClient.ListContainersParam.withStatusRunning;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class SwarmClusterTest {
@@ -52,13 +53,13 @@ class SwarmClusterTest {
         when(service.id()).thenReturn("service-id");
         when(service.spec()).thenReturn(serviceSpec);
         when(dockerClient.listNodes()).thenReturn(nodeList);
-        when(dockerClient.listTasks()).thenReturn(taskList);
-        when(dockerClient.listServices()).thenReturn(services);
+        when(dockerClient.listTasks(any(Task.Criteria.class))).thenReturn(taskList);
+        when(dockerClient.listServices(any(Service.Criteria.class))).thenReturn(services);
 
         final SwarmCluster swarmCluster = new SwarmCluster(dockerClient);
 
         verify(dockerClient, times(1)).listNodes();
-        verify(dockerClient, times(1)).listTasks();
+        verify(dockerClient, times(1)).listTasks(any(Task.Criteria.class));
 
         assertThat(swarmCluster.getNodes()).hasSize(1);
         assertThat(swarmCluster.getNodes().get(0).getTasks()).hasSize(1);
@@ -92,13 +93,13 @@ class SwarmClusterTest {
         when(service_2.spec()).thenReturn(service2Spec);
 
         when(dockerClient.listNodes()).thenReturn(nodeList);
-        when(dockerClient.listTasks()).thenReturn(taskList);
-        when(dockerClient.listServices()).thenReturn(services);
+        when(dockerClient.listTasks(any(Task.Criteria.class))).thenReturn(taskList);
+        when(dockerClient.listServices(any(Service.Criteria.class))).thenReturn(services);
 
         final SwarmCluster swarmCluster = new SwarmCluster(dockerClient);
 
         verify(dockerClient, times(1)).listNodes();
-        verify(dockerClient, times(1)).listTasks();
+        verify(dockerClient, times(1)).listTasks(any(Task.Criteria.class));
 
         assertThat(swarmCluster.getNodes()).hasSize(1);
         assertThat(swarmCluster.getNodes().get(0).getTasks()).hasSize(1);
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks how many agents a cluster may still create without taking a lock. An agent being created holds a
+ * {@link Reservation} until it is part of the plugin's inventory; the reservation is then committed, or rolled back
+ * if the creation failed. The jobs that are waiting for an agent are tracked as well, in the order they first asked
+ * for one.
+ */
+public class AgentCapacity {
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final Map<JobIdentifier, Long> waitingJobs = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param maxAllowed    the maximum number of agents allowed in the cluster
+     * @param currentAgents the number of agents currently in the plugin's inventory
+     * @return a reservation, or null if the cluster is at capacity
+     */
+    public Reservation tryReserve(int maxAllowed, IntSupplier currentAgents) {
+        while (true) {
+            int current = reserved.get();
+            if (currentAgents.getAsInt() + current >= maxAllowed) {
+                return null;
+            }
+            if (!reserved.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            // another agent may have been added to the inventory, and its reservation committed, since the inventory
+            // was read. Count again now that this reservation is held, reservations first: an agent is added to the
+            // inventory before its reservation is committed, so it is counted at least once.
+            int reservedNow = reserved.get();
+            if (currentAgents.getAsInt() + reservedNow <= maxAllowed) {
+                return new Reservation();
+            }
+            reserved.decrementAndGet();
+        }
+    }
+
+    public int reservations() {
+        return reserved.get();
+    }
+
+    public void waitFor(JobIdentifier jobIdentifier) {
+        waitingJobs.putIfAbsent(jobIdentifier, sequence.incrementAndGet());
+    }
+
+    public void stopWaitingFor(JobIdentifier jobIdentifier) {
+        waitingJobs.remove(jobIdentifier);
+    }
+
+    public List<JobIdentifier> waitingJobs() {
+        return waitingJobs.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    public Utilisation utilisation(int maxAllowed, int currentAgents) {
+        return new Utilisation(maxAllowed, currentAgents, reserved.get(), waitingJobs.size());
+    }
+
+    public class Reservation {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * To be called once the agent has been added to the plugin's inventory, from where it is counted instead.
+         */
+        public void commit() {
+            release();
+        }
+
+        public void rollback() {
+            release();
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                reserved.decrementAndGet();
+            }
+        }
+    }
+
+    public static class Utilisation {
+        private final int maxAllowed;
+        private final int running;
+        private final int reserved;
+        private final int waitingJobs;
+
+        public Utilisation(int maxAllowed, int running, int reserved, int waitingJobs) {
+            this.maxAllowed = maxAllowed;
+            this.running = running;
+            this.reserved = reserved;
+            this.waitingJobs = waitingJobs;
+        }
+
+        public int getMaxAllowed() {
+            return maxAllowed;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public int getReserved() {
+            return reserved;
+        }
+
+        public int getWaitingJobs() {
+            return waitingJobs;
+        }
+
+        public int getAvailable() {
+            return Math.max(0, maxAllowed - running - reserved);
+        }
+    }
+}
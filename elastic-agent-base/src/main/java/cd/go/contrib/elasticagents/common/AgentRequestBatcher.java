@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import cd.go.contrib.elasticagents.common.agent.Agent;
+import cd.go.contrib.elasticagents.common.exceptions.ServerRequestFailedException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces the agents passed to concurrent calls of the same server request into a single request. A caller sends its
+ * request right away when no request is in flight; callers arriving while one is in flight join the next batch, which
+ * the first of them sends on behalf of all of them once the request in flight is done. Everyone returns once the
+ * request for their agents is done. If the combined request fails, the agents of each caller are sent again on their
+ * own, so that only the callers whose agents the server rejects see the failure.
+ */
+class AgentRequestBatcher {
+    interface Request {
+        void submit(Collection<Agent> agents) throws ServerRequestFailedException;
+    }
+
+    private final Request request;
+    private boolean sending;
+    private Batch pending;
+
+    AgentRequestBatcher(Request request) {
+        this.request = request;
+    }
+
+    void submit(Collection<Agent> agents) throws ServerRequestFailedException {
+        if (agents.isEmpty()) {
+            return;
+        }
+
+        Part part = new Part(agents);
+        Batch batch;
+        boolean leader;
+        synchronized (this) {
+            if (!sending) {
+                sending = true;
+                leader = true;
+                batch = new Batch();
+                batch.turn.complete(null);
+            } else {
+                leader = pending == null;
+                if (leader) {
+                    pending = new Batch();
+                }
+                batch = pending;
+            }
+            batch.parts.add(part);
+        }
+
+        if (leader) {
+            await(batch.turn);
+            try {
+                batch.send(request);
+            } finally {
+                handOver();
+            }
+        }
+
+        part.await();
+    }
+
+    // used by test
+    synchronized int waitingCallers() {
+        return pending == null ? 0 : pending.parts.size();
+    }
+
+    private synchronized void handOver() {
+        Batch next = pending;
+        pending = null;
+        if (next == null) {
+            sending = false;
+        } else {
+            next.turn.complete(null);
+        }
+    }
+
+    private static void await(CompletableFuture<Void> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw (RuntimeException) e.getCause();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class Batch {
+        private final List<Part> parts = new ArrayList<>();
+        private final CompletableFuture<Void> turn = new CompletableFuture<>();
+
+        void send(Request request) {
+            Set<Agent> agents = new LinkedHashSet<>();
+            parts.forEach(part -> agents.addAll(part.agents));
+
+            try {
+                request.submit(agents);
+                parts.forEach(part -> part.result.complete(null));
+            } catch (RuntimeException e) {
+                if (parts.size() == 1) {
+                    parts.get(0).result.completeExceptionally(e);
+                    return;
+                }
+                parts.forEach(part -> part.sendAlone(request));
+            } finally {
+                parts.forEach(Part::abandon);
+            }
+        }
+    }
+
+    private static class Part {
+        private final Collection<Agent> agents;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Part(Collection<Agent> agents) {
+            this.agents = agents;
+        }
+
+        void sendAlone(Request request) {
+            try {
+                request.submit(agents);
+                result.complete(null);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Fails the part if sending the batch stopped before its request was done, so that its caller does not wait
+         * forever. Does nothing for a part that is already done.
+         */
+        void abandon() {
+            result.completeExceptionally(new IllegalStateException("The request for agents " + agents + " was not sent."));
+        }
+
+        void await() {
+            AgentRequestBatcher.await(result);
+        }
+    }
+}
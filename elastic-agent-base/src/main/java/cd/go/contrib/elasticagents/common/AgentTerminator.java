@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import cd.go.contrib.elasticagents.common.agent.Agent;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Terminates the instances of several agents in parallel, with a bounded number of terminations running at once across
+ * all callers. Each termination is retried a few times, and given up on once it has been running for longer than the
+ * timeout. The agents whose instance is gone are returned so that only those are deleted from the server; the others
+ * stay disabled and are picked up again by the next cleanup.
+ */
+public class AgentTerminator {
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final int DEFAULT_ATTEMPTS = 3;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(1);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    public interface Termination {
+        void terminate(Agent agent) throws Exception;
+    }
+
+    private final ExecutorService executorService;
+    private final int attempts;
+    private final Duration timeout;
+    private final Duration retryBackoff;
+
+    public AgentTerminator(String name) {
+        this(newExecutor(name, DEFAULT_PARALLELISM), DEFAULT_ATTEMPTS, DEFAULT_TIMEOUT, Duration.ofSeconds(1));
+    }
+
+    public AgentTerminator(ExecutorService executorService, int attempts, Duration timeout, Duration retryBackoff) {
+        this.executorService = executorService;
+        this.attempts = attempts;
+        this.timeout = timeout;
+        this.retryBackoff = retryBackoff;
+    }
+
+    public Result terminate(Collection<Agent> agents, Termination termination) throws InterruptedException {
+        List<Attempt> running = new ArrayList<>();
+        for (Agent agent : agents) {
+            Attempt attempt = new Attempt(agent, termination);
+            attempt.future = executorService.submit(attempt);
+            running.add(attempt);
+        }
+
+        Result result = new Result();
+        try {
+            for (Attempt attempt : running) {
+                await(attempt, result);
+            }
+        } catch (InterruptedException e) {
+            running.forEach(attempt -> attempt.future.cancel(true));
+            throw e;
+        }
+        return result;
+    }
+
+    private void await(Attempt attempt, Result result) throws InterruptedException {
+        while (true) {
+            try {
+                attempt.future.get(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+                result.terminated.add(attempt.agent);
+                return;
+            } catch (ExecutionException e) {
+                result.failures.put(attempt.agent, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                return;
+            } catch (TimeoutException e) {
+                long startedAt = attempt.startedAt;
+                if (startedAt != 0 && System.nanoTime() - startedAt > timeout.toNanos()) {
+                    attempt.future.cancel(true);
+                    result.failures.put(attempt.agent, new TimeoutException("Terminating agent " + attempt.agent.elasticAgentId() + " did not finish within " + timeout.getSeconds() + " seconds."));
+                    return;
+                }
+            }
+        }
+    }
+
+    private class Attempt implements Callable<Void> {
+        private final Agent agent;
+        private final Termination termination;
+        private volatile long startedAt;
+        private Future<Void> future;
+
+        private Attempt(Agent agent, Termination termination) {
+            this.agent = agent;
+            this.termination = termination;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            startedAt = System.nanoTime();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    termination.terminate(agent);
+                    return null;
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    if (attempt >= attempts) {
+                        throw e;
+                    }
+                    Thread.sleep(retryBackoff.toMillis() * attempt);
+                }
+            }
+        }
+    }
+
+    public static class Result {
+        private final List<Agent> terminated = new ArrayList<>();
+        private final Map<Agent, Exception> failures = new LinkedHashMap<>();
+
+        public List<Agent> getTerminated() {
+            return terminated;
+        }
+
+        public Map<Agent, Exception> getFailures() {
+            return failures;
+        }
+    }
+
+    private static ExecutorService newExecutor(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -29,10 +29,8 @@ import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.request.DefaultGoApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoApiResponse;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -51,6 +49,11 @@ public class ElasticAgentRequestClient {
     private GoPluginIdentifier pluginIdentifier;
 
     private final GoApplicationAccessor accessor;
+    private final AgentRequestBatcher disableAgentsBatcher;
+    private final AgentRequestBatcher deleteAgentsBatcher;
+    private final Object agentsSnapshotLock = new Object();
+    private int agentsSnapshotHolders;
+    private Map<String, Agent> agentsSnapshot;
 
     public ElasticAgentRequestClient(GoApplicationAccessor accessor,
                                      String processorApiVersion,
@@ -58,9 +61,51 @@ public class ElasticAgentRequestClient {
         this.accessor = accessor;
         this.processorApiVersion = processorApiVersion;
         this.pluginIdentifier = pluginIdentifier;
+        this.disableAgentsBatcher = new AgentRequestBatcher(this::submitDisableAgents);
+        this.deleteAgentsBatcher = new AgentRequestBatcher(this::submitDeleteAgents);
     }
 
+    /**
+     * Lists the agents of this plugin. While an agents snapshot is held, see {@link #startAgentsSnapshot()}, the agents
+     * are only fetched from the server once and served from the snapshot afterwards.
+     */
     public Agents listAgents() throws ServerRequestFailedException {
+        synchronized (agentsSnapshotLock) {
+            if (agentsSnapshotHolders > 0) {
+                if (agentsSnapshot == null) {
+                    agentsSnapshot = new LinkedHashMap<>();
+                    fetchAgents().forEach(agent -> agentsSnapshot.put(agent.elasticAgentId(), agent));
+                }
+                return new Agents(agentsSnapshot.values());
+            }
+        }
+        return new Agents(fetchAgents());
+    }
+
+    /**
+     * Starts serving {@link #listAgents()} from a snapshot, typically for the duration of a server ping, so that the
+     * agents are fetched once instead of once per cluster. The agents this plugin deletes while the snapshot is held
+     * are dropped from it and disabling agents makes the next {@link #listAgents()} fetch them again, as the server
+     * decides whether a disabled agent is still building. Other changes on the server are picked up by the next
+     * snapshot.
+     * Every call must be paired with a call to {@link #endAgentsSnapshot()}.
+     */
+    public void startAgentsSnapshot() {
+        synchronized (agentsSnapshotLock) {
+            agentsSnapshotHolders++;
+        }
+    }
+
+    public void endAgentsSnapshot() {
+        synchronized (agentsSnapshotLock) {
+            if (--agentsSnapshotHolders <= 0) {
+                agentsSnapshotHolders = 0;
+                agentsSnapshot = null;
+            }
+        }
+    }
+
+    private List<Agent> fetchAgents() throws ServerRequestFailedException {
         DefaultGoApiRequest request = new DefaultGoApiRequest(REQUEST_SERVER_LIST_AGENTS, processorApiVersion, pluginIdentifier);
         GoApiResponse response = accessor.submit(request);
 
@@ -68,14 +113,26 @@ public class ElasticAgentRequestClient {
             throw ServerRequestFailedException.listAgents(response);
         }
 
-        return new Agents(Agent.fromJSONArray(response.responseBody()));
+        return Agent.fromJSONArray(response.responseBody());
     }
 
+    /**
+     * Disables the agents. Agents disabled by concurrent callers within a short window are disabled with a single
+     * request to the server.
+     */
     public void disableAgents(Collection<Agent> toBeDisabled) throws ServerRequestFailedException {
-        if (toBeDisabled.isEmpty()) {
-            return;
-        }
+        disableAgentsBatcher.submit(toBeDisabled);
+    }
 
+    /**
+     * Deletes the agents. Agents deleted by concurrent callers within a short window are deleted with a single
+     * request to the server.
+     */
+    public void deleteAgents(Collection<Agent> toBeDeleted) throws ServerRequestFailedException {
+        deleteAgentsBatcher.submit(toBeDeleted);
+    }
+
+    private void submitDisableAgents(Collection<Agent> toBeDisabled) throws ServerRequestFailedException {
         DefaultGoApiRequest request = new DefaultGoApiRequest(REQUEST_SERVER_DISABLE_AGENT, processorApiVersion, pluginIdentifier);
         request.setRequestBody(Agent.toJSONArray(toBeDisabled));
 
@@ -84,13 +141,12 @@ public class ElasticAgentRequestClient {
         if (response.responseCode() != 200) {
             throw ServerRequestFailedException.disableAgents(response);
         }
-    }
 
-    public void deleteAgents(Collection<Agent> toBeDeleted) throws ServerRequestFailedException {
-        if (toBeDeleted.isEmpty()) {
-            return;
-        }
+        // the agent may have picked up work since the snapshot was taken, so its state is fetched again rather than assumed
+        invalidateAgentsSnapshot();
+    }
 
+    private void submitDeleteAgents(Collection<Agent> toBeDeleted) throws ServerRequestFailedException {
         DefaultGoApiRequest request = new DefaultGoApiRequest(REQUEST_SERVER_DELETE_AGENT, processorApiVersion, pluginIdentifier);
         request.setRequestBody(Agent.toJSONArray(toBeDeleted));
         GoApiResponse response = accessor.submit(request);
@@ -98,6 +154,22 @@ public class ElasticAgentRequestClient {
         if (response.responseCode() != 200) {
             throw ServerRequestFailedException.deleteAgents(response);
         }
+
+        updateAgentsSnapshot(snapshot -> toBeDeleted.forEach(agent -> snapshot.remove(agent.elasticAgentId())));
+    }
+
+    private void invalidateAgentsSnapshot() {
+        synchronized (agentsSnapshotLock) {
+            agentsSnapshot = null;
+        }
+    }
+
+    private void updateAgentsSnapshot(Consumer<Map<String, Agent>> update) {
+        synchronized (agentsSnapshotLock) {
+            if (agentsSnapshot != null) {
+                update.accept(agentsSnapshot);
+            }
+        }
     }
 
     public void addServerHealthMessage(List<Map<String, String>> messages) {
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * The last lines of an agent's log, read message by message from a docker log stream so that no more than a bounded
+ * number of bytes is held in memory, however much the agent has logged.
+ */
+public class LogTail {
+    public static final int DEFAULT_LINES = 1000;
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final String text;
+    private final int lines;
+    private final boolean truncated;
+
+    private LogTail(String text, int lines, boolean truncated) {
+        this.text = text;
+        this.lines = lines;
+        this.truncated = truncated;
+    }
+
+    /**
+     * The parameters to ask docker for the last {@code lines} lines of both stdout and stderr.
+     */
+    public static DockerClient.LogsParam[] logsParams(int lines) {
+        return new DockerClient.LogsParam[]{DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr(), DockerClient.LogsParam.tail(lines)};
+    }
+
+    /**
+     * Reads the stream until it ends, keeping the last {@code maxBytes} bytes. The stream is closed once read.
+     */
+    public static LogTail read(LogStream logStream, int maxBytes) {
+        Deque<byte[]> chunks = new ArrayDeque<>();
+        long size = 0;
+        boolean truncated = false;
+        try (logStream) {
+            while (logStream.hasNext()) {
+                LogMessage message = logStream.next();
+                ByteBuffer content = message.content();
+                byte[] chunk = new byte[content.remaining()];
+                content.get(chunk);
+                chunks.addLast(chunk);
+                size += chunk.length;
+
+                while (size > maxBytes && chunks.size() > 1) {
+                    size -= chunks.removeFirst().length;
+                    truncated = true;
+                }
+                if (size > maxBytes) {
+                    byte[] only = chunks.removeFirst();
+                    chunks.addLast(Arrays.copyOfRange(only, only.length - maxBytes, only.length));
+                    size = maxBytes;
+                    truncated = true;
+                }
+            }
+        }
+
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, bytes, offset, chunk.length);
+            offset += chunk.length;
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return new LogTail(text, countLines(text), truncated);
+    }
+
+    private static int countLines(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return text.isEmpty() || text.endsWith("\n") ? lines : lines + 1;
+    }
+
+    public static LogTail empty() {
+        return new LogTail("", 0, false);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import cd.go.contrib.elasticagents.common.models.JobIdentifier;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentCapacityTest {
+    private final AgentCapacity capacity = new AgentCapacity();
+
+    @Test
+    void shouldNotReserveBeyondTheMaximumAllowed() {
+        assertThat(capacity.tryReserve(2, () -> 0)).isNotNull();
+        assertThat(capacity.tryReserve(2, () -> 0)).isNotNull();
+        assertThat(capacity.tryReserve(2, () -> 0)).isNull();
+        assertThat(capacity.reservations()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCountAgentsAlreadyInTheInventory() {
+        assertThat(capacity.tryReserve(2, () -> 1)).isNotNull();
+        assertThat(capacity.tryReserve(2, () -> 1)).isNull();
+    }
+
+    @Test
+    void shouldNotReserveAgainstAnInventoryCountThatWentStaleWhileReserving() {
+        AtomicInteger inventory = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+
+        AgentCapacity.Reservation reservation = capacity.tryReserve(1, () -> {
+            int agents = inventory.get();
+            if (reads.incrementAndGet() == 1) {
+                // another request reserves, adds its agent and commits while this one is reading the inventory
+                AgentCapacity.Reservation other = capacity.tryReserve(1, inventory::get);
+                inventory.incrementAndGet();
+                other.commit();
+            }
+            return agents;
+        });
+
+        assertThat(reservation).isNull();
+        assertThat(capacity.reservations()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldReleaseTheReservationOnlyOnce() {
+        AgentCapacity.Reservation reservation = capacity.tryReserve(1, () -> 0);
+
+        reservation.commit();
+        reservation.rollback();
+
+        assertThat(capacity.reservations()).isEqualTo(0);
+        assertThat(capacity.tryReserve(1, () -> 0)).isNotNull();
+    }
+
+    @Test
+    void shouldNotOvershootWhenReservingConcurrently() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<AgentCapacity.Reservation>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                return capacity.tryReserve(10, () -> 0);
+            }));
+        }
+        start.countDown();
+
+        int reserved = 0;
+        for (Future<AgentCapacity.Reservation> future : futures) {
+            if (future.get() != null) {
+                reserved++;
+            }
+        }
+        executorService.shutdown();
+
+        assertThat(reserved).isEqualTo(10);
+    }
+
+    @Test
+    void shouldListWaitingJobsInTheOrderTheyStartedWaiting() {
+        JobIdentifier first = new JobIdentifier("up42", 1L, "1", "stage", "1", "job1", 1L);
+        JobIdentifier second = new JobIdentifier("up42", 1L, "1", "stage", "1", "job2", 2L);
+
+        capacity.waitFor(first);
+        capacity.waitFor(second);
+        capacity.waitFor(first);
+        assertThat(capacity.waitingJobs()).containsExactly(first, second);
+
+        capacity.stopWaitingFor(first);
+        assertThat(capacity.waitingJobs()).containsExactly(second);
+    }
+
+    @Test
+    void shouldReportUtilisation() {
+        capacity.tryReserve(10, () -> 4);
+        capacity.waitFor(new JobIdentifier("up42", 1L, "1", "stage", "1", "job1", 1L));
+
+        AgentCapacity.Utilisation utilisation = capacity.utilisation(10, 4);
+
+        assertThat(utilisation.getMaxAllowed()).isEqualTo(10);
+        assertThat(utilisation.getRunning()).isEqualTo(4);
+        assertThat(utilisation.getReserved()).isEqualTo(1);
+        assertThat(utilisation.getWaitingJobs()).isEqualTo(1);
+        assertThat(utilisation.getAvailable()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import cd.go.contrib.elasticagents.common.agent.Agent;
+import cd.go.contrib.elasticagents.common.exceptions.ServerRequestFailedException;
+import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AgentRequestBatcherTest {
+    private final List<Set<String>> sent = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch inFlight = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void shouldSendRightAwayWhenNoRequestIsInFlight() {
+        AgentRequestBatcher batcher = new AgentRequestBatcher(agents -> sent.add(ids(agents)));
+
+        batcher.submit(List.of(new Agent("agent-1")));
+        batcher.submit(List.of(new Agent("agent-2")));
+
+        assertThat(sent).containsExactly(Set.of("agent-1"), Set.of("agent-2"));
+    }
+
+    @Test
+    void shouldSendTheAgentsOfCallersArrivingWhileARequestIsInFlightInASingleRequest() throws Exception {
+        AgentRequestBatcher batcher = new AgentRequestBatcher(this::blockFirstRequest);
+
+        Future<?> first = submit(batcher, "agent-1");
+        assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<?> second = submit(batcher, "agent-2");
+        Future<?> third = submit(batcher, "agent-3");
+        awaitWaitingCallers(batcher, 2);
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        third.get(5, TimeUnit.SECONDS);
+        assertThat(sent).containsExactly(Set.of("agent-1"), Set.of("agent-2", "agent-3"));
+    }
+
+    @Test
+    void shouldRetryTheAgentsOfEachCallerOnTheirOwnWhenTheCombinedRequestFails() throws Exception {
+        AgentRequestBatcher batcher = new AgentRequestBatcher(agents -> {
+            blockFirstRequest(agents);
+            if (ids(agents).contains("bad-agent")) {
+                throw ServerRequestFailedException.deleteAgents(DefaultGoApiResponse.badRequest("Something went wrong"));
+            }
+        });
+
+        Future<?> first = submit(batcher, "agent-1");
+        assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<?> good = submit(batcher, "good-agent");
+        Future<?> bad = submit(batcher, "bad-agent");
+        awaitWaitingCallers(batcher, 2);
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        good.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> bad.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(ServerRequestFailedException.class);
+        assertThat(sent).hasSize(4);
+        assertThat(sent.subList(0, 2)).containsExactly(Set.of("agent-1"), Set.of("good-agent", "bad-agent"));
+        assertThat(sent.subList(2, 4)).containsExactlyInAnyOrder(Set.of("good-agent"), Set.of("bad-agent"));
+    }
+
+    @Test
+    void shouldNotLeaveCallersWaitingWhenSendingTheRequestFailsUnexpectedly() throws Exception {
+        AgentRequestBatcher batcher = new AgentRequestBatcher(agents -> {
+            blockFirstRequest(agents);
+            if (ids(agents).size() > 1) {
+                throw new AssertionError("unexpected");
+            }
+        });
+
+        Future<?> first = submit(batcher, "agent-1");
+        assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<?> second = submit(batcher, "agent-2");
+        Future<?> third = submit(batcher, "agent-3");
+        awaitWaitingCallers(batcher, 2);
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThatThrownBy(() -> third.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+
+        batcher.submit(List.of(new Agent("agent-4")));
+        assertThat(sent).endsWith(Set.of("agent-4"));
+    }
+
+    private void blockFirstRequest(Collection<Agent> agents) {
+        sent.add(ids(agents));
+        if (inFlight.getCount() > 0) {
+            inFlight.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Future<?> submit(AgentRequestBatcher batcher, String agentId) {
+        return executorService.submit(() -> batcher.submit(List.of(new Agent(agentId))));
+    }
+
+    private static void awaitWaitingCallers(AgentRequestBatcher batcher, int callers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batcher.waitingCallers() < callers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(batcher.waitingCallers()).isEqualTo(callers);
+    }
+
+    private static Set<String> ids(Collection<Agent> agents) {
+        return agents.stream().map(Agent::elasticAgentId).collect(Collectors.toSet());
+    }
+}
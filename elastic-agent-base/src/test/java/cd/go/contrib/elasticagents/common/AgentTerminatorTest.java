@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import cd.go.contrib.elasticagents.common.agent.Agent;
+import cd.go.contrib.elasticagents.common.agent.AgentBuildState;
+import cd.go.contrib.elasticagents.common.agent.AgentConfigState;
+import cd.go.contrib.elasticagents.common.agent.AgentState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentTerminatorTest {
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void shouldTerminateAgentsInParallel() throws Exception {
+        AgentTerminator terminator = new AgentTerminator(executorService, 1, Duration.ofSeconds(10), Duration.ZERO);
+        CountDownLatch allStarted = new CountDownLatch(3);
+
+        AgentTerminator.Result result = terminator.terminate(List.of(agent("a"), agent("b"), agent("c")), agent -> {
+            allStarted.countDown();
+            if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("terminations did not run in parallel");
+            }
+        });
+
+        assertThat(result.getTerminated()).extracting(Agent::elasticAgentId).containsExactly("a", "b", "c");
+        assertThat(result.getFailures()).isEmpty();
+    }
+
+    @Test
+    void shouldRetryFailedTerminations() throws Exception {
+        AgentTerminator terminator = new AgentTerminator(executorService, 3, Duration.ofSeconds(10), Duration.ZERO);
+        AtomicInteger calls = new AtomicInteger();
+
+        AgentTerminator.Result result = terminator.terminate(List.of(agent("a")), agent -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new RuntimeException("docker is busy");
+            }
+        });
+
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(result.getTerminated()).extracting(Agent::elasticAgentId).containsExactly("a");
+    }
+
+    @Test
+    void shouldReportAgentsThatCouldNotBeTerminated() throws Exception {
+        AgentTerminator terminator = new AgentTerminator(executorService, 2, Duration.ofSeconds(10), Duration.ZERO);
+
+        AgentTerminator.Result result = terminator.terminate(List.of(agent("a"), agent("b")), agent -> {
+            if ("b".equals(agent.elasticAgentId())) {
+                throw new RuntimeException("boom");
+            }
+        });
+
+        assertThat(result.getTerminated()).extracting(Agent::elasticAgentId).containsExactly("a");
+        Map<Agent, Exception> failures = result.getFailures();
+        assertThat(failures).hasSize(1);
+        assertThat(failures.values().iterator().next()).hasMessage("boom");
+    }
+
+    @Test
+    void shouldGiveUpOnTerminationsThatTakeTooLong() throws Exception {
+        AgentTerminator terminator = new AgentTerminator(executorService, 1, Duration.ofMillis(200), Duration.ZERO);
+
+        AgentTerminator.Result result = terminator.terminate(List.of(agent("slow"), agent("fast")), agent -> {
+            if ("slow".equals(agent.elasticAgentId())) {
+                Thread.sleep(10_000);
+            }
+        });
+
+        assertThat(result.getTerminated()).extracting(Agent::elasticAgentId).containsExactly("fast");
+        assertThat(result.getFailures().values().iterator().next()).isInstanceOf(TimeoutException.class);
+    }
+
+    private Agent agent(String id) {
+        return new Agent(id, AgentState.Idle, AgentBuildState.Idle, AgentConfigState.Disabled);
+    }
+}
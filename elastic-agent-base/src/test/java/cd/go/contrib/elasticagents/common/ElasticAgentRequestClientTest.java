@@ -16,6 +16,9 @@
 
 package cd.go.contrib.elasticagents.common;
 
+import cd.go.contrib.elasticagents.common.agent.Agent;
+import cd.go.contrib.elasticagents.common.agent.AgentConfigState;
+import cd.go.contrib.elasticagents.common.agent.AgentState;
 import cd.go.contrib.elasticagents.common.models.JobIdentifier;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
@@ -24,9 +27,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
 
 class ElasticAgentRequestClientTest {
     @Mock
@@ -51,4 +57,61 @@ class ElasticAgentRequestClientTest {
         pluginRequest.appendToConsoleLog(jobIdentifier, "text1");
     }
 
+    @Test
+    void shouldNotSendARequestWhenThereAreNoAgentsToDisableOrDelete() {
+        pluginRequest.disableAgents(List.of());
+        pluginRequest.deleteAgents(List.of());
+
+        verifyNoInteractions(accessor);
+    }
+
+    @Test
+    void shouldFetchTheAgentsOnceWhileAnAgentsSnapshotIsHeld() {
+        when(accessor.submit(argThat(request -> request != null && request.api().equals("go.processor.elastic-agents.list-agents"))))
+                .thenReturn(DefaultGoApiResponse.success("[{\"agent_id\":\"agent-1\"},{\"agent_id\":\"agent-2\"}]"));
+
+        pluginRequest.startAgentsSnapshot();
+        assertThat(pluginRequest.listAgents().agentIds()).containsExactlyInAnyOrder("agent-1", "agent-2");
+        assertThat(pluginRequest.listAgents().agentIds()).containsExactlyInAnyOrder("agent-1", "agent-2");
+        pluginRequest.endAgentsSnapshot();
+
+        verify(accessor, times(1)).submit(any());
+
+        pluginRequest.listAgents();
+        verify(accessor, times(2)).submit(any());
+    }
+
+    @Test
+    void shouldDropAgentsDeletedByThePluginFromTheAgentsSnapshot() {
+        when(accessor.submit(any())).thenReturn(DefaultGoApiResponse.success(""));
+        when(accessor.submit(argThat(request -> request != null && request.api().equals("go.processor.elastic-agents.list-agents"))))
+                .thenReturn(DefaultGoApiResponse.success("[{\"agent_id\":\"agent-1\"},{\"agent_id\":\"agent-2\"}]"));
+
+        pluginRequest.startAgentsSnapshot();
+        pluginRequest.listAgents();
+        pluginRequest.deleteAgents(List.of(new Agent("agent-1")));
+
+        assertThat(pluginRequest.listAgents().agentIds()).containsExactly("agent-2");
+        pluginRequest.endAgentsSnapshot();
+    }
+
+    @Test
+    void shouldFetchTheAgentsAgainAfterThePluginDisabledSomeWhileAnAgentsSnapshotIsHeld() {
+        when(accessor.submit(any())).thenReturn(DefaultGoApiResponse.success(""));
+        when(accessor.submit(argThat(request -> request != null && request.api().equals("go.processor.elastic-agents.list-agents"))))
+                .thenReturn(DefaultGoApiResponse.success("[{\"agent_id\":\"agent-1\",\"agent_state\":\"Idle\",\"config_state\":\"Enabled\"}]"))
+                .thenReturn(DefaultGoApiResponse.success("[{\"agent_id\":\"agent-1\",\"agent_state\":\"Building\",\"config_state\":\"Disabled\"}]"));
+
+        pluginRequest.startAgentsSnapshot();
+        pluginRequest.listAgents();
+        pluginRequest.disableAgents(List.of(new Agent("agent-1")));
+
+        Agent agent = pluginRequest.listAgents().agents().iterator().next();
+        assertThat(agent.configState()).isEqualTo(AgentConfigState.Disabled);
+        assertThat(agent.agentState()).isEqualTo(AgentState.Building);
+        pluginRequest.listAgents();
+        pluginRequest.endAgentsSnapshot();
+
+        verify(accessor, times(2)).submit(argThat(request -> request != null && request.api().equals("go.processor.elastic-agents.list-agents")));
+    }
 }
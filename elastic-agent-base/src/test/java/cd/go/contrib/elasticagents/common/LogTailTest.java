@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagents.common;
+
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class LogTailTest {
+    @Test
+    void shouldReadTheWholeStreamWhenItFitsInTheLimit() {
+        LogStream logStream = logStream("line 1\n", "line 2\n");
+
+        LogTail logTail = LogTail.read(logStream, 1024);
+
+        assertThat(logTail.getText()).isEqualTo("line 1\nline 2\n");
+        assertThat(logTail.getLines()).isEqualTo(2);
+        assertThat(logTail.isTruncated()).isFalse();
+        verify(logStream).close();
+    }
+
+    @Test
+    void shouldKeepOnlyTheLastBytesOfTheStream() {
+        LogTail logTail = LogTail.read(logStream("line 1\n", "line 2\n", "line 3\n"), 14);
+
+        assertThat(logTail.getText()).isEqualTo("line 2\nline 3\n");
+        assertThat(logTail.getLines()).isEqualTo(2);
+        assertThat(logTail.isTruncated()).isTrue();
+    }
+
+    @Test
+    void shouldTrimASingleMessageLargerThanTheLimit() {
+        LogTail logTail = LogTail.read(logStream("0123456789"), 4);
+
+        assertThat(logTail.getText()).isEqualTo("6789");
+        assertThat(logTail.getLines()).isEqualTo(1);
+        assertThat(logTail.isTruncated()).isTrue();
+    }
+
+    private LogStream logStream(String... messages) {
+        Iterator<String> iterator = List.of(messages).iterator();
+        LogStream logStream = mock(LogStream.class);
+        when(logStream.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(logStream.next()).thenAnswer(invocation -> new LogMessage(LogMessage.Stream.STDOUT, ByteBuffer.wrap(iterator.next().getBytes(StandardCharsets.UTF_8))));
+        return logStream;
+    }
+}